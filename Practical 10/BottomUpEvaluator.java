@@ -1,6 +1,13 @@
 import java.util.*;
+import metrics.*;
 
 public class BottomUpEvaluator {
+    // Instrumentation, active with -Dmetrics=true
+    private static final Histogram COMPILE_TIME = Metrics.histogram("bue.compile");
+    private static final Histogram RPN_TIME = Metrics.histogram("bue.rpn");
+    private static final Counter INSTRUCTIONS = Metrics.counter("bue.instructions");
+    private static final Counter EVALUATIONS = Metrics.counter("bue.evaluations");
+    private static final HighWaterMark STACK = Metrics.highWaterMark("bue.stack.max");
 
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
@@ -8,16 +15,142 @@ public class BottomUpEvaluator {
         String input = scanner.nextLine();
 
         try {
-            List<String> rpn = infixToRPN(input);
-            double result = evaluateRPN(rpn);
+            Program program = compile(input);
+            double result = program.evaluate();
             System.out.println("Result: " + result);
+
+            // java BottomUpEvaluator --bench: time repeated evaluation of the compiled program
+            if (args.length > 0 && args[0].equals("--bench")) {
+                double[] stack = new double[program.maxStack];
+                int runs = 50_000_000;
+                double sink = 0;
+                long start = System.nanoTime();
+                for (int r = 0; r < runs; r++) sink += program.evaluate(stack);
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("%.1f M evaluations/s (checksum %s)%n", runs * 1e3 / elapsed, sink);
+            }
         } catch (Exception e) {
             System.out.println("Invalid expression");
         }
     }
 
+    // Compiled RPN: a compact opcode array plus a constant pool of numbers.
+    // Each instruction is one int; PUSH keeps its constant index in the upper bits.
+    static final class Program {
+        static final int PUSH = 0, ADD = 1, SUB = 2, MUL = 3, DIV = 4, POW = 5;
+
+        final int[] code;
+        final double[] constants;
+        final int maxStack;
+
+        Program(int[] code, double[] constants, int maxStack) {
+            this.code = code;
+            this.constants = constants;
+            this.maxStack = maxStack;
+        }
+
+        double evaluate() {
+            return evaluate(new double[maxStack]);
+        }
+
+        // Evaluate on a caller-supplied operand stack of at least maxStack slots.
+        // Operand counts were checked by compile, so the loop does no checks.
+        double evaluate(double[] stack) {
+            if (Metrics.ENABLED) EVALUATIONS.increment();
+            int sp = 0;
+            for (int instruction : code) {
+                switch (instruction & 7) {
+                    case PUSH: stack[sp++] = constants[instruction >>> 3]; break;
+                    case ADD: sp--; stack[sp - 1] += stack[sp]; break;
+                    case SUB: sp--; stack[sp - 1] -= stack[sp]; break;
+                    case MUL: sp--; stack[sp - 1] *= stack[sp]; break;
+                    case DIV: sp--; stack[sp - 1] /= stack[sp]; break;
+                    default: sp--; stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]); break;
+                }
+            }
+            return stack[0];
+        }
+    }
+
+    // Shunting Yard straight to opcodes: scans characters, no tokenizer or token list
+    public static Program compile(String expression) throws Exception {
+        long startTime = Metrics.ENABLED ? System.nanoTime() : 0;
+        int[] code = new int[Math.max(4, expression.length())];
+        double[] constants = new double[4];
+        int size = 0, constantCount = 0, depth = 0, maxStack = 0;
+        char[] operatorStack = new char[Math.max(4, expression.length())];
+        int top = 0;
+
+        int i = 0, length = expression.length();
+        while (i < length) {
+            char c = expression.charAt(i);
+            if (c == ' ' || c == '\t') {
+                i++;
+                continue;
+            }
+            if ("+-*/^()".indexOf(c) < 0) {
+                // Number: everything up to the next operator or space, as StringTokenizer would split it
+                int start = i;
+                while (i < length && "+-*/^() \t".indexOf(expression.charAt(i)) < 0) i++;
+                String token = expression.substring(start, i);
+                if (!isNumber(token)) throw new Exception("Invalid token: " + token);
+                if (constantCount == constants.length) constants = Arrays.copyOf(constants, constantCount * 2);
+                constants[constantCount] = Double.parseDouble(token);
+                code[size++] = Program.PUSH | constantCount++ << 3;
+                maxStack = Math.max(maxStack, ++depth);
+                continue;
+            }
+            i++;
+            if (c == '(') {
+                operatorStack[top++] = c;
+            } else if (c == ')') {
+                while (top > 0 && operatorStack[top - 1] != '(') {
+                    code[size++] = opcode(operatorStack[--top]);
+                    if (--depth < 1) throw new Exception("Not enough operands");
+                }
+                if (top == 0) throw new Exception("Mismatched parentheses");
+                top--;
+            } else {
+                String token = String.valueOf(c);
+                while (top > 0 && operatorStack[top - 1] != '(' &&
+                        ((isLeftAssociative(token) && precedence(token) <= precedence(String.valueOf(operatorStack[top - 1]))) ||
+                         (!isLeftAssociative(token) && precedence(token) < precedence(String.valueOf(operatorStack[top - 1]))))) {
+                    code[size++] = opcode(operatorStack[--top]);
+                    if (--depth < 1) throw new Exception("Not enough operands");
+                }
+                operatorStack[top++] = c;
+            }
+        }
+
+        while (top > 0) {
+            char op = operatorStack[--top];
+            if (op == '(') throw new Exception("Mismatched parentheses");
+            code[size++] = opcode(op);
+            if (--depth < 1) throw new Exception("Not enough operands");
+        }
+        if (depth != 1) throw new Exception("Too many operands");
+
+        if (Metrics.ENABLED) {
+            INSTRUCTIONS.add(size);
+            STACK.update(maxStack);
+            COMPILE_TIME.recordSince(startTime);
+        }
+        return new Program(Arrays.copyOf(code, size), Arrays.copyOf(constants, constantCount), maxStack);
+    }
+
+    private static int opcode(char op) {
+        return switch (op) {
+            case '+' -> Program.ADD;
+            case '-' -> Program.SUB;
+            case '*' -> Program.MUL;
+            case '/' -> Program.DIV;
+            default -> Program.POW;
+        };
+    }
+
     // Convert infix to postfix (RPN) using Shunting Yard Algorithm
     public static List<String> infixToRPN(String expression) throws Exception {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
         List<String> output = new ArrayList<>();
         Stack<String> operatorStack = new Stack<>();
         StringTokenizer tokenizer = new StringTokenizer(expression, "+-*/^() ", true);
@@ -56,26 +189,28 @@ public class BottomUpEvaluator {
             output.add(op);
         }
 
+        if (Metrics.ENABLED) RPN_TIME.recordSince(start);
         return output;
     }
 
     // Evaluate the RPN expression
     public static double evaluateRPN(List<String> tokens) throws Exception {
-        Stack<Double> stack = new Stack<>();
+        double[] stack = new double[tokens.size()];
+        int sp = 0;
 
         for (String token : tokens) {
             if (isNumber(token)) {
-                stack.push(Double.parseDouble(token));
+                stack[sp++] = Double.parseDouble(token);
             } else if (isOperator(token)) {
-                if (stack.size() < 2) throw new Exception("Not enough operands");
-                double b = stack.pop();
-                double a = stack.pop();
+                if (sp < 2) throw new Exception("Not enough operands");
+                double b = stack[--sp];
+                double a = stack[--sp];
                 switch (token) {
-                    case "+": stack.push(a + b); break;
-                    case "-": stack.push(a - b); break;
-                    case "*": stack.push(a * b); break;
-                    case "/": stack.push(a / b); break;
-                    case "^": stack.push(Math.pow(a, b)); break;
+                    case "+": stack[sp++] = a + b; break;
+                    case "-": stack[sp++] = a - b; break;
+                    case "*": stack[sp++] = a * b; break;
+                    case "/": stack[sp++] = a / b; break;
+                    case "^": stack[sp++] = Math.pow(a, b); break;
                     default: throw new Exception("Unknown operator");
                 }
             } else {
@@ -83,22 +218,46 @@ public class BottomUpEvaluator {
             }
         }
 
-        if (stack.size() != 1) throw new Exception("Too many operands");
-        return stack.pop();
+        if (sp != 1) throw new Exception("Too many operands");
+        return stack[0];
     }
 
     // Utility functions
+    // Numbers are what Double.parseDouble accepts, as they always were. Plain decimals
+    // (digits, an optional '.', an optional exponent) are recognised without it, and
+    // single characters such as operators are never numbers unless they are digits, so
+    // only the rare other spellings ("NaN", "Infinity", "1d", "1f", "0x1p3") pay for
+    // a parse that may throw.
     private static boolean isNumber(String token) {
+        if (isPlainDecimal(token)) return true;
+        if (token.length() < 2) return false;
         try {
             Double.parseDouble(token);
             return true;
-        } catch (Exception e) {
+        } catch (NumberFormatException e) {
             return false;
         }
     }
 
+    private static boolean isPlainDecimal(String token) {
+        int i = 0, length = token.length(), digits = 0;
+        while (i < length && Character.isDigit(token.charAt(i))) { i++; digits++; }
+        if (i < length && token.charAt(i) == '.') {
+            i++;
+            while (i < length && Character.isDigit(token.charAt(i))) { i++; digits++; }
+        }
+        if (digits == 0) return false;
+        if (i < length && (token.charAt(i) == 'e' || token.charAt(i) == 'E')) {
+            i++;
+            int exponentDigits = 0;
+            while (i < length && Character.isDigit(token.charAt(i))) { i++; exponentDigits++; }
+            if (exponentDigits == 0) return false;
+        }
+        return i == length;
+    }
+
     private static boolean isOperator(String token) {
-        return "+-*/^".contains(token);
+        return token.length() == 1 && "+-*/^".indexOf(token.charAt(0)) >= 0;
     }
 
     private static int precedence(String op) {
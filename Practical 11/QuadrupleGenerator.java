@@ -1,65 +1,15 @@
 import java.util.*;
+import metrics.*;
 
 public class QuadrupleGenerator {
-    enum TokenType { NUMBER, PLUS, MINUS, MULT, DIV, LPAREN, RPAREN, EOF }
+    // Instrumentation, active with -Dmetrics=true
+    private static final Histogram PARSE_TIME = Metrics.histogram("qg.parse");
+    private static final Counter QUADRUPLES = Metrics.counter("qg.quadruples");
 
-    static class Token {
-        TokenType type;
-        String value;
+    // Operator of unary minus, whose quadruple has an empty second operand
+    static final String UMINUS = "uminus";
 
-        Token(TokenType type, String value) {
-            this.type = type;
-            this.value = value;
-        }
-    }
-
-    static class Lexer {
-        private final String input;
-        private int pos = 0;
-        private final int length;
-
-        Lexer(String input) {
-            this.input = input.replaceAll("\\s+", ""); // remove whitespace
-            this.length = this.input.length();
-        }
-
-        boolean isAtEnd() {
-            return pos >= length;
-        }
-
-        char currentChar() {
-            return input.charAt(pos);
-        }
-
-        Token nextToken() {
-            if (isAtEnd()) return new Token(TokenType.EOF, "");
-
-            char c = currentChar();
-
-            if (Character.isDigit(c)) {
-                StringBuilder num = new StringBuilder();
-                while (!isAtEnd() && (Character.isDigit(currentChar()) || currentChar() == '.')) {
-                    num.append(currentChar());
-                    pos++;
-                }
-                return new Token(TokenType.NUMBER, num.toString());
-            } else if (c == '+') {
-                pos++; return new Token(TokenType.PLUS, "+");
-            } else if (c == '-') {
-                pos++; return new Token(TokenType.MINUS, "-");
-            } else if (c == '*') {
-                pos++; return new Token(TokenType.MULT, "*");
-            } else if (c == '/') {
-                pos++; return new Token(TokenType.DIV, "/");
-            } else if (c == '(') {
-                pos++; return new Token(TokenType.LPAREN, "(");
-            } else if (c == ')') {
-                pos++; return new Token(TokenType.RPAREN, ")");
-            }
-
-            throw new RuntimeException("Invalid character: " + c);
-        }
-    }
+    private static final int ADDITIVE = 1, MULTIPLICATIVE = 2, POWER = 3;
 
     static class Quadruple {
         String operator, operand1, operand2, result;
@@ -71,40 +21,75 @@ public class QuadrupleGenerator {
             this.result = result;
         }
 
+        boolean isUnary() {
+            return operand2.isEmpty();
+        }
+
         public String toString() {
             return String.format("%-8s %-8s %-8s %-8s", operator, operand1, operand2, result);
         }
     }
 
+    // t1, t2, ... name temps, so they cannot be used as variables
+    static boolean isTempName(String name) {
+        if (name.length() < 2 || name.charAt(0) != 't') return false;
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) return false;
+        }
+        return true;
+    }
+
     static class Parser {
-        private final Lexer lexer;
-        private Token currentToken;
+        private final CharStreamLexer lexer;
+        private int token;
         private final List<Quadruple> quadruples = new ArrayList<>();
         private int tempCount = 1;
 
         Parser(String input) {
-            lexer = new Lexer(input);
+            this(new CharStreamLexer(input));
+        }
+
+        Parser(CharStreamLexer lexer) {
+            this.lexer = lexer;
             advance();
         }
 
         void advance() {
-            currentToken = lexer.nextToken();
+            token = lexer.next();
         }
 
         String newTemp() {
             return "t" + tempCount++;
         }
 
-        void parse() {
-            E(); // Start parsing from E
+        // Returns the operand that holds the value of the whole expression
+        String parse() {
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            String result = expression(ADDITIVE);
+            if (token != CharStreamLexer.EOF)
+                throw new RuntimeException("Unexpected token: " + lexer.text());
+            if (Metrics.ENABLED) {
+                QUADRUPLES.add(quadruples.size());
+                PARSE_TIME.recordSince(start);
+            }
+            return result;
+        }
+
+        List<Quadruple> quadruples() {
+            return quadruples;
         }
 
-        String E() {
-            String left = T();
-            while (currentToken.type == TokenType.PLUS || currentToken.type == TokenType.MINUS) {
-                String op = currentToken.value;
+        // Precedence climbing: parse operands and operators binding at least as tightly
+        // as minPrecedence. '+' '-' bind loosest, then '*' '/', then '^', which is right
+        // associative: the right operand of '^' is parsed at its own level, the others
+        // one level up.
+        String expression(int minPrecedence) {
+            String left = unary();
+            int precedence;
+            while ((precedence = precedence(token)) >= minPrecedence) {
+                String op = CharStreamLexer.symbol(token);
                 advance();
-                String right = T();
+                String right = expression(op.equals("^") ? precedence : precedence + 1);
                 String temp = newTemp();
                 quadruples.add(new Quadruple(op, left, right, temp));
                 left = temp;
@@ -112,45 +97,74 @@ public class QuadrupleGenerator {
             return left;
         }
 
-        String T() {
-            String left = F();
-            while (currentToken.type == TokenType.MULT || currentToken.type == TokenType.DIV) {
-                String op = currentToken.value;
+        // Prefix '-' and '+' bind tighter than '*' but looser than '^': -a^2 is -(a^2)
+        String unary() {
+            if (token == CharStreamLexer.MINUS || token == CharStreamLexer.PLUS) {
+                boolean negate = token == CharStreamLexer.MINUS;
                 advance();
-                String right = F();
+                String operand = expression(POWER);
+                if (!negate) return operand;
                 String temp = newTemp();
-                quadruples.add(new Quadruple(op, left, right, temp));
-                left = temp;
+                quadruples.add(new Quadruple(UMINUS, operand, "", temp));
+                return temp;
             }
-            return left;
+            return primary();
         }
 
-        String F() {
-            if (currentToken.type == TokenType.NUMBER) {
-                String val = currentToken.value;
+        String primary() {
+            if (token == CharStreamLexer.NUMBER) {
+                String val = lexer.text();
                 advance();
                 return val;
-            } else if (currentToken.type == TokenType.LPAREN) {
+            } else if (token == CharStreamLexer.IDENTIFIER) {
+                String name = lexer.text();
+                if (isTempName(name))
+                    throw new RuntimeException("Reserved name: " + name);
+                advance();
+                return name;
+            } else if (token == CharStreamLexer.LPAREN) {
                 advance(); // consume '('
-                String val = E();
-                if (currentToken.type != TokenType.RPAREN)
+                String val = expression(ADDITIVE);
+                if (token != CharStreamLexer.RPAREN)
                     throw new RuntimeException("Missing closing parenthesis");
                 advance(); // consume ')'
                 return val;
             } else {
-                throw new RuntimeException("Unexpected token: " + currentToken.value);
+                throw new RuntimeException("Unexpected token: " + lexer.text());
             }
         }
 
-        void printQuadruples() {
-            System.out.printf("%-8s %-8s %-8s %-8s\n", "Operator", "Operand1", "Operand2", "Result");
-            for (Quadruple q : quadruples) {
-                System.out.println(q);
+        private static int precedence(int token) {
+            switch (token) {
+                case CharStreamLexer.PLUS: case CharStreamLexer.MINUS: return ADDITIVE;
+                case CharStreamLexer.MULT: case CharStreamLexer.DIV: return MULTIPLICATIVE;
+                case CharStreamLexer.POW: return POWER;
+                default: return -1; // not a binary operator
             }
         }
+
+        void printQuadruples() {
+            QuadrupleGenerator.printQuadruples(quadruples);
+        }
+    }
+
+    static void printQuadruples(List<Quadruple> quadruples) {
+        System.out.printf("%-8s %-8s %-8s %-8s\n", "Operator", "Operand1", "Operand2", "Result");
+        for (Quadruple q : quadruples) {
+            System.out.println(q);
+        }
     }
 
-    public static void main(String[] args) {
+    // java QuadrupleGenerator [--optimize] [--emit <file>]
+    //   --optimize   also show the folded, reallocated code
+    //   --emit       write the (optimised) code as a packed QuadrupleProgram
+    public static void main(String[] args) throws java.io.IOException {
+        boolean optimize = false;
+        String emit = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--optimize")) optimize = true;
+            else if (args[i].equals("--emit") && i + 1 < args.length) emit = args[++i];
+        }
         Scanner scanner = new Scanner(System.in);
 
         System.out.println("Enter an arithmetic expression:");
@@ -158,8 +172,24 @@ public class QuadrupleGenerator {
 
         try {
             Parser parser = new Parser(input);
-            parser.parse();
+            String result = parser.parse();
             parser.printQuadruples();
+
+            List<Quadruple> code = parser.quadruples();
+            if (optimize) {
+                QuadrupleOptimizer.Result optimized = QuadrupleOptimizer.optimize(code, result);
+                System.out.println();
+                System.out.println("Optimized (value in " + optimized.value + "):");
+                printQuadruples(optimized.quadruples);
+                System.out.println(optimized);
+                code = optimized.quadruples;
+                result = optimized.value;
+            }
+            if (emit != null) {
+                QuadrupleProgram program = QuadrupleProgram.encode(code, result);
+                program.write(java.nio.file.Paths.get(emit));
+                System.out.println("Wrote " + program.code.length + " instructions to " + emit);
+            }
         } catch (RuntimeException e) {
             System.out.println("Error: " + e.getMessage());
         }
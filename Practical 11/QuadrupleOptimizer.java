@@ -0,0 +1,147 @@
+import java.util.*;
+import metrics.*;
+
+// Optimises the quadruples of one expression, given the operand holding its value:
+//
+//   fold        operators whose operands are both constants are computed now and their
+//               result temp is replaced by the value everywhere it is used
+//   dead temps  quadruples whose result is never used on the way to the final value go
+//   allocate    temps are renamed onto as few registers as possible: a temp's register
+//               is freed after its last use, and the lowest free one is taken next
+//
+// Any operand that no quadruple defines (a number or a name) is treated as an input.
+public class QuadrupleOptimizer {
+    // Instrumentation, active with -Dmetrics=true
+    private static final Histogram OPTIMIZE_TIME = Metrics.histogram("qg.optimize");
+    private static final Counter FOLDED = Metrics.counter("qg.folded");
+    private static final Counter DEAD = Metrics.counter("qg.dead");
+
+    static class Result {
+        final List<QuadrupleGenerator.Quadruple> quadruples;
+        final String value; // operand holding the expression's value
+        int instructionsBefore, instructionsAfter, tempsBefore, tempsAfter;
+        int folded, dead;
+
+        Result(List<QuadrupleGenerator.Quadruple> quadruples, String value) {
+            this.quadruples = quadruples;
+            this.value = value;
+        }
+
+        public String toString() {
+            return String.format("instructions %d -> %d (%d folded, %d dead), temps %d -> %d",
+                    instructionsBefore, instructionsAfter, folded, dead, tempsBefore, tempsAfter);
+        }
+    }
+
+    static Result optimize(List<QuadrupleGenerator.Quadruple> quadruples, String value) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        int tempsBefore = countTemps(quadruples);
+
+        // ========== Constant folding ==========
+        Map<String, String> constants = new HashMap<>();
+        List<QuadrupleGenerator.Quadruple> folded = new ArrayList<>();
+        for (QuadrupleGenerator.Quadruple q : quadruples) {
+            String a = constants.getOrDefault(q.operand1, q.operand1);
+            String b = constants.getOrDefault(q.operand2, q.operand2);
+            String result = isNumber(a) && (q.isUnary() || isNumber(b)) ? fold(q.operator, a, b) : null;
+            if (result != null) {
+                constants.put(q.result, result);
+            } else {
+                folded.add(new QuadrupleGenerator.Quadruple(q.operator, a, b, q.result));
+            }
+        }
+        value = constants.getOrDefault(value, value);
+
+        // ========== Dead temps ==========
+        Set<String> live = new HashSet<>();
+        live.add(value);
+        List<QuadrupleGenerator.Quadruple> kept = new ArrayList<>();
+        for (int i = folded.size() - 1; i >= 0; i--) {
+            QuadrupleGenerator.Quadruple q = folded.get(i);
+            if (!live.remove(q.result)) continue;
+            live.add(q.operand1);
+            if (!q.isUnary()) live.add(q.operand2);
+            kept.add(q);
+        }
+        Collections.reverse(kept);
+
+        // ========== Temp allocation ==========
+        Map<String, Integer> lastUse = new HashMap<>();
+        for (int i = 0; i < kept.size(); i++) {
+            lastUse.put(kept.get(i).operand1, i);
+            if (!kept.get(i).isUnary()) lastUse.put(kept.get(i).operand2, i);
+        }
+        lastUse.put(value, kept.size()); // live out
+
+        Map<String, String> registers = new HashMap<>();
+        BitSet busy = new BitSet();
+        List<QuadrupleGenerator.Quadruple> allocated = new ArrayList<>(kept.size());
+        for (int i = 0; i < kept.size(); i++) {
+            QuadrupleGenerator.Quadruple q = kept.get(i);
+            String a = registers.getOrDefault(q.operand1, q.operand1);
+            String b = registers.getOrDefault(q.operand2, q.operand2);
+            release(q.operand1, i, lastUse, registers, busy);
+            if (!q.isUnary()) release(q.operand2, i, lastUse, registers, busy);
+            int register = busy.nextClearBit(0); // operands are read before the result is written
+            busy.set(register);
+            String name = "t" + (register + 1);
+            registers.put(q.result, name);
+            allocated.add(new QuadrupleGenerator.Quadruple(q.operator, a, b, name));
+        }
+
+        Result result = new Result(allocated, registers.getOrDefault(value, value));
+        result.instructionsBefore = quadruples.size();
+        result.instructionsAfter = allocated.size();
+        result.folded = quadruples.size() - folded.size();
+        result.dead = folded.size() - kept.size();
+        result.tempsBefore = tempsBefore;
+        result.tempsAfter = countTemps(allocated);
+        if (Metrics.ENABLED) {
+            FOLDED.add(result.folded);
+            DEAD.add(result.dead);
+            OPTIMIZE_TIME.recordSince(start);
+        }
+        return result;
+    }
+
+    private static void release(String operand, int index, Map<String, Integer> lastUse,
+                                Map<String, String> registers, BitSet busy) {
+        String register = registers.get(operand);
+        if (register != null && lastUse.get(operand) == index) {
+            busy.clear(Integer.parseInt(register, 1, register.length(), 10) - 1);
+        }
+    }
+
+    // Distinct result names
+    static int countTemps(List<QuadrupleGenerator.Quadruple> quadruples) {
+        Set<String> temps = new HashSet<>();
+        for (QuadrupleGenerator.Quadruple q : quadruples) temps.add(q.result);
+        return temps.size();
+    }
+
+    static boolean isNumber(String operand) {
+        if (operand.isEmpty()) return false;
+        char c = operand.charAt(0);
+        return Character.isDigit(c) || c == '.' || (c == '-' && operand.length() > 1);
+    }
+
+    // Folded value as an operand, or null to leave the operation for run time (x / 0)
+    private static String fold(String operator, String a, String b) {
+        double x = Double.parseDouble(a), y = b.isEmpty() ? 0 : Double.parseDouble(b);
+        double r;
+        switch (operator) {
+            case QuadrupleGenerator.UMINUS: r = -x; break;
+            case "^": r = Math.pow(x, y); break;
+            case "+": r = x + y; break;
+            case "-": r = x - y; break;
+            case "*": r = x * y; break;
+            case "/":
+                if (y == 0) return null;
+                r = x / y;
+                break;
+            default: return null;
+        }
+        if (Double.isNaN(r) || Double.isInfinite(r)) return null;
+        return r == Math.rint(r) && Math.abs(r) < 1e15 && (r != 0 || 1 / r > 0) ? String.valueOf((long) r) : String.valueOf(r);
+    }
+}
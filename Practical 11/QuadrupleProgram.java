@@ -0,0 +1,250 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+
+// Quadruples packed into a long[] and run over a double[] register file.
+//
+// Every operand is a register index. Registers are laid out as
+//
+//   [0, constants)                      the constant pool, loaded once by newRegisters()
+//   [constants, constants + inputs)     named inputs, copied in by run()
+//   [.., registerCount)                 temps t1, t2, ... in order
+//
+// and an instruction is  op | dst << 4 | a << 24 | b << 44, 20 bits per register.
+// Unary operators repeat their operand as b.
+//
+//   QuadrupleProgram p = QuadrupleProgram.encode(parser.quadruples(), parser.parse());
+//   double[] registers = p.newRegisters();
+//   p.run(inputs, registers);   // allocation-free
+//   p.write(path);  QuadrupleProgram.read(path).run(inputs);
+public class QuadrupleProgram {
+    static final int ADD = 0, SUB = 1, MUL = 2, DIV = 3, POW = 4, NEG = 5;
+
+    private static final String[] OPERATORS = { "+", "-", "*", "/", "^", QuadrupleGenerator.UMINUS };
+    private static final int MAX_REGISTERS = 1 << 20;
+    private static final int MAGIC = 0x51554144; // "QUAD"
+    private static final int VERSION = 1;
+
+    final long[] code;
+    final double[] constants;
+    final String[] inputs;
+    final int temps;
+    final int result;        // register holding the value
+    final int registerCount;
+
+    private QuadrupleProgram(long[] code, double[] constants, String[] inputs, int temps, int result) {
+        this.code = code;
+        this.constants = constants;
+        this.inputs = inputs;
+        this.temps = temps;
+        this.result = result;
+        this.registerCount = constants.length + inputs.length + temps;
+    }
+
+    // Operands that no quadruple defines are constants if numeric and inputs otherwise
+    static QuadrupleProgram encode(List<QuadrupleGenerator.Quadruple> quadruples, String value) {
+        Map<String, Integer> temps = new HashMap<>();
+        for (QuadrupleGenerator.Quadruple q : quadruples) temps.putIfAbsent(q.result, temps.size());
+        Map<String, Integer> constants = new LinkedHashMap<>();
+        Map<String, Integer> inputs = new LinkedHashMap<>();
+        for (QuadrupleGenerator.Quadruple q : quadruples) {
+            classify(q.operand1, temps, constants, inputs);
+            if (!q.isUnary()) classify(q.operand2, temps, constants, inputs);
+        }
+        classify(value, temps, constants, inputs);
+
+        int inputBase = constants.size(), tempBase = inputBase + inputs.size();
+        if (tempBase + temps.size() > MAX_REGISTERS) {
+            throw new IllegalArgumentException("Too many registers: " + (tempBase + temps.size()));
+        }
+        long[] code = new long[quadruples.size()];
+        for (int i = 0; i < code.length; i++) {
+            QuadrupleGenerator.Quadruple q = quadruples.get(i);
+            code[i] = opcode(q.operator)
+                    | (long) (tempBase + temps.get(q.result)) << 4
+                    | (long) register(q.operand1, temps, constants, inputs) << 24
+                    | (long) register(q.isUnary() ? q.operand1 : q.operand2, temps, constants, inputs) << 44;
+        }
+        double[] pool = new double[constants.size()];
+        int c = 0;
+        for (String constant : constants.keySet()) pool[c++] = Double.parseDouble(constant);
+        return new QuadrupleProgram(code, pool, inputs.keySet().toArray(new String[0]), temps.size(),
+                register(value, temps, constants, inputs));
+    }
+
+    private static void classify(String operand, Map<String, Integer> temps,
+                                 Map<String, Integer> constants, Map<String, Integer> inputs) {
+        if (temps.containsKey(operand)) return;
+        Map<String, Integer> pool = QuadrupleOptimizer.isNumber(operand) ? constants : inputs;
+        pool.putIfAbsent(operand, pool.size());
+    }
+
+    private static int register(String operand, Map<String, Integer> temps,
+                                Map<String, Integer> constants, Map<String, Integer> inputs) {
+        Integer temp = temps.get(operand);
+        if (temp != null) return constants.size() + inputs.size() + temp;
+        Integer constant = constants.get(operand);
+        if (constant != null) return constant;
+        return constants.size() + inputs.get(operand);
+    }
+
+    private static int opcode(String operator) {
+        for (int op = 0; op < OPERATORS.length; op++) {
+            if (OPERATORS[op].equals(operator)) return op;
+        }
+        throw new IllegalArgumentException("Unknown operator: " + operator);
+    }
+
+    // Index of an input in the array run() takes, or -1 if the program does not read it
+    int input(String name) {
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    // Register file with the constant pool in place
+    double[] newRegisters() {
+        double[] registers = new double[registerCount];
+        System.arraycopy(constants, 0, registers, 0, constants.length);
+        return registers;
+    }
+
+    double run(double[] inputValues) {
+        return run(inputValues, newRegisters());
+    }
+
+    // registers must come from newRegisters(); only the input and temp registers are written
+    double run(double[] inputValues, double[] registers) {
+        System.arraycopy(inputValues, 0, registers, constants.length, inputs.length);
+        for (long instruction : code) {
+            int dst = (int) (instruction >>> 4) & (MAX_REGISTERS - 1);
+            double a = registers[(int) (instruction >>> 24) & (MAX_REGISTERS - 1)];
+            double b = registers[(int) (instruction >>> 44)];
+            switch ((int) instruction & 15) {
+                case ADD: registers[dst] = a + b; break;
+                case SUB: registers[dst] = a - b; break;
+                case MUL: registers[dst] = a * b; break;
+                case DIV: registers[dst] = a / b; break;
+                case POW: registers[dst] = Math.pow(a, b); break;
+                default: registers[dst] = -a; break;
+            }
+        }
+        return registers[result];
+    }
+
+    // Back to quadruples, with temps named t1, t2, ... and constants in Java notation
+    List<QuadrupleGenerator.Quadruple> toQuadruples() {
+        List<QuadrupleGenerator.Quadruple> quadruples = new ArrayList<>(code.length);
+        for (long instruction : code) {
+            int op = (int) instruction & 15;
+            quadruples.add(new QuadrupleGenerator.Quadruple(OPERATORS[op],
+                    name((int) (instruction >>> 24) & (MAX_REGISTERS - 1)),
+                    op == NEG ? "" : name((int) (instruction >>> 44)),
+                    name((int) (instruction >>> 4) & (MAX_REGISTERS - 1))));
+        }
+        return quadruples;
+    }
+
+    String name(int register) {
+        if (register < constants.length) return String.valueOf(constants[register]);
+        register -= constants.length;
+        if (register < inputs.length) return inputs[register];
+        return "t" + (register - inputs.length + 1);
+    }
+
+    // ========== Serialisation ==========
+    // magic, version, counts and the result register, followed by the code, the constant
+    // pool and the input names as UTF-8; big-endian throughout
+    void write(Path path) throws IOException {
+        byte[][] names = new byte[inputs.length][];
+        int size = 4 * 7 + 8 * code.length + 8 * constants.length;
+        for (int i = 0; i < inputs.length; i++) {
+            names[i] = inputs[i].getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            size += 4 + names[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION)
+                .putInt(code.length).putInt(constants.length).putInt(inputs.length).putInt(temps).putInt(result);
+        buffer.asLongBuffer().put(code);
+        buffer.position(buffer.position() + 8 * code.length);
+        buffer.asDoubleBuffer().put(constants);
+        buffer.position(buffer.position() + 8 * constants.length);
+        for (byte[] name : names) buffer.putInt(name.length).put(name);
+        Files.write(path, buffer.array());
+    }
+
+    static QuadrupleProgram read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            if (buffer.getInt() != MAGIC) throw new IOException("Not a quadruple program: " + path);
+            int version = buffer.getInt();
+            if (version != VERSION) throw new IOException("Unsupported version " + version + ": " + path);
+            // Counts are checked against the bytes left before anything is allocated
+            int codeLength = buffer.getInt(), constantCount = buffer.getInt(), inputCount = buffer.getInt();
+            int temps = buffer.getInt();
+            int result = buffer.getInt();
+            long needed = 8L * codeLength + 8L * constantCount + 4L * inputCount;
+            if (codeLength < 0 || constantCount < 0 || inputCount < 0 || temps < 0 || needed > buffer.remaining()
+                    || (long) constantCount + inputCount + temps > MAX_REGISTERS) {
+                throw new IOException("Corrupt quadruple program: " + path);
+            }
+            long[] code = new long[codeLength];
+            double[] constants = new double[constantCount];
+            String[] inputs = new String[inputCount];
+            buffer.asLongBuffer().get(code);
+            buffer.position(buffer.position() + 8 * code.length);
+            buffer.asDoubleBuffer().get(constants);
+            buffer.position(buffer.position() + 8 * constants.length);
+            for (int i = 0; i < inputs.length; i++) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) throw new IOException("Corrupt quadruple program: " + path);
+                byte[] name = new byte[length];
+                buffer.get(name);
+                inputs[i] = new String(name, java.nio.charset.StandardCharsets.UTF_8);
+            }
+            QuadrupleProgram program = new QuadrupleProgram(code, constants, inputs, temps, result);
+            if (buffer.hasRemaining() || result < 0 || result >= program.registerCount) {
+                throw new IOException("Corrupt quadruple program: " + path);
+            }
+            for (long instruction : code) {
+                int dst = (int) (instruction >>> 4) & (MAX_REGISTERS - 1);
+                int a = (int) (instruction >>> 24) & (MAX_REGISTERS - 1), b = (int) (instruction >>> 44);
+                if (((int) instruction & 15) >= OPERATORS.length || dst < constants.length + inputs.length
+                        || Math.max(dst, Math.max(a, b)) >= program.registerCount) {
+                    throw new IOException("Corrupt quadruple program: " + path);
+                }
+            }
+            return program;
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new IOException("Truncated quadruple program: " + path, e);
+        }
+    }
+
+    // java QuadrupleProgram <file> [name=value ...]: load a program written by
+    // QuadrupleGenerator --emit and run it
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) usage(null);
+        QuadrupleProgram program = read(Paths.get(args[0]));
+        double[] values = new double[program.inputs.length];
+        for (int i = 1; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq <= 0) usage(args[i]);
+            int input = program.input(args[i].substring(0, eq));
+            try {
+                if (input >= 0) values[input] = Double.parseDouble(args[i].substring(eq + 1));
+            } catch (NumberFormatException e) {
+                usage(args[i]);
+            }
+        }
+        QuadrupleGenerator.printQuadruples(program.toQuadruples());
+        System.out.println("Result: " + program.run(values));
+    }
+
+    private static void usage(String badArgument) {
+        if (badArgument != null) System.err.println("Expected name=value, got: " + badArgument);
+        System.err.println("Usage: java QuadrupleProgram <file> [name=value ...]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,204 @@
+import java.util.*;
+
+// An expression parsed and constant-folded once, then evaluated many times.
+// Variables are resolved to slot indices at compile time and the tree is flattened
+// to postfix code over a double[] of bindings:
+//
+//   CompiledExpression f = CompiledExpression.compile("x * (2 + 3) - y");
+//   double[] bindings = new double[f.slotCount()];
+//   bindings[f.slot("x")] = 4;  bindings[f.slot("y")] = 1;
+//   f.evaluate(bindings);       // 19.0
+//
+// Subtrees shared in a DAG (see ExpressionOptimizer's cse pass) are computed once:
+// TEE copies the value on top of the stack into a temp, LOADT pushes it again.
+//
+// The tree passed to compile() is left as it is. tree is a copy of it, sharing kept,
+// whose VariableNodes carry this expression's slots, for ASTNode.evaluate(bindings).
+public class CompiledExpression {
+    static final int CONST = 0, LOAD = 1, ADD = 2, SUB = 3, MUL = 4, DIV = 5, TEE = 6, LOADT = 7;
+
+    // Rows evaluated together by evaluateColumns
+    private static final int BLOCK = 256;
+
+    final String[] variables; // slot -> name
+    final int[] code;         // opcode in the low 4 bits, operand index above
+    final double[] constants;
+    final int maxStack;
+    final int temps;
+    final int frameSize;      // operand stack followed by the temps
+    final ConstantFoldingOptimizer.ASTNode tree; // the compiled tree with its slots bound
+
+    private CompiledExpression(ConstantFoldingOptimizer.ASTNode tree, String[] variables, int[] code,
+                               double[] constants, int maxStack, int temps) {
+        this.tree = tree;
+        this.variables = variables;
+        this.code = code;
+        this.constants = constants;
+        this.maxStack = maxStack;
+        this.temps = temps;
+        this.frameSize = maxStack + temps;
+    }
+
+    static CompiledExpression compile(String expression) {
+        ConstantFoldingOptimizer.ASTNode ast = new ConstantFoldingOptimizer.Parser(expression).parse();
+        return compile(ConstantFoldingOptimizer.foldConstants(ast));
+    }
+
+    // Slots are numbered in order of first appearance
+    static CompiledExpression compile(ConstantFoldingOptimizer.ASTNode ast) {
+        Builder builder = new Builder();
+        ConstantFoldingOptimizer.ASTNode tree = copy(ast, new IdentityHashMap<>());
+        builder.countUses(tree);
+        builder.emit(tree);
+        return new CompiledExpression(tree, builder.variables.toArray(new String[0]),
+                Arrays.copyOf(builder.code, builder.size),
+                Arrays.copyOf(builder.constants, builder.constantCount), builder.maxStack, builder.temps.size());
+    }
+
+    // Copy of the operator and variable nodes, so that slots are only assigned to ours;
+    // a node shared in a DAG is copied once and stays shared
+    private static ConstantFoldingOptimizer.ASTNode copy(ConstantFoldingOptimizer.ASTNode node,
+                                                         Map<ConstantFoldingOptimizer.ASTNode, ConstantFoldingOptimizer.ASTNode> copies) {
+        ConstantFoldingOptimizer.ASTNode copied = copies.get(node);
+        if (copied != null) return copied;
+        if (node instanceof ConstantFoldingOptimizer.BinaryOpNode op) {
+            copied = new ConstantFoldingOptimizer.BinaryOpNode(op.op, copy(op.left, copies), copy(op.right, copies));
+        } else if (node instanceof ConstantFoldingOptimizer.VariableNode variable) {
+            copied = new ConstantFoldingOptimizer.VariableNode(variable.name);
+        } else {
+            copied = node; // NumberNode has nothing to bind
+        }
+        copies.put(node, copied);
+        return copied;
+    }
+
+    int slotCount() {
+        return variables.length;
+    }
+
+    // Slot of a variable, or -1 if the expression does not use it
+    int slot(String name) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    double evaluate(double[] bindings) {
+        return evaluate(bindings, new double[frameSize]);
+    }
+
+    // Evaluate with a caller-supplied frame of at least frameSize slots; allocation-free
+    double evaluate(double[] bindings, double[] stack) {
+        int sp = 0;
+        for (int instruction : code) {
+            switch (instruction & 15) {
+                case CONST: stack[sp++] = constants[instruction >>> 4]; break;
+                case LOAD: stack[sp++] = bindings[instruction >>> 4]; break;
+                case TEE: stack[maxStack + (instruction >>> 4)] = stack[sp - 1]; break;
+                case LOADT: stack[sp++] = stack[maxStack + (instruction >>> 4)]; break;
+                case ADD: sp--; stack[sp - 1] += stack[sp]; break;
+                case SUB: sp--; stack[sp - 1] -= stack[sp]; break;
+                case MUL: sp--; stack[sp - 1] *= stack[sp]; break;
+                default: sp--; stack[sp - 1] /= stack[sp]; break;
+            }
+        }
+        return stack[0];
+    }
+
+    // Columnar evaluation: columns[slot][row] holds the bindings, out[row] receives the
+    // result for rows 0 .. count. Each instruction runs over a block of rows at a time,
+    // so dispatch is paid once per block and the inner loops are plain array arithmetic
+    // that HotSpot can vectorise.
+    void evaluateColumns(double[][] columns, double[] out, int count) {
+        double[][] stack = new double[frameSize][BLOCK];
+        for (int base = 0; base < count; base += BLOCK) {
+            int n = Math.min(BLOCK, count - base);
+            int sp = 0;
+            for (int instruction : code) {
+                int operand = instruction >>> 4;
+                switch (instruction & 15) {
+                    case CONST: Arrays.fill(stack[sp++], 0, n, constants[operand]); break;
+                    case LOAD: System.arraycopy(columns[operand], base, stack[sp++], 0, n); break;
+                    case TEE: System.arraycopy(stack[sp - 1], 0, stack[maxStack + operand], 0, n); break;
+                    case LOADT: System.arraycopy(stack[maxStack + operand], 0, stack[sp++], 0, n); break;
+                    default: {
+                        double[] r = stack[--sp], l = stack[sp - 1];
+                        switch (instruction & 15) {
+                            case ADD: for (int i = 0; i < n; i++) l[i] += r[i]; break;
+                            case SUB: for (int i = 0; i < n; i++) l[i] -= r[i]; break;
+                            case MUL: for (int i = 0; i < n; i++) l[i] *= r[i]; break;
+                            default: for (int i = 0; i < n; i++) l[i] /= r[i]; break;
+                        }
+                    }
+                }
+            }
+            System.arraycopy(stack[0], 0, out, base, n);
+        }
+    }
+
+    // Postfix code generation
+    private static class Builder {
+        final List<String> variables = new ArrayList<>();
+        final Map<String, Integer> slots = new HashMap<>();
+        final Map<ConstantFoldingOptimizer.ASTNode, Integer> uses = new IdentityHashMap<>();
+        final Map<ConstantFoldingOptimizer.ASTNode, Integer> temps = new IdentityHashMap<>();
+        int[] code = new int[16];
+        double[] constants = new double[4];
+        int size, constantCount, depth, maxStack;
+
+        // Count references to each operator node; children of a shared node are visited once
+        void countUses(ConstantFoldingOptimizer.ASTNode node) {
+            if (node instanceof ConstantFoldingOptimizer.BinaryOpNode op && uses.merge(op, 1, Integer::sum) == 1) {
+                countUses(op.left);
+                countUses(op.right);
+            }
+        }
+
+        void emit(ConstantFoldingOptimizer.ASTNode node) {
+            Integer temp = temps.get(node);
+            if (temp != null) {
+                add(LOADT | temp << 4, 1);
+                return;
+            }
+            if (node instanceof ConstantFoldingOptimizer.NumberNode number) {
+                if (constantCount == constants.length) constants = Arrays.copyOf(constants, constantCount * 2);
+                constants[constantCount] = number.value;
+                add(CONST | constantCount++ << 4, 1);
+            } else if (node instanceof ConstantFoldingOptimizer.VariableNode variable) {
+                Integer slot = slots.get(variable.name);
+                if (slot == null) {
+                    slot = variables.size();
+                    variables.add(variable.name);
+                    slots.put(variable.name, slot);
+                }
+                variable.slot = slot;
+                add(LOAD | slot << 4, 1);
+            } else if (node instanceof ConstantFoldingOptimizer.BinaryOpNode op) {
+                emit(op.left);
+                emit(op.right);
+                add(switch (op.op) {
+                    case "+" -> ADD;
+                    case "-" -> SUB;
+                    case "*" -> MUL;
+                    case "/" -> DIV;
+                    default -> throw new RuntimeException("Unknown operator: " + op.op);
+                }, -1);
+                if (uses.getOrDefault(op, 1) > 1) {
+                    temp = temps.size();
+                    temps.put(op, temp);
+                    add(TEE | temp << 4, 0);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown node: " + node);
+            }
+        }
+
+        private void add(int instruction, int stackEffect) {
+            if (size == code.length) code = Arrays.copyOf(code, size * 2);
+            code[size++] = instruction;
+            depth += stackEffect;
+            maxStack = Math.max(maxStack, depth);
+        }
+    }
+}
@@ -1,79 +1,20 @@
 import java.util.*;
 import java.util.regex.*;
+import metrics.*;
 
 public class ConstantFoldingOptimizer {
-
-    // ========== Token Types ==========
-    enum TokenType { NUMBER, VARIABLE, PLUS, MINUS, MULT, DIV, LPAREN, RPAREN, EOF }
-
-    static class Token {
-        TokenType type;
-        String value;
-        Token(TokenType type, String value) {
-            this.type = type;
-            this.value = value;
-        }
-    }
-
-    // ========== Lexer ==========
-    static class Lexer {
-        private final String input;
-        private int pos = 0;
-        private final int length;
-
-        Lexer(String input) {
-            this.input = input.replaceAll("\\s+", "");
-            this.length = this.input.length();
-        }
-
-        boolean isAtEnd() {
-            return pos >= length;
-        }
-
-        char peek() {
-            return input.charAt(pos);
-        }
-
-        Token nextToken() {
-            if (isAtEnd()) return new Token(TokenType.EOF, "");
-
-            char c = peek();
-
-            if (Character.isDigit(c) || c == '.') {
-                StringBuilder sb = new StringBuilder();
-                while (!isAtEnd() && (Character.isDigit(peek()) || peek() == '.')) {
-                    sb.append(peek());
-                    pos++;
-                }
-                return new Token(TokenType.NUMBER, sb.toString());
-            }
-
-            if (Character.isLetter(c)) {
-                StringBuilder sb = new StringBuilder();
-                while (!isAtEnd() && Character.isLetterOrDigit(peek())) {
-                    sb.append(peek());
-                    pos++;
-                }
-                return new Token(TokenType.VARIABLE, sb.toString());
-            }
-
-            switch (c) {
-                case '+': pos++; return new Token(TokenType.PLUS, "+");
-                case '-': pos++; return new Token(TokenType.MINUS, "-");
-                case '*': pos++; return new Token(TokenType.MULT, "*");
-                case '/': pos++; return new Token(TokenType.DIV, "/");
-                case '(': pos++; return new Token(TokenType.LPAREN, "(");
-                case ')': pos++; return new Token(TokenType.RPAREN, ")");
-                default: throw new RuntimeException("Unexpected character: " + c);
-            }
-        }
-    }
+    // Instrumentation, active with -Dmetrics=true
+    private static final Histogram PARSE_TIME = Metrics.histogram("cfo.parse");
+    private static final Counter FOLDED = Metrics.counter("cfo.folded");
 
     // ========== AST Node ==========
     abstract static class ASTNode {
         abstract boolean isConstant();
         abstract double evaluate(); // Only for constant nodes
+        abstract double evaluate(double[] bindings); // Variables read from their slots
         abstract String toExpression(); // Reconstruct the expression
+        abstract int structuralHash(); // Equal for structurally equal trees
+        abstract boolean sameStructure(ASTNode other);
     }
 
     static class NumberNode extends ASTNode {
@@ -81,15 +22,26 @@ public class ConstantFoldingOptimizer {
         NumberNode(double value) { this.value = value; }
         boolean isConstant() { return true; }
         double evaluate() { return value; }
+        double evaluate(double[] bindings) { return value; }
         String toExpression() { return String.valueOf(value); }
+        int structuralHash() { return Double.hashCode(value); }
+        boolean sameStructure(ASTNode other) {
+            return other instanceof NumberNode number && Double.compare(number.value, value) == 0;
+        }
     }
 
     static class VariableNode extends ASTNode {
         String name;
+        int slot = -1; // Index into the bindings array, assigned in CompiledExpression's copy of the tree
         VariableNode(String name) { this.name = name; }
         boolean isConstant() { return false; }
         double evaluate() { throw new UnsupportedOperationException(); }
+        double evaluate(double[] bindings) { return bindings[slot]; }
         String toExpression() { return name; }
+        int structuralHash() { return name.hashCode() * 31 + 1; }
+        boolean sameStructure(ASTNode other) {
+            return other instanceof VariableNode variable && variable.name.equals(name);
+        }
     }
 
     static class BinaryOpNode extends ASTNode {
@@ -118,33 +70,64 @@ public class ConstantFoldingOptimizer {
             };
         }
 
+        double evaluate(double[] bindings) {
+            double l = left.evaluate(bindings);
+            double r = right.evaluate(bindings);
+            return switch (op) {
+                case "+" -> l + r;
+                case "-" -> l - r;
+                case "*" -> l * r;
+                case "/" -> l / r;
+                default -> throw new RuntimeException("Unknown operator: " + op);
+            };
+        }
+
         String toExpression() {
             return "(" + left.toExpression() + " " + op + " " + right.toExpression() + ")";
         }
+
+        int structuralHash() {
+            return (op.hashCode() * 31 + left.structuralHash()) * 31 + right.structuralHash();
+        }
+
+        boolean sameStructure(ASTNode other) {
+            return other instanceof BinaryOpNode node && node.op.equals(op)
+                    && left.sameStructure(node.left) && right.sameStructure(node.right);
+        }
     }
 
     // ========== Parser ==========
     static class Parser {
-        private final Lexer lexer;
-        private Token currentToken;
+        private final CharStreamLexer lexer;
+        private int token;
 
         Parser(String input) {
-            this.lexer = new Lexer(input);
+            this(new CharStreamLexer(input));
+        }
+
+        Parser(CharStreamLexer lexer) {
+            this.lexer = lexer;
             advance();
         }
 
         void advance() {
-            currentToken = lexer.nextToken();
+            token = lexer.next();
         }
 
         ASTNode parse() {
-            return expr();
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            ASTNode node = expr();
+            if (token != CharStreamLexer.EOF) {
+                throw new RuntimeException("Unexpected token: " + lexer.text());
+            }
+            if (Metrics.ENABLED) PARSE_TIME.recordSince(start);
+            return node;
         }
 
         ASTNode expr() {
             ASTNode node = term();
-            while (currentToken.type == TokenType.PLUS || currentToken.type == TokenType.MINUS) {
-                String op = currentToken.value;
+            while (token == CharStreamLexer.PLUS || token == CharStreamLexer.MINUS) {
+                String op = CharStreamLexer.symbol(token);
                 advance();
                 ASTNode right = term();
                 node = new BinaryOpNode(op, node, right);
@@ -154,8 +137,8 @@ public class ConstantFoldingOptimizer {
 
         ASTNode term() {
             ASTNode node = factor();
-            while (currentToken.type == TokenType.MULT || currentToken.type == TokenType.DIV) {
-                String op = currentToken.value;
+            while (token == CharStreamLexer.MULT || token == CharStreamLexer.DIV) {
+                String op = CharStreamLexer.symbol(token);
                 advance();
                 ASTNode right = factor();
                 node = new BinaryOpNode(op, node, right);
@@ -164,24 +147,24 @@ public class ConstantFoldingOptimizer {
         }
 
         ASTNode factor() {
-            if (currentToken.type == TokenType.NUMBER) {
-                double val = Double.parseDouble(currentToken.value);
+            if (token == CharStreamLexer.NUMBER) {
+                double val = lexer.number();
                 advance();
                 return new NumberNode(val);
-            } else if (currentToken.type == TokenType.VARIABLE) {
-                String name = currentToken.value;
+            } else if (token == CharStreamLexer.IDENTIFIER) {
+                String name = lexer.text();
                 advance();
                 return new VariableNode(name);
-            } else if (currentToken.type == TokenType.LPAREN) {
+            } else if (token == CharStreamLexer.LPAREN) {
                 advance();
                 ASTNode node = expr();
-                if (currentToken.type != TokenType.RPAREN) {
+                if (token != CharStreamLexer.RPAREN) {
                     throw new RuntimeException("Missing closing parenthesis");
                 }
                 advance();
                 return node;
             } else {
-                throw new RuntimeException("Unexpected token: " + currentToken.value);
+                throw new RuntimeException("Unexpected token: " + lexer.text());
             }
         }
     }
@@ -192,6 +175,7 @@ public class ConstantFoldingOptimizer {
             opNode.left = foldConstants(opNode.left);
             opNode.right = foldConstants(opNode.right);
             if (opNode.isConstant()) {
+                if (Metrics.ENABLED) FOLDED.increment();
                 return new NumberNode(opNode.evaluate());
             }
         }
@@ -207,12 +191,20 @@ public class ConstantFoldingOptimizer {
         try {
             Parser parser = new Parser(input);
             ASTNode ast = parser.parse();
-            ASTNode optimized = foldConstants(ast);
+            List<ExpressionOptimizer.PassStats> stats = new ArrayList<>();
+            ASTNode optimized = ExpressionOptimizer.standard().optimize(ast, stats);
             String optimizedExpression = optimized.toExpression();
 
             // Optional: remove extra parentheses
             optimizedExpression = removeRedundantParentheses(optimizedExpression);
             System.out.println("Optimized expression: " + optimizedExpression);
+
+            // java ConstantFoldingOptimizer --stats: show what each pass removed
+            if (args.length > 0 && args[0].equals("--stats")) {
+                for (ExpressionOptimizer.PassStats stat : stats) {
+                    System.out.println(stat);
+                }
+            }
         } catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
         }
@@ -0,0 +1,65 @@
+import java.util.*;
+
+// Evaluates one random formula over many bindings with three backends:
+//   tree   ASTNode.evaluate(bindings), a virtual call and operator switch per node
+//   rpn    CompiledExpression, postfix code over a double[] stack
+//   jit    ExpressionJit, the same code emitted as bytecode in a hidden class
+//
+// Usage: java ExpressionBenchmark [operators] [variables] [rows] [seed]
+public class ExpressionBenchmark {
+
+    public static void main(String[] args) {
+        int operators = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int variableCount = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int rows = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        Random random = new Random(seed);
+        String formula = randomFormula(random, operators, variableCount);
+        System.out.println("Formula: " + formula);
+
+        ConstantFoldingOptimizer.ASTNode ast = ConstantFoldingOptimizer.foldConstants(
+                new ConstantFoldingOptimizer.Parser(formula).parse());
+        CompiledExpression rpn = CompiledExpression.compile(ast);
+        ConstantFoldingOptimizer.ASTNode tree = rpn.tree; // the same tree with the slots bound
+        ExpressionJit.Formula jit = ExpressionJit.compile(rpn);
+
+        double[][] bindings = new double[rows][rpn.slotCount()];
+        for (double[] row : bindings) {
+            for (int v = 0; v < row.length; v++) row[v] = 1 + random.nextDouble() * 10;
+        }
+        for (double[] row : bindings) {
+            double expected = tree.evaluate(row);
+            if (Double.compare(expected, rpn.evaluate(row)) != 0 || Double.compare(expected, jit.evaluate(row)) != 0) {
+                throw new IllegalStateException("Backends disagree at " + Arrays.toString(row));
+            }
+        }
+
+        double[] stack = new double[rpn.frameSize];
+        for (int round = 1; round <= 5; round++) {
+            double sink = 0;
+            long t0 = System.nanoTime();
+            for (double[] row : bindings) sink += tree.evaluate(row);
+            long t1 = System.nanoTime();
+            for (double[] row : bindings) sink += rpn.evaluate(row, stack);
+            long t2 = System.nanoTime();
+            for (double[] row : bindings) sink += jit.evaluate(row);
+            long t3 = System.nanoTime();
+            System.out.printf("round %d: tree %7.1f M/s | rpn %7.1f M/s | jit %7.1f M/s (checksum %.3e)%n", round,
+                    rows * 1e3 / (t1 - t0), rows * 1e3 / (t2 - t1), rows * 1e3 / (t3 - t2), sink);
+        }
+    }
+
+    // Random formula with the given number of binary operators over x0 .. x(n-1) and constants
+    static String randomFormula(Random random, int operators, int variables) {
+        if (operators == 0) {
+            return random.nextInt(3) == 0
+                    ? String.valueOf(1 + random.nextInt(9))
+                    : "x" + random.nextInt(Math.max(1, variables));
+        }
+        int left = random.nextInt(operators);
+        String op = String.valueOf("+-*/".charAt(random.nextInt(4)));
+        return "(" + randomFormula(random, left, variables) + " " + op + " "
+                + randomFormula(random, operators - 1 - left, variables) + ")";
+    }
+}
@@ -0,0 +1,344 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+// Bounded, thread-safe memo cache in front of parse -> optimise -> compile:
+//
+//   ExpressionCache cache = new ExpressionCache(16 << 20);
+//   CompiledExpression f = cache.get("x * (2 + 3) - y").compiled;
+//
+// Lookups go through two levels. The text level is keyed by the expression with the
+// whitespace the lexer does not need removed, so a repeat formula skips the front end
+// entirely. On a text miss the formula is parsed and looked up again by the structure
+// of its ASTNode tree (structuralHash / sameStructure), which catches the same
+// formula spelled with different parentheses. Only a miss on both levels runs the
+// optimiser.
+//
+// Each level is bounded by an estimate of the bytes it retains and evicts W-TinyLFU
+// style: new entries land in a small LRU window, and an entry leaving the window only
+// displaces the main region's LRU victim if a frequency sketch has seen it more often.
+// One-off formulas therefore pass through without flushing the hot set.
+public class ExpressionCache {
+
+    // Parsed and optimised form of one formula; shared, so treat as read-only
+    static final class Entry {
+        final ConstantFoldingOptimizer.ASTNode optimized;
+        final CompiledExpression compiled;
+        final int weight;
+
+        Entry(ConstantFoldingOptimizer.ASTNode optimized, CompiledExpression compiled) {
+            this.optimized = optimized;
+            this.compiled = compiled;
+            this.weight = 64 + 48 * ExpressionOptimizer.countNodes(optimized, false)
+                    + 4 * compiled.code.length + 8 * compiled.constants.length + 16 * compiled.variables.length;
+        }
+    }
+
+    private final UnaryOperator<ConstantFoldingOptimizer.ASTNode> optimizer;
+    private final Region<String> byText;
+    private final Region<Structure> byStructure;
+
+    // Half of maxBytes per level; the optimiser is ConstantFoldingOptimizer.foldConstants
+    ExpressionCache(long maxBytes) {
+        this(maxBytes, ConstantFoldingOptimizer::foldConstants);
+    }
+
+    // optimizer must be safe to call from several threads, as ExpressionOptimizer's
+    // optimize is (ExpressionOptimizer.standard()::optimize), and may modify its argument
+    ExpressionCache(long maxBytes, UnaryOperator<ConstantFoldingOptimizer.ASTNode> optimizer) {
+        if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        this.optimizer = optimizer;
+        this.byText = new Region<>(maxBytes / 2);
+        this.byStructure = new Region<>(maxBytes - maxBytes / 2);
+    }
+
+    Entry get(String expression) {
+        String text = normalize(expression);
+        Entry entry = byText.get(text);
+        if (entry != null) return entry;
+
+        ConstantFoldingOptimizer.ASTNode ast = new ConstantFoldingOptimizer.Parser(expression).parse();
+        Structure structure = new Structure(ast);
+        entry = byStructure.get(structure);
+        if (entry == null) {
+            ConstantFoldingOptimizer.ASTNode optimized = optimizer.apply(copy(ast));
+            entry = new Entry(optimized, CompiledExpression.compile(optimized));
+            entry = byStructure.put(structure, entry, entry.weight + 48 * ExpressionOptimizer.countNodes(ast, false));
+        }
+        return byText.put(text, entry, entry.weight + 48 + 2 * text.length());
+    }
+
+    // Counters for both levels, e.g. "text hits 9000 misses 1000 ... | structure hits ..."
+    String stats() {
+        return "text " + byText.stats() + " | structure " + byStructure.stats();
+    }
+
+    long hits() { return byText.hits.sum() + byStructure.hits.sum(); }
+    long misses() { return byStructure.misses.sum(); } // the front end and optimiser ran
+    long evictions() { return byText.evictions.sum() + byStructure.evictions.sum(); }
+
+    void clear() {
+        byText.clear();
+        byStructure.clear();
+    }
+
+    // The expression as the lexer sees it: whitespace separates tokens, so a run of it
+    // becomes one space between two identifier or number characters ("1 2", "x y") and
+    // is dropped everywhere else. Two expressions with the same key lex alike.
+    static String normalize(String expression) {
+        int i = 0, n = expression.length();
+        while (i < n && !Character.isWhitespace(expression.charAt(i))) i++;
+        if (i == n) return expression;
+        StringBuilder sb = new StringBuilder(n).append(expression, 0, i);
+        while (i < n) {
+            char c = expression.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                sb.append(c);
+                i++;
+                continue;
+            }
+            while (i < n && Character.isWhitespace(expression.charAt(i))) i++;
+            if (sb.length() > 0 && i < n && isWordChar(sb.charAt(sb.length() - 1)) && isWordChar(expression.charAt(i))) {
+                sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    // Characters of identifier and number tokens, which whitespace keeps apart
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '.';
+    }
+
+    // The cached parse tree is the key, so optimise a copy of it
+    private static ConstantFoldingOptimizer.ASTNode copy(ConstantFoldingOptimizer.ASTNode node) {
+        if (node instanceof ConstantFoldingOptimizer.BinaryOpNode op) {
+            return new ConstantFoldingOptimizer.BinaryOpNode(op.op, copy(op.left), copy(op.right));
+        }
+        if (node instanceof ConstantFoldingOptimizer.VariableNode variable) {
+            return new ConstantFoldingOptimizer.VariableNode(variable.name);
+        }
+        return node; // NumberNode is never modified
+    }
+
+    // A parse tree compared by structure, with its hash computed once
+    private static final class Structure {
+        final ConstantFoldingOptimizer.ASTNode ast;
+        final int hash;
+
+        Structure(ConstantFoldingOptimizer.ASTNode ast) {
+            this.ast = ast;
+            this.hash = ast.structuralHash();
+        }
+
+        public boolean equals(Object other) {
+            return other instanceof Structure structure && structure.hash == hash && structure.ast.sameStructure(ast);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // ========== Eviction ==========
+    // Reads go straight to a ConcurrentHashMap. The two LRU lists, the weights and the
+    // sketch are guarded by one lock; a hit only reorders its node if it gets the lock
+    // without waiting, so under contention recency is approximate but reads never block.
+    private static final class Region<K> {
+        private static final int WINDOW_PERCENT = 1;
+
+        final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+        private final ConcurrentHashMap<K, Node<K>> map = new ConcurrentHashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Node<K> window = new Node<>(null, null, 0), main = new Node<>(null, null, 0); // list heads
+        private final long maxWeight, maxWindow;
+        private long windowWeight, mainWeight;
+        private final FrequencySketch sketch = new FrequencySketch();
+
+        Region(long maxWeight) {
+            this.maxWeight = maxWeight;
+            this.maxWindow = Math.max(1, maxWeight * WINDOW_PERCENT / 100);
+            window.prev = window.next = window;
+            main.prev = main.next = main;
+        }
+
+        Entry get(K key) {
+            Node<K> node = map.get(key);
+            if (node == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            if (lock.tryLock()) {
+                try {
+                    sketch.increment(key.hashCode());
+                    if (node.prev != null && map.get(key) == node) { // still linked and still cached
+                        unlink(node);
+                        linkFirst(node.inWindow ? window : main, node);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return node.value;
+        }
+
+        // Insert and return the cached value; if another thread got there first, its value wins
+        Entry put(K key, Entry value, int weight) {
+            lock.lock();
+            try {
+                sketch.increment(key.hashCode());
+                Node<K> existing = map.get(key);
+                if (existing != null) return existing.value;
+                if (weight > maxWeight) return value; // would never fit
+                Node<K> node = new Node<>(key, value, weight);
+                map.put(key, node);
+                node.inWindow = true;
+                linkFirst(window, node);
+                windowWeight += weight;
+                while (windowWeight > maxWindow && window.prev != window) {
+                    admit(window.prev);
+                }
+                return value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Move a node out of the window, into the main region if it beats the victims it displaces
+        private void admit(Node<K> candidate) {
+            unlink(candidate);
+            windowWeight -= candidate.weight;
+            candidate.inWindow = false;
+            long capacity = maxWeight - maxWindow;
+            if (mainWeight + candidate.weight > capacity) {
+                int frequency = sketch.frequency(candidate.key.hashCode());
+                long freed = 0;
+                for (Node<K> victim = main.prev; mainWeight - freed + candidate.weight > capacity; victim = victim.prev) {
+                    if (victim == main || sketch.frequency(victim.key.hashCode()) >= frequency) {
+                        evict(candidate);
+                        return;
+                    }
+                    freed += victim.weight;
+                }
+                while (mainWeight + candidate.weight > capacity) {
+                    Node<K> victim = main.prev;
+                    unlink(victim);
+                    mainWeight -= victim.weight;
+                    evict(victim);
+                }
+            }
+            linkFirst(main, candidate);
+            mainWeight += candidate.weight;
+        }
+
+        private void evict(Node<K> node) {
+            map.remove(node.key, node);
+            evictions.increment();
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                map.clear();
+                // Unlink every node, so that a get() that found one before the clear
+                // sees it as gone instead of relinking it through stale pointers
+                for (Node<K> head : List.of(window, main)) {
+                    for (Node<K> node = head.next; node != head; ) {
+                        Node<K> next = node.next;
+                        node.prev = node.next = null;
+                        node = next;
+                    }
+                }
+                window.prev = window.next = window;
+                main.prev = main.next = main;
+                windowWeight = mainWeight = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        String stats() {
+            lock.lock();
+            try {
+                return String.format("hits %d misses %d evictions %d entries %d bytes %d/%d",
+                        hits.sum(), misses.sum(), evictions.sum(), map.size(), windowWeight + mainWeight, maxWeight);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private static <K> void linkFirst(Node<K> head, Node<K> node) {
+            node.prev = head;
+            node.next = head.next;
+            head.next.prev = node;
+            head.next = node;
+        }
+
+        private static <K> void unlink(Node<K> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = node.next = null;
+        }
+    }
+
+    // Doubly linked LRU node; prev and next are only touched under the region lock
+    private static final class Node<K> {
+        final K key;
+        final Entry value;
+        final int weight;
+        boolean inWindow;
+        Node<K> prev, next;
+
+        Node(K key, Entry value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    // Count-min sketch of 4-bit counters, four per key, halved every SAMPLE increments
+    // so that old popularity fades
+    private static final class FrequencySketch {
+        private static final int SIZE = 1 << 12; // longs, 16 counters each
+        private static final int SAMPLE = 10 * SIZE * 16 / 4;
+
+        private final long[] table = new long[SIZE];
+        private int additions;
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = index(hash, i), shift = shift(hash, i);
+                if (((table[index] >>> shift) & 15) != 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == SAMPLE) {
+                for (int i = 0; i < SIZE; i++) table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int min = 15;
+            for (int i = 0; i < 4; i++) {
+                min = Math.min(min, (int) ((table[index(hash, i)] >>> shift(hash, i)) & 15));
+            }
+            return min;
+        }
+
+        private static int index(int hash, int i) {
+            int h = (hash + i) * 0x9E3779B9;
+            return (h ^ h >>> 16) & (SIZE - 1);
+        }
+
+        private static int shift(int hash, int i) {
+            int h = (hash ^ i * 0x85EBCA6B) * 0xC2B2AE35;
+            return ((h >>> 28) & 15) << 2;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+import java.lang.invoke.MethodHandles;
+import java.util.*;
+
+// Compiles an expression to JVM bytecode and loads it as a hidden class, so HotSpot
+// sees one straight-line method it can inline into the caller. The class file is
+// emitted by hand from CompiledExpression's postfix code, which maps one to one onto
+// the JVM operand stack:
+//
+//   CONST c  ->  dconst_0 / dconst_1 / ldc2_w c
+//   LOAD s   ->  aload_1, push s, daload
+//   ADD ...  ->  dadd / dsub / dmul / ddiv
+//   TEE t    ->  dup2, dstore 2 + 2t
+//   LOADT t  ->  dload 2 + 2t
+public class ExpressionJit {
+
+    // Implemented by every generated class
+    interface Formula {
+        double evaluate(double[] bindings);
+    }
+
+    // Methods longer than this are never JIT-compiled by HotSpot, so interpret them instead
+    private static final int MAX_CODE = 8000;
+
+    static Formula compile(ConstantFoldingOptimizer.ASTNode ast) {
+        return compile(CompiledExpression.compile(ast));
+    }
+
+    static Formula compile(CompiledExpression expression) {
+        byte[] classFile = generate(expression);
+        if (classFile == null) {
+            return expression::evaluate;
+        }
+        try {
+            Class<?> type = MethodHandles.lookup().defineHiddenClass(classFile, true).lookupClass();
+            return (Formula) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load generated formula", e);
+        }
+    }
+
+    // Class file for: final class JitFormula implements ExpressionJit.Formula
+    private static byte[] generate(CompiledExpression expression) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef("JitFormula");
+        int superClass = pool.classRef("java/lang/Object");
+        int formula = pool.classRef("ExpressionJit$Formula");
+        int init = pool.utf8("<init>");
+        int voidDescriptor = pool.utf8("()V");
+        int superInit = pool.methodRef(superClass, init, voidDescriptor);
+        int evaluate = pool.utf8("evaluate");
+        int evaluateDescriptor = pool.utf8("([D)D");
+        int codeAttribute = pool.utf8("Code");
+
+        // evaluate(double[]) body
+        Bytes code = new Bytes();
+        int depth = 0, maxDepth = 0; // in JVM stack words, a double takes two
+        for (int instruction : expression.code) {
+            int operand = instruction >>> 4;
+            switch (instruction & 15) {
+                case CompiledExpression.CONST: {
+                    double value = expression.constants[operand];
+                    if (Double.doubleToRawLongBits(value) == 0L) {
+                        code.u1(0x0e); // dconst_0
+                    } else if (value == 1.0) {
+                        code.u1(0x0f); // dconst_1
+                    } else {
+                        code.u1(0x14).u2(pool.doubleConstant(value)); // ldc2_w
+                    }
+                    depth += 2;
+                    break;
+                }
+                case CompiledExpression.LOAD:
+                    code.u1(0x2b); // aload_1
+                    if (operand <= 5) {
+                        code.u1(0x03 + operand); // iconst_<n>
+                    } else if (operand <= Byte.MAX_VALUE) {
+                        code.u1(0x10).u1(operand); // bipush
+                    } else {
+                        code.u1(0x11).u2(operand); // sipush
+                    }
+                    code.u1(0x31); // daload
+                    maxDepth = Math.max(maxDepth, depth + 2);
+                    depth += 2;
+                    break;
+                case CompiledExpression.ADD: code.u1(0x63); depth -= 2; break;
+                case CompiledExpression.SUB: code.u1(0x67); depth -= 2; break;
+                case CompiledExpression.MUL: code.u1(0x6b); depth -= 2; break;
+                case CompiledExpression.DIV: code.u1(0x6f); depth -= 2; break;
+                case CompiledExpression.TEE:
+                    code.u1(0x5c); // dup2
+                    maxDepth = Math.max(maxDepth, depth + 2);
+                    local(code, 0x39, 2 + 2 * operand); // dstore
+                    break;
+                default:
+                    local(code, 0x18, 2 + 2 * operand); // dload
+                    depth += 2;
+                    break;
+            }
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        code.u1(0xaf); // dreturn
+        if (code.size() > MAX_CODE || pool.count >= 0xffff) return null;
+
+        Bytes out = new Bytes();
+        out.u4(0xCAFEBABE).u2(0).u2(61); // Java 17
+        out.u2(pool.count).bytes(pool.bytes);
+        out.u2(0x0031); // public final super
+        out.u2(thisClass).u2(superClass);
+        out.u2(1).u2(formula);
+        out.u2(0); // fields
+        out.u2(2); // methods
+
+        // public <init>() { super(); }
+        out.u2(0x0001).u2(init).u2(voidDescriptor).u2(1);
+        out.u2(codeAttribute).u4(12 + 5).u2(1).u2(1).u4(5);
+        out.u1(0x2a).u1(0xb7).u2(superInit).u1(0xb1); // aload_0, invokespecial, return
+        out.u2(0).u2(0);
+
+        // public double evaluate(double[] bindings)
+        out.u2(0x0001).u2(evaluate).u2(evaluateDescriptor).u2(1);
+        out.u2(codeAttribute).u4(12 + code.size()).u2(Math.max(maxDepth, 2)).u2(2 + 2 * expression.temps).u4(code.size());
+        out.bytes(code);
+        out.u2(0).u2(0);
+
+        out.u2(0); // class attributes
+        return out.toByteArray();
+    }
+
+    // Local variable load/store, widened past index 255
+    private static void local(Bytes code, int opcode, int index) {
+        if (index <= 0xff) {
+            code.u1(opcode).u1(index);
+        } else {
+            code.u1(0xc4).u1(opcode).u2(index); // wide
+        }
+    }
+
+    // Big-endian byte buffer for class file structures
+    private static class Bytes {
+        private byte[] data = new byte[256];
+        private int size;
+
+        Bytes u1(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = (byte) v;
+            return this;
+        }
+
+        Bytes u2(int v) {
+            return u1(v >>> 8).u1(v);
+        }
+
+        Bytes u4(int v) {
+            return u2(v >>> 16).u2(v);
+        }
+
+        Bytes bytes(Bytes other) {
+            for (int i = 0; i < other.size; i++) u1(other.data[i]);
+            return this;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    // Constant pool with de-duplicated entries; count is the next free index
+    private static class ConstantPool {
+        final Bytes bytes = new Bytes();
+        final Map<Object, Integer> entries = new HashMap<>();
+        int count = 1;
+
+        int utf8(String value) {
+            return entries.computeIfAbsent(value, k -> {
+                byte[] encoded = value.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+                bytes.u1(1).u2(encoded.length);
+                for (byte b : encoded) bytes.u1(b);
+                return count++;
+            });
+        }
+
+        int classRef(String internalName) {
+            int name = utf8(internalName);
+            return entries.computeIfAbsent(List.of("class", name), k -> {
+                bytes.u1(7).u2(name);
+                return count++;
+            });
+        }
+
+        int methodRef(int owner, int name, int descriptor) {
+            int nameAndType = entries.computeIfAbsent(List.of("nat", name, descriptor), k -> {
+                bytes.u1(12).u2(name).u2(descriptor);
+                return count++;
+            });
+            return entries.computeIfAbsent(List.of("method", owner, nameAndType), k -> {
+                bytes.u1(10).u2(owner).u2(nameAndType);
+                return count++;
+            });
+        }
+
+        int doubleConstant(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            return entries.computeIfAbsent(bits, k -> {
+                bytes.u1(6).u4((int) (bits >>> 32)).u4((int) bits);
+                int index = count;
+                count += 2; // doubles take two constant pool slots
+                return index;
+            });
+        }
+    }
+}
@@ -0,0 +1,274 @@
+import java.util.*;
+import metrics.Metrics;
+
+// Multi-pass optimiser for ConstantFoldingOptimizer ASTs. A pass manager runs the
+// passes in order and records, per pass, the nodes and operators before and after
+// and the time it took:
+//
+//   fold          constant folding (ConstantFoldingOptimizer.foldConstants)
+//   identities    x - 0, x + -0, -0 + x, x * 1, 1 * x, x / 1  ->  x
+//   reassociate   gather the constants of a +/- or * / chain into one, 2 * x * 3 -> x * 6
+//   cse           hash-cons equal subtrees into one shared node, turning the tree into a DAG
+//
+// Identities that are not exact in IEEE arithmetic (x * 0, x - x, x / x) are left
+// alone, since they change the result for NaN and infinities, and so is x + 0: for
+// x = -0.0 it gives +0.0, which 1 / x tells apart.
+//
+// Reassociation, by contrast, is not exact and is applied by design. Combining the
+// constants first skips the roundings, overflows and underflows of the original
+// order, so the result can differ by far more than the last bits: x + 1 - 1 becomes
+// x, which is 1e-20 where the original gives 0, and x * 1e300 * 1e-300 stays finite
+// where the original overflows. Only the sign of a zero is kept: constants that
+// cancel out still leave a + 0.0 behind (x + 1 - 1 -> x + 0.0), since the original
+// turns -0.0 into +0.0 too; only -0.0 terms (x - 0 - 0) vanish without a trace.
+public class ExpressionOptimizer {
+
+    interface Pass {
+        String name();
+        ConstantFoldingOptimizer.ASTNode run(ConstantFoldingOptimizer.ASTNode node);
+    }
+
+    static class PassStats {
+        final String name;
+        int nodesBefore, nodesAfter, opsBefore, opsAfter;
+        long nanos;
+
+        PassStats(String name) {
+            this.name = name;
+        }
+
+        public String toString() {
+            return String.format("%-12s nodes %6d -> %-6d ops %6d -> %-6d %8.3f ms",
+                    name, nodesBefore, nodesAfter, opsBefore, opsAfter, nanos / 1e6);
+        }
+    }
+
+    // Fixed once the pipeline is built; optimize() keeps its state per call, so one
+    // optimiser can serve several threads (an ExpressionCache, say)
+    private final List<Pass> passes = new ArrayList<>();
+
+    ExpressionOptimizer add(Pass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    // The default pipeline
+    static ExpressionOptimizer standard() {
+        return new ExpressionOptimizer()
+                .add(pass("fold", ConstantFoldingOptimizer::foldConstants))
+                .add(pass("identities", ExpressionOptimizer::simplifyIdentities))
+                .add(pass("reassociate", ExpressionOptimizer::reassociate))
+                .add(pass("identities", ExpressionOptimizer::simplifyIdentities))
+                .add(pass("cse", node -> new HashConser().intern(node)));
+    }
+
+    static Pass pass(String name, java.util.function.UnaryOperator<ConstantFoldingOptimizer.ASTNode> body) {
+        return new Pass() {
+            public String name() { return name; }
+            public ConstantFoldingOptimizer.ASTNode run(ConstantFoldingOptimizer.ASTNode node) { return body.apply(node); }
+        };
+    }
+
+    ConstantFoldingOptimizer.ASTNode optimize(ConstantFoldingOptimizer.ASTNode node) {
+        return optimize(node, null);
+    }
+
+    // Run the passes, adding one PassStats per pass to stats unless it is null
+    ConstantFoldingOptimizer.ASTNode optimize(ConstantFoldingOptimizer.ASTNode node, List<PassStats> stats) {
+        for (Pass pass : passes) {
+            PassStats stat = new PassStats(pass.name());
+            stat.nodesBefore = countNodes(node, false);
+            stat.opsBefore = countNodes(node, true);
+            long start = System.nanoTime();
+            node = pass.run(node);
+            stat.nanos = System.nanoTime() - start;
+            if (Metrics.ENABLED) Metrics.histogram("cfo.pass." + stat.name).record(stat.nanos);
+            stat.nodesAfter = countNodes(node, false);
+            stat.opsAfter = countNodes(node, true);
+            if (stats != null) stats.add(stat);
+        }
+        return node;
+    }
+
+    // Distinct nodes (or only operator nodes) reachable from node; shared nodes count once
+    static int countNodes(ConstantFoldingOptimizer.ASTNode node, boolean operatorsOnly) {
+        Set<ConstantFoldingOptimizer.ASTNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<ConstantFoldingOptimizer.ASTNode> pending = new ArrayDeque<>();
+        pending.push(node);
+        int count = 0;
+        while (!pending.isEmpty()) {
+            ConstantFoldingOptimizer.ASTNode current = pending.pop();
+            if (!seen.add(current)) continue;
+            if (current instanceof ConstantFoldingOptimizer.BinaryOpNode op) {
+                count++;
+                pending.push(op.left);
+                pending.push(op.right);
+            } else if (!operatorsOnly) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // ========== Algebraic identities ==========
+    static ConstantFoldingOptimizer.ASTNode simplifyIdentities(ConstantFoldingOptimizer.ASTNode node) {
+        if (!(node instanceof ConstantFoldingOptimizer.BinaryOpNode op)) return node;
+        ConstantFoldingOptimizer.ASTNode left = simplifyIdentities(op.left);
+        ConstantFoldingOptimizer.ASTNode right = simplifyIdentities(op.right);
+        switch (op.op) {
+            case "+":
+                if (isZero(right, true)) return left;
+                if (isZero(left, true)) return right;
+                break;
+            case "-":
+                if (isZero(right, false)) return left;
+                break;
+            case "*":
+                if (isConstant(right, 1)) return left;
+                if (isConstant(left, 1)) return right;
+                break;
+            case "/":
+                if (isConstant(right, 1)) return left;
+                break;
+        }
+        return left == op.left && right == op.right ? op : new ConstantFoldingOptimizer.BinaryOpNode(op.op, left, right);
+    }
+
+    private static boolean isConstant(ConstantFoldingOptimizer.ASTNode node, double value) {
+        return node instanceof ConstantFoldingOptimizer.NumberNode number && number.value == value;
+    }
+
+    // 0.0 or -0.0 exactly; == cannot tell them apart
+    private static boolean isZero(ConstantFoldingOptimizer.ASTNode node, boolean negative) {
+        return node instanceof ConstantFoldingOptimizer.NumberNode number
+                && Double.doubleToRawLongBits(number.value) == Double.doubleToRawLongBits(negative ? -0.0 : 0.0);
+    }
+
+    // ========== Reassociation ==========
+    // A chain of + and - (or * and /) is flattened into terms, each either added or
+    // subtracted (multiplied or divided). When the chain holds two or more constants
+    // they are combined into one, placed last, and the chain is rebuilt left to right.
+    // Chains with fewer constants keep their shape.
+    static ConstantFoldingOptimizer.ASTNode reassociate(ConstantFoldingOptimizer.ASTNode node) {
+        if (!(node instanceof ConstantFoldingOptimizer.BinaryOpNode op)) return node;
+        boolean additive = op.op.equals("+") || op.op.equals("-");
+        String direct = additive ? "+" : "*";
+        String inverse = additive ? "-" : "/";
+
+        List<ConstantFoldingOptimizer.ASTNode> terms = new ArrayList<>();
+        List<Boolean> inverted = new ArrayList<>();
+        flatten(op, false, direct, inverse, terms, inverted);
+        int constantTerms = 0;
+        for (ConstantFoldingOptimizer.ASTNode term : terms) {
+            if (term instanceof ConstantFoldingOptimizer.NumberNode) constantTerms++;
+        }
+        if (constantTerms < 2) return reassociateLeaves(op, direct, inverse);
+
+        // -0.0 is the exact additive identity: -0.0 + 0.0 is +0.0, so a sum that starts
+        // from it is -0.0 only when every constant was
+        double identity = additive ? -0.0 : 1;
+        double constant = identity;
+        List<ConstantFoldingOptimizer.ASTNode> directTerms = new ArrayList<>();
+        List<ConstantFoldingOptimizer.ASTNode> inverseTerms = new ArrayList<>();
+        for (int i = 0; i < terms.size(); i++) {
+            ConstantFoldingOptimizer.ASTNode term = terms.get(i);
+            if (term instanceof ConstantFoldingOptimizer.NumberNode number) {
+                if (additive) constant += inverted.get(i) ? -number.value : number.value;
+                else constant = inverted.get(i) ? constant / number.value : constant * number.value;
+            } else {
+                (inverted.get(i) ? inverseTerms : directTerms).add(reassociate(term));
+            }
+        }
+
+        ConstantFoldingOptimizer.ASTNode result = null;
+        for (ConstantFoldingOptimizer.ASTNode term : directTerms) {
+            result = result == null ? term : new ConstantFoldingOptimizer.BinaryOpNode(direct, result, term);
+        }
+        boolean constantPlaced = false;
+        if (result == null) {
+            result = new ConstantFoldingOptimizer.NumberNode(constant); // constant leads: 2 - x, 6 / x
+            constantPlaced = true;
+        }
+        for (ConstantFoldingOptimizer.ASTNode term : inverseTerms) {
+            result = new ConstantFoldingOptimizer.BinaryOpNode(inverse, result, term);
+        }
+        if (!constantPlaced && Double.doubleToRawLongBits(constant) != Double.doubleToRawLongBits(identity)) {
+            if (additive && constant < 0) {
+                result = new ConstantFoldingOptimizer.BinaryOpNode("-", result, new ConstantFoldingOptimizer.NumberNode(-constant));
+            } else {
+                result = new ConstantFoldingOptimizer.BinaryOpNode(direct, result, new ConstantFoldingOptimizer.NumberNode(constant));
+            }
+        }
+        return result;
+    }
+
+    private static void flatten(ConstantFoldingOptimizer.ASTNode node, boolean invert, String direct, String inverse,
+                                List<ConstantFoldingOptimizer.ASTNode> terms, List<Boolean> inverted) {
+        if (node instanceof ConstantFoldingOptimizer.BinaryOpNode op && (op.op.equals(direct) || op.op.equals(inverse))) {
+            flatten(op.left, invert, direct, inverse, terms, inverted);
+            flatten(op.right, op.op.equals(inverse) != invert, direct, inverse, terms, inverted);
+        } else {
+            terms.add(node);
+            inverted.add(invert);
+        }
+    }
+
+    // Keep the chain as it is and reassociate only the subtrees hanging off it
+    private static ConstantFoldingOptimizer.ASTNode reassociateLeaves(ConstantFoldingOptimizer.ASTNode node, String direct, String inverse) {
+        if (node instanceof ConstantFoldingOptimizer.BinaryOpNode op && (op.op.equals(direct) || op.op.equals(inverse))) {
+            ConstantFoldingOptimizer.ASTNode left = reassociateLeaves(op.left, direct, inverse);
+            ConstantFoldingOptimizer.ASTNode right = reassociateLeaves(op.right, direct, inverse);
+            return left == op.left && right == op.right ? op : new ConstantFoldingOptimizer.BinaryOpNode(op.op, left, right);
+        }
+        return reassociate(node);
+    }
+
+    // ========== Common subexpressions ==========
+    // Rebuilds the tree bottom-up, reusing one node for every structurally equal
+    // subtree. Children are interned first, so two operator nodes are equal exactly
+    // when their operators match and their children are the same objects.
+    static class HashConser {
+        private final Map<Object, ConstantFoldingOptimizer.ASTNode> table = new HashMap<>();
+
+        ConstantFoldingOptimizer.ASTNode intern(ConstantFoldingOptimizer.ASTNode node) {
+            Object key;
+            ConstantFoldingOptimizer.ASTNode candidate = node;
+            if (node instanceof ConstantFoldingOptimizer.NumberNode number) {
+                key = Double.doubleToLongBits(number.value);
+            } else if (node instanceof ConstantFoldingOptimizer.VariableNode variable) {
+                key = variable.name;
+            } else if (node instanceof ConstantFoldingOptimizer.BinaryOpNode op) {
+                ConstantFoldingOptimizer.ASTNode left = intern(op.left);
+                ConstantFoldingOptimizer.ASTNode right = intern(op.right);
+                key = new Key(op.op, left, right);
+                if (left != op.left || right != op.right) {
+                    candidate = new ConstantFoldingOptimizer.BinaryOpNode(op.op, left, right);
+                }
+            } else {
+                return node;
+            }
+            ConstantFoldingOptimizer.ASTNode existing = table.putIfAbsent(key, candidate);
+            return existing != null ? existing : candidate;
+        }
+
+        // Operator plus interned children, which are compared by reference
+        private static final class Key {
+            final String op;
+            final ConstantFoldingOptimizer.ASTNode left, right;
+
+            Key(String op, ConstantFoldingOptimizer.ASTNode left, ConstantFoldingOptimizer.ASTNode right) {
+                this.op = op;
+                this.left = left;
+                this.right = right;
+            }
+
+            public boolean equals(Object other) {
+                return other instanceof Key key && key.op.equals(op) && key.left == left && key.right == right;
+            }
+
+            public int hashCode() {
+                return (op.hashCode() * 31 + System.identityHashCode(left)) * 31 + System.identityHashCode(right);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+
+// Longest-match scanner driven by LexerTables over a ByteBuffer, usually a memory
+// mapping of the source file. A token is its category and [start, end) offsets into
+// the buffer, so scanning allocates nothing; text() copies one out when it is needed.
+// Categories marked skip are consumed without being returned.
+//
+//   DfaScanner scanner = DfaScanner.ofFile(tables, path);
+//   for (int kind; (kind = scanner.next()) != DfaScanner.EOF; )
+//       System.out.println(tables.categories[kind] + ": " + scanner.text());
+//
+// A byte that starts no match becomes a one-byte ERROR token, like flex's default rule
+// without the echo. A scanner is reset onto another buffer with reset(), so one per
+// thread can go through any number of files.
+public class DfaScanner {
+    static final int EOF = -1;
+    static final int ERROR = -2;
+
+    // The tables with each state written as the offset of its row, so a step is a class
+    // lookup and one load with no multiply
+    private final int[] classOf;
+    private final int startRow;
+    private final int[] rows; // next state's row offset, 0 for the dead state
+    private final int[] acceptByRow; // category at a row offset, or -1
+    private final boolean[] skip;
+
+    private ByteBuffer input;
+    private int pos, limit;
+
+    // Current token
+    int kind = EOF;
+    int start, end;
+
+    DfaScanner(LexerTables tables, ByteBuffer input) {
+        this.classOf = tables.classOf;
+        this.skip = tables.skip;
+        int classes = tables.classes;
+        this.startRow = tables.start * classes;
+        this.rows = new int[tables.transitions.length];
+        for (int i = 0; i < rows.length; i++) rows[i] = tables.transitions[i] * classes;
+        this.acceptByRow = new int[tables.transitions.length];
+        Arrays.fill(acceptByRow, -1);
+        for (int state = 0; state < tables.stateCount(); state++) acceptByRow[state * classes] = tables.accept[state];
+        reset(input);
+    }
+
+    // Scan a file through a read-only memory mapping (up to 2 GiB)
+    static DfaScanner ofFile(LexerTables tables, Path path) throws IOException {
+        return new DfaScanner(tables, map(path));
+    }
+
+    static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // Scan buffer from its position to its limit
+    void reset(ByteBuffer buffer) {
+        input = buffer;
+        pos = buffer.position();
+        limit = buffer.limit();
+        kind = EOF;
+        start = end = pos;
+    }
+
+    // Advance to the next token that is not skipped and return its category, ERROR or EOF
+    int next() {
+        ByteBuffer input = this.input;
+        int[] classOf = this.classOf, rows = this.rows, acceptByRow = this.acceptByRow;
+        int limit = this.limit;
+        while (pos < limit) {
+            int row = startRow, i = pos;
+            int matched = ERROR, matchEnd = pos + 1;
+            while (i < limit) {
+                row = rows[row + classOf[input.get(i) & 0xFF]];
+                if (row == 0) break; // the dead state
+                i++;
+                int category = acceptByRow[row];
+                if (category >= 0) {
+                    matched = category;
+                    matchEnd = i;
+                }
+            }
+            start = pos;
+            end = pos = matchEnd;
+            if (matched < 0 || !skip[matched]) return kind = matched;
+        }
+        start = end = pos;
+        return kind = EOF;
+    }
+
+    // Text of the current token, decoded as UTF-8
+    String text() {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = input.get(start + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
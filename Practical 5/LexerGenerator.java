@@ -0,0 +1,609 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Lexer generator for lex-style specs, in place of running flex and gcc per program:
+//
+//   # comment
+//   digit   [0-9]+                 macros: name, then a pattern
+//   letter  [a-zA-Z_][a-zA-Z0-9_]*
+//   %%
+//   int          Keyword           rules: a pattern, then the category it reports
+//   {letter}     Identifier
+//   [ \t\n]+     skip              "skip" matches and discards, like an empty action
+//
+// Patterns are lex's: characters, "quoted strings", [classes] with ranges and ^,
+// . (any byte but newline), {macro}, grouping, |, *, + and ?, and escapes \n \t \r
+// \f \v \xHH. A pattern ends at the first space outside quotes and brackets. The
+// longest match wins, then the earliest rule.
+//
+// Each rule is compiled to a Thompson NFA. The subset construction gives a DFA over
+// byte classes (bytes that every pattern treats alike share a class), and Moore's
+// partition refinement then merges states that no input tells apart. The result is
+// a LexerTables, which DfaScanner runs over memory-mapped files.
+//
+// Usage: java LexerGenerator <spec> [--count] <file>...
+//   prints "Category: text" per token, as lexical_analyzer.l does, or with --count
+//   the number of tokens per category and the scanning speed
+public class LexerGenerator {
+    static final String SKIP = "skip";
+
+    private final Map<String, String> macros = new HashMap<>();
+    private final List<String> patterns = new ArrayList<>();
+    private final List<String> ruleCategories = new ArrayList<>();
+
+    // Sizes of the last generate(), for the summary line
+    int nfaStates, dfaStates;
+
+    static LexerGenerator read(Path spec) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(spec, StandardCharsets.UTF_8)) {
+            return read(in);
+        } catch (IOException e) {
+            throw new IOException(spec + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Definitions up to "%%", rules after it; a second "%%" ends the rules
+    static LexerGenerator read(BufferedReader in) throws IOException {
+        LexerGenerator generator = new LexerGenerator();
+        boolean rules = false;
+        String line;
+        for (int number = 1; (line = in.readLine()) != null; number++) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+            if (trimmed.equals("%%")) {
+                if (rules) break;
+                rules = true;
+                continue;
+            }
+            try {
+                if (rules) {
+                    int end = patternEnd(trimmed);
+                    String category = trimmed.substring(end).trim();
+                    if (category.isEmpty()) throw new IllegalArgumentException("rule without a category");
+                    generator.rule(trimmed.substring(0, end), category);
+                } else {
+                    int space = 0;
+                    while (space < trimmed.length() && !Character.isWhitespace(trimmed.charAt(space))) space++;
+                    String pattern = trimmed.substring(space).trim();
+                    if (pattern.isEmpty()) throw new IllegalArgumentException("macro without a pattern");
+                    generator.macro(trimmed.substring(0, space), pattern);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + number + ": " + e.getMessage() + ": " + trimmed, e);
+            }
+        }
+        if (generator.patterns.isEmpty()) throw new IOException("No rules");
+        return generator;
+    }
+
+    // Where the pattern at the start of a rule line ends: the first whitespace outside
+    // quotes and brackets
+    private static int patternEnd(String line) {
+        boolean quoted = false, bracketed = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (quoted) {
+                quoted = c != '"';
+            } else if (bracketed) {
+                bracketed = c != ']';
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == '[') {
+                bracketed = true;
+            } else if (Character.isWhitespace(c)) {
+                return i;
+            }
+        }
+        return line.length();
+    }
+
+    void macro(String name, String pattern) {
+        macros.put(name, pattern);
+    }
+
+    // Rules are tried in the order they are added
+    void rule(String pattern, String category) {
+        patterns.add(pattern);
+        ruleCategories.add(category);
+    }
+
+    LexerTables generate() {
+        // Categories in order of first use
+        List<String> categories = new ArrayList<>();
+        int[] ruleCategory = new int[patterns.size()];
+        for (int r = 0; r < patterns.size(); r++) {
+            int c = categories.indexOf(ruleCategories.get(r));
+            if (c < 0) {
+                c = categories.size();
+                categories.add(ruleCategories.get(r));
+            }
+            ruleCategory[r] = c;
+        }
+        boolean[] skip = new boolean[categories.size()];
+        for (int c = 0; c < skip.length; c++) skip[c] = categories.get(c).equals(SKIP);
+
+        // One NFA with an ε edge from its start to each rule's fragment
+        Nfa nfa = new Nfa();
+        int start = nfa.state();
+        for (int r = 0; r < patterns.size(); r++) {
+            Fragment f;
+            try {
+                f = new RegexParser(patterns.get(r), nfa, macros, 0).parse();
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Pattern " + patterns.get(r) + ": " + e.getMessage(), e);
+            }
+            nfa.epsilon(start, f.start);
+            nfa.accept[f.end] = r;
+        }
+        nfaStates = nfa.size;
+
+        int[] classOf = byteClasses(nfa);
+        int classes = 0;
+        for (int c : classOf) classes = Math.max(classes, c + 1);
+        int[] representative = new int[classes];
+        for (int b = 255; b >= 0; b--) representative[classOf[b]] = b;
+
+        // Subset construction; the empty set is the dead state 0
+        Map<BitSet, Integer> ids = new HashMap<>();
+        List<BitSet> sets = new ArrayList<>();
+        BitSet dead = new BitSet();
+        ids.put(dead, 0);
+        sets.add(dead);
+        BitSet initial = new BitSet();
+        initial.set(start);
+        nfa.close(initial);
+        ids.put(initial, 1);
+        sets.add(initial);
+        int[] transitions = new int[16 * classes];
+        int[] acceptRule = new int[16];
+        for (int d = 0; d < sets.size(); d++) {
+            BitSet set = sets.get(d);
+            if ((d + 1) * classes > transitions.length) transitions = Arrays.copyOf(transitions, transitions.length * 2);
+            if (d == acceptRule.length) acceptRule = Arrays.copyOf(acceptRule, d * 2);
+            acceptRule[d] = -1;
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                int r = nfa.accept[s];
+                if (r >= 0 && (acceptRule[d] < 0 || r < acceptRule[d])) acceptRule[d] = r;
+            }
+            for (int c = 0; c < classes; c++) {
+                int b = representative[c];
+                BitSet next = new BitSet();
+                for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                    long[] label = nfa.label[s];
+                    if (label != null && (label[b >>> 6] & (1L << b)) != 0) next.set(nfa.target[s]);
+                }
+                nfa.close(next);
+                Integer id = ids.get(next);
+                if (id == null) {
+                    id = sets.size();
+                    ids.put(next, id);
+                    sets.add(next);
+                }
+                transitions[d * classes + c] = id;
+            }
+        }
+        dfaStates = sets.size();
+        int[] accept = new int[dfaStates];
+        for (int d = 0; d < dfaStates; d++) accept[d] = acceptRule[d] < 0 ? -1 : ruleCategory[acceptRule[d]];
+
+        return minimise(categories.toArray(new String[0]), skip, classOf, classes, transitions, accept);
+    }
+
+    // Partition bytes so that two bytes share a class when every edge label contains
+    // both or neither of them
+    private static int[] byteClasses(Nfa nfa) {
+        int[] classOf = new int[256];
+        int classes = 1;
+        int[] inside = new int[257], size = new int[257], split = new int[257];
+        for (int s = 0; s < nfa.size; s++) {
+            long[] label = nfa.label[s];
+            if (label == null) continue;
+            Arrays.fill(inside, 0, classes, 0);
+            Arrays.fill(size, 0, classes, 0);
+            for (int b = 0; b < 256; b++) {
+                size[classOf[b]]++;
+                if ((label[b >>> 6] & (1L << b)) != 0) inside[classOf[b]]++;
+            }
+            int before = classes;
+            for (int c = 0; c < before; c++) split[c] = inside[c] > 0 && inside[c] < size[c] ? classes++ : -1;
+            for (int b = 0; b < 256; b++) {
+                int c = classOf[b];
+                if (split[c] >= 0 && (label[b >>> 6] & (1L << b)) != 0) classOf[b] = split[c];
+            }
+        }
+        return classOf;
+    }
+
+    // Moore's algorithm: start from the states grouped by what they accept and split
+    // groups until every member of a group goes to the same groups on every class.
+    // The minimal DFA numbers the dead group 0 and the rest breadth-first from start.
+    private static LexerTables minimise(String[] categories, boolean[] skip, int[] classOf, int classes,
+                                        int[] transitions, int[] accept) {
+        int n = accept.length;
+        int[] block = new int[n];
+        Map<Signature, Integer> ids = new HashMap<>();
+        for (int s = 0; s < n; s++) {
+            block[s] = ids.computeIfAbsent(new Signature(new int[] { accept[s] }), k -> ids.size());
+        }
+        int blocks = ids.size();
+        while (true) {
+            ids.clear();
+            int[] refined = new int[n];
+            for (int s = 0; s < n; s++) {
+                int[] key = new int[classes + 1];
+                key[0] = block[s];
+                for (int c = 0; c < classes; c++) key[c + 1] = block[transitions[s * classes + c]];
+                refined[s] = ids.computeIfAbsent(new Signature(key), k -> ids.size());
+            }
+            block = refined;
+            if (ids.size() == blocks) break;
+            blocks = ids.size();
+        }
+
+        int[] member = new int[blocks];
+        for (int s = n - 1; s >= 0; s--) member[block[s]] = s;
+        int[] newId = new int[blocks];
+        Arrays.fill(newId, -1);
+        int[] queue = new int[blocks];
+        int count = 0;
+        newId[block[0]] = count;
+        queue[count++] = block[0];
+        if (newId[block[1]] < 0) {
+            newId[block[1]] = count;
+            queue[count++] = block[1];
+        }
+        for (int head = 0; head < count; head++) {
+            int s = member[queue[head]];
+            for (int c = 0; c < classes; c++) {
+                int b = block[transitions[s * classes + c]];
+                if (newId[b] < 0) {
+                    newId[b] = count;
+                    queue[count++] = b;
+                }
+            }
+        }
+        int[] minimalTransitions = new int[count * classes];
+        int[] minimalAccept = new int[count];
+        for (int d = 0; d < count; d++) {
+            int s = member[queue[d]];
+            minimalAccept[d] = accept[s];
+            for (int c = 0; c < classes; c++) {
+                minimalTransitions[d * classes + c] = newId[block[transitions[s * classes + c]]];
+            }
+        }
+        return new LexerTables(categories, skip, classOf, classes, newId[block[1]], minimalTransitions, minimalAccept);
+    }
+
+    // An int[] compared by content, as a map key
+    private static final class Signature {
+        final int[] values;
+        final int hash;
+
+        Signature(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Signature && Arrays.equals(values, ((Signature) o).values);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // NFA states in parallel arrays: each state has at most one edge on a set of
+    // bytes, any number of ε edges, and the rule it accepts or -1
+    private static final class Nfa {
+        int size;
+        long[][] label = new long[64][];
+        int[] target = new int[64];
+        int[][] epsilon = new int[64][];
+        int[] epsilonCount = new int[64];
+        int[] accept = new int[64];
+
+        int state() {
+            if (size == target.length) {
+                int capacity = size * 2;
+                label = Arrays.copyOf(label, capacity);
+                target = Arrays.copyOf(target, capacity);
+                epsilon = Arrays.copyOf(epsilon, capacity);
+                epsilonCount = Arrays.copyOf(epsilonCount, capacity);
+                accept = Arrays.copyOf(accept, capacity);
+            }
+            accept[size] = -1;
+            return size++;
+        }
+
+        void edge(int from, long[] bytes, int to) {
+            label[from] = bytes;
+            target[from] = to;
+        }
+
+        void epsilon(int from, int to) {
+            int[] list = epsilon[from];
+            if (list == null) {
+                list = epsilon[from] = new int[2];
+            } else if (epsilonCount[from] == list.length) {
+                list = epsilon[from] = Arrays.copyOf(list, list.length * 2);
+            }
+            list[epsilonCount[from]++] = to;
+        }
+
+        // Add every state reachable by ε edges
+        void close(BitSet states) {
+            int[] stack = new int[Math.max(16, states.cardinality())];
+            int top = 0;
+            for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+                if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                stack[top++] = s;
+            }
+            while (top > 0) {
+                int s = stack[--top];
+                for (int i = 0; i < epsilonCount[s]; i++) {
+                    int t = epsilon[s][i];
+                    if (states.get(t)) continue;
+                    states.set(t);
+                    if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                    stack[top++] = t;
+                }
+            }
+        }
+    }
+
+    private static final class Fragment {
+        final int start, end;
+
+        Fragment(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    // Recursive descent over one pattern, building its Thompson fragment:
+    //
+    //   alternation  := concatenation ('|' concatenation)*
+    //   concatenation := repetition+
+    //   repetition   := atom ('*' | '+' | '?')*
+    //   atom         := '(' alternation ')' | '[' class ']' | '"' string '"' | '.'
+    //                 | '{' macro '}' | escape | character
+    private static final class RegexParser {
+        private static final int MAX_MACRO_DEPTH = 32;
+
+        private final String text;
+        private final Nfa nfa;
+        private final Map<String, String> macros;
+        private final int depth;
+        private int pos;
+
+        RegexParser(String text, Nfa nfa, Map<String, String> macros, int depth) {
+            this.text = text;
+            this.nfa = nfa;
+            this.macros = macros;
+            this.depth = depth;
+        }
+
+        Fragment parse() {
+            Fragment f = alternation();
+            if (pos < text.length()) throw error("unexpected '" + text.charAt(pos) + "'");
+            return f;
+        }
+
+        private Fragment alternation() {
+            Fragment f = concatenation();
+            while (pos < text.length() && text.charAt(pos) == '|') {
+                pos++;
+                Fragment g = concatenation();
+                int s = nfa.state(), e = nfa.state();
+                nfa.epsilon(s, f.start);
+                nfa.epsilon(s, g.start);
+                nfa.epsilon(f.end, e);
+                nfa.epsilon(g.end, e);
+                f = new Fragment(s, e);
+            }
+            return f;
+        }
+
+        private Fragment concatenation() {
+            Fragment f = null;
+            while (pos < text.length() && text.charAt(pos) != '|' && text.charAt(pos) != ')') {
+                Fragment g = repetition();
+                if (f == null) {
+                    f = g;
+                } else {
+                    nfa.epsilon(f.end, g.start);
+                    f = new Fragment(f.start, g.end);
+                }
+            }
+            if (f == null) throw error("empty pattern");
+            return f;
+        }
+
+        private Fragment repetition() {
+            Fragment f = atom();
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (c != '*' && c != '+' && c != '?') break;
+                pos++;
+                int s = nfa.state(), e = nfa.state();
+                nfa.epsilon(s, f.start);
+                nfa.epsilon(f.end, e);
+                if (c != '+') nfa.epsilon(s, e); // zero times
+                if (c != '?') nfa.epsilon(f.end, f.start); // again
+                f = new Fragment(s, e);
+            }
+            return f;
+        }
+
+        private Fragment atom() {
+            char c = text.charAt(pos++);
+            switch (c) {
+                case '(': {
+                    Fragment f = alternation();
+                    if (pos >= text.length() || text.charAt(pos) != ')') throw error("missing ')'");
+                    pos++;
+                    return f;
+                }
+                case '[':
+                    return bytes(characterClass());
+                case '"': {
+                    StringBuilder literal = new StringBuilder();
+                    while (true) {
+                        if (pos >= text.length()) throw error("missing '\"'");
+                        char d = text.charAt(pos++);
+                        if (d == '"') break;
+                        literal.append(d == '\\' ? escape() : d);
+                    }
+                    return literal(literal.toString());
+                }
+                case '.': {
+                    long[] set = new long[4];
+                    Arrays.fill(set, -1L);
+                    set[0] &= ~(1L << '\n');
+                    return bytes(set);
+                }
+                case '{': {
+                    int close = text.indexOf('}', pos);
+                    if (close < 0) throw error("missing '}'");
+                    String name = text.substring(pos, close);
+                    String macro = macros.get(name);
+                    if (macro == null) throw error("undefined macro {" + name + "}");
+                    if (depth == MAX_MACRO_DEPTH) throw error("macros nest too deeply at {" + name + "}");
+                    pos = close + 1;
+                    // Parsed afresh at every use, since a fragment's states can only be wired in once
+                    return new RegexParser(macro, nfa, macros, depth + 1).parse();
+                }
+                case '\\':
+                    return literal(String.valueOf(escape()));
+                case ')':
+                case '*':
+                case '+':
+                case '?':
+                case '|':
+                    throw error("unexpected '" + c + "'");
+                default:
+                    return literal(String.valueOf(c));
+            }
+        }
+
+        // [abc], [a-z], [^\n]; a ']' or '-' first, or a '-' last, is literal
+        private long[] characterClass() {
+            long[] set = new long[4];
+            boolean negated = pos < text.length() && text.charAt(pos) == '^';
+            if (negated) pos++;
+            boolean first = true;
+            while (true) {
+                if (pos >= text.length()) throw error("missing ']'");
+                char c = text.charAt(pos++);
+                if (c == ']' && !first) break;
+                first = false;
+                int low = c == '\\' ? escape() : c;
+                int high = low;
+                if (pos + 1 < text.length() && text.charAt(pos) == '-' && text.charAt(pos + 1) != ']') {
+                    pos++;
+                    char d = text.charAt(pos++);
+                    high = d == '\\' ? escape() : d;
+                    if (high < low) throw error("empty range " + (char) low + "-" + (char) high);
+                }
+                if (high > 255) throw error("classes hold bytes, not '" + (char) high + "'");
+                for (int b = low; b <= high; b++) set[b >>> 6] |= 1L << b;
+            }
+            if (negated) {
+                for (int w = 0; w < 4; w++) set[w] = ~set[w];
+            }
+            return set;
+        }
+
+        // The character after a backslash
+        private char escape() {
+            if (pos >= text.length()) throw error("trailing '\\'");
+            char c = text.charAt(pos++);
+            switch (c) {
+                case 'n': return '\n';
+                case 't': return '\t';
+                case 'r': return '\r';
+                case 'f': return '\f';
+                case 'v': return '\u000B';
+                case 'x': {
+                    int end = Math.min(pos + 2, text.length());
+                    try {
+                        char b = (char) Integer.parseInt(text.substring(pos, end), 16);
+                        pos = end;
+                        return b;
+                    } catch (NumberFormatException e) {
+                        throw error("bad \\x escape");
+                    }
+                }
+                default: return c;
+            }
+        }
+
+        private Fragment bytes(long[] set) {
+            int s = nfa.state(), e = nfa.state();
+            nfa.edge(s, set, e);
+            return new Fragment(s, e);
+        }
+
+        // A chain of single-byte edges over the UTF-8 encoding of s
+        private Fragment literal(String s) {
+            byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+            int first = nfa.state(), state = first;
+            for (byte b : encoded) {
+                int next = nfa.state();
+                long[] set = new long[4];
+                set[(b & 0xFF) >>> 6] |= 1L << (b & 0xFF);
+                nfa.edge(state, set, next);
+                state = next;
+            }
+            return new Fragment(first, state);
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        boolean count = arguments.remove("--count");
+        if (arguments.size() < 2) {
+            System.err.println("Usage: java LexerGenerator <spec> [--count] <file>...");
+            System.exit(2);
+        }
+        LexerGenerator generator = read(Paths.get(arguments.get(0)));
+        long t0 = System.nanoTime();
+        LexerTables tables = generator.generate();
+        System.err.printf("%d rules: %d NFA states, %d DFA states, %d after minimisation, %d byte classes (%.3f ms)%n",
+                generator.patterns.size(), generator.nfaStates, generator.dfaStates, tables.stateCount(),
+                tables.classes, (System.nanoTime() - t0) / 1e6);
+
+        long[] counts = new long[tables.categories.length + 1]; // the last is unmatched bytes
+        long bytes = 0, start = System.nanoTime();
+        PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false, "UTF-8");
+        for (String file : arguments.subList(1, arguments.size())) {
+            DfaScanner scanner = DfaScanner.ofFile(tables, Paths.get(file));
+            for (int kind; (kind = scanner.next()) != DfaScanner.EOF; ) {
+                if (count) {
+                    counts[kind == DfaScanner.ERROR ? counts.length - 1 : kind]++;
+                } else {
+                    out.println((kind == DfaScanner.ERROR ? "Unmatched" : tables.categories[kind]) + ": " + scanner.text());
+                }
+            }
+            bytes += scanner.end;
+        }
+        if (count) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            for (int c = 0; c < tables.categories.length; c++) {
+                if (!tables.skip[c]) out.println(tables.categories[c] + ": " + counts[c]);
+            }
+            if (counts[counts.length - 1] > 0) out.println("Unmatched: " + counts[counts.length - 1]);
+            out.printf("%d bytes in %.3f s: %.1f MB/s%n", bytes, seconds, bytes / seconds / 1e6);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,44 @@
+// The tables a LexerGenerator builds from a spec: a minimal DFA over byte classes.
+//
+//   classOf       byte (0..255) -> class; bytes that no pattern tells apart share one
+//   transitions   [state * classes + class] -> next state, DEAD when no rule can match
+//   accept        state -> category of the longest match ending there, or -1
+//
+// State 0 is the dead state and every row of it leads back to 0, so the scanner stops
+// on it without a separate check. Categories are the distinct names on the right of
+// the rules, in order of first use; where two rules match the same longest text the
+// earlier rule's category wins, as in lex.
+public class LexerTables {
+    static final int DEAD = 0;
+
+    final String[] categories;
+    final boolean[] skip; // per category: matched, but not reported (whitespace)
+    final int[] classOf;
+    final int classes;
+    final int start;
+    final int[] transitions;
+    final int[] accept;
+
+    LexerTables(String[] categories, boolean[] skip, int[] classOf, int classes, int start,
+                int[] transitions, int[] accept) {
+        this.categories = categories;
+        this.skip = skip;
+        this.classOf = classOf;
+        this.classes = classes;
+        this.start = start;
+        this.transitions = transitions;
+        this.accept = accept;
+    }
+
+    int stateCount() {
+        return accept.length;
+    }
+
+    // Category id by name, or -1
+    int category(String name) {
+        for (int c = 0; c < categories.length; c++) {
+            if (categories[c].equals(name)) return c;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Token statistics for whole source trees on all cores, in place of printing every
+// token as lexical_analyzer.l does. The files under the given roots are split among
+// fork-join tasks, so idle workers steal what is left of the big directories. Each
+// worker has its own DfaScanner and read buffer, while the LexerTables are shared.
+//
+// Every file writes its counts into its own row of one flat array, and each task
+// returns the totals of its files, which are summed as the tasks join. No counter is
+// shared between threads. Files of MAP_THRESHOLD bytes or more are memory-mapped.
+// Smaller ones are read into the worker's buffer, since a mapping is only released
+// when the GC gets to it and tens of thousands of them would pile up first.
+//
+// The rows are written in path order, as CSV:
+//
+//   file,bytes,Keyword,Identifier,...,Unmatched
+//
+// or, with --binary, as DataOutputStream records with numbers as unsigned LEB128
+// varints (7 bits a byte, low bits first, high bit set on all but the last byte):
+//
+//   "CTOK", version (int), category count k (int), k names (UTF)
+//   per file: path (UTF), bytes, k + 1 counts, the last unmatched bytes
+//
+// Usage: java ParallelTokenizer <spec> [--csv <file> | --binary <file>] [--ext c,h]
+//                               [--threads n] <directory or file>...
+//   without a sink the CSV goes to stdout; totals and speed go to stderr
+public class ParallelTokenizer {
+    private static final int MAGIC = 0x43544F4B; // "CTOK"
+    private static final int VERSION = 1;
+    static final int MAP_THRESHOLD = 1 << 16;
+    private static final int MIN_BATCH = 8; // files per leaf task
+
+    private final LexerTables tables;
+    private final List<Path> files;
+    private final int width; // categories, then unmatched bytes
+    private final int batch;
+    private final ThreadLocal<Worker> workers;
+
+    final long[] counts; // width per file
+    final long[] sizes; // bytes per file, -1 if it could not be read
+
+    ParallelTokenizer(LexerTables tables, List<Path> files, int parallelism) {
+        this.tables = tables;
+        this.files = files;
+        this.width = tables.categories.length + 1;
+        this.batch = Math.max(MIN_BATCH, files.size() / (parallelism * 16));
+        this.counts = new long[files.size() * width];
+        this.sizes = new long[files.size()];
+        this.workers = ThreadLocal.withInitial(() -> new Worker(tables, width));
+    }
+
+    // Per-thread scanning context
+    private static final class Worker {
+        final DfaScanner scanner;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(MAP_THRESHOLD);
+        final long[] counts;
+
+        Worker(LexerTables tables, int width) {
+            scanner = new DfaScanner(tables, ByteBuffer.allocate(0));
+            counts = new long[width];
+        }
+    }
+
+    // Regular files under the roots whose extension is one of extensions, sorted; a
+    // root that is itself a file is always taken. A directory that cannot be read is
+    // reported and skipped, like a file that cannot be scanned.
+    static List<Path> walk(List<Path> roots, Set<String> extensions) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path root : roots) {
+            if (Files.isRegularFile(root)) {
+                files.add(root);
+                continue;
+            }
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+                    if (Files.isRegularFile(path)) { // a link to a file counts, as with Files.walk
+                        String name = path.getFileName().toString();
+                        int dot = name.lastIndexOf('.');
+                        if (dot >= 0 && extensions.contains(name.substring(dot + 1))) files.add(path);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path path, IOException e) {
+                    System.err.println("Skipping " + path + ": " + e);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) {
+                    if (e != null) System.err.println("Skipping the rest of " + directory + ": " + e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    // Scan every file and return the totals: width counts, then bytes, then files read
+    long[] run(ForkJoinPool pool) {
+        return pool.invoke(new Scan(0, files.size()));
+    }
+
+    private final class Scan extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+
+        Scan(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > batch) {
+                int mid = (from + to) >>> 1;
+                Scan left = new Scan(from, mid);
+                left.fork();
+                long[] totals = new Scan(mid, to).compute();
+                long[] other = left.join();
+                for (int i = 0; i < totals.length; i++) totals[i] += other[i];
+                return totals;
+            }
+            long[] totals = new long[width + 2];
+            Worker worker = workers.get();
+            for (int f = from; f < to; f++) {
+                if (!scan(f, worker)) continue;
+                for (int k = 0; k < width; k++) totals[k] += worker.counts[k];
+                totals[width] += sizes[f];
+                totals[width + 1]++;
+            }
+            return totals;
+        }
+    }
+
+    // Count the tokens of file f into its row; false if it could not be read
+    private boolean scan(int f, Worker worker) {
+        Path path = files.get(f);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("larger than 2 GiB");
+            ByteBuffer input;
+            if (size >= MAP_THRESHOLD) {
+                input = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                input = worker.buffer;
+                input.clear().limit((int) size);
+                while (input.hasRemaining() && channel.read(input) > 0) {
+                    // read until full or the file ends early
+                }
+                input.flip();
+            }
+            long[] local = worker.counts;
+            Arrays.fill(local, 0L);
+            DfaScanner scanner = worker.scanner;
+            scanner.reset(input);
+            for (int kind; (kind = scanner.next()) != DfaScanner.EOF; ) {
+                local[kind == DfaScanner.ERROR ? width - 1 : kind]++;
+            }
+            System.arraycopy(local, 0, counts, f * width, width);
+            sizes[f] = input.limit();
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            sizes[f] = -1;
+            System.err.println("Skipping " + path + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Column names of the counts that are reported: categories that are not skipped
+    private int[] columns() {
+        int[] columns = new int[width];
+        int n = 0;
+        for (int c = 0; c < tables.categories.length; c++) {
+            if (!tables.skip[c]) columns[n++] = c;
+        }
+        columns[n++] = width - 1;
+        return Arrays.copyOf(columns, n);
+    }
+
+    private String columnName(int k) {
+        return k == width - 1 ? "Unmatched" : tables.categories[k];
+    }
+
+    void writeCsv(Writer out) throws IOException {
+        int[] columns = columns();
+        out.write("file,bytes");
+        for (int k : columns) out.write("," + csv(columnName(k)));
+        out.write('\n');
+        StringBuilder line = new StringBuilder();
+        for (int f = 0; f < files.size(); f++) {
+            if (sizes[f] < 0) continue;
+            line.setLength(0);
+            line.append(csv(files.get(f).toString())).append(',').append(sizes[f]);
+            for (int k : columns) line.append(',').append(counts[f * width + k]);
+            out.write(line.append('\n').toString());
+        }
+        out.flush();
+    }
+
+    void writeBinary(OutputStream stream) throws IOException {
+        int[] columns = columns();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(columns.length - 1);
+        for (int i = 0; i + 1 < columns.length; i++) out.writeUTF(columnName(columns[i]));
+        for (int f = 0; f < files.size(); f++) {
+            if (sizes[f] < 0) continue;
+            out.writeUTF(files.get(f).toString());
+            writeVarLong(out, sizes[f]);
+            for (int k : columns) writeVarLong(out, counts[f * width + k]);
+        }
+        out.flush();
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static String csv(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) return field;
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    // Remove "--name value" from the arguments and return the value, or null if absent
+    private static String option(List<String> arguments, String name) {
+        int i = arguments.indexOf(name);
+        if (i < 0) return null;
+        if (i + 1 == arguments.size()) throw new IllegalArgumentException(name + " needs a value");
+        arguments.remove(i);
+        return arguments.remove(i);
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        String csvFile = option(arguments, "--csv");
+        String binaryFile = option(arguments, "--binary");
+        String extensions = option(arguments, "--ext");
+        String threads = option(arguments, "--threads");
+        int threadCount = 0;
+        try {
+            if (threads != null && (threadCount = Integer.parseInt(threads)) <= 0) threadCount = -1;
+        } catch (NumberFormatException e) {
+            threadCount = -1;
+        }
+        if (arguments.size() < 2 || csvFile != null && binaryFile != null || threadCount < 0) {
+            if (threadCount < 0) System.err.println("--threads needs a positive number, got: " + threads);
+            System.err.println("Usage: java ParallelTokenizer <spec> [--csv <file> | --binary <file>] [--ext c,h]"
+                    + " [--threads n] <directory or file>...");
+            System.exit(2);
+        }
+        LexerTables tables = LexerGenerator.read(Paths.get(arguments.get(0))).generate();
+        List<Path> roots = new ArrayList<>();
+        for (String root : arguments.subList(1, arguments.size())) roots.add(Paths.get(root));
+        Set<String> wanted = new HashSet<>(Arrays.asList((extensions != null ? extensions : "c,h").split(",")));
+
+        long start = System.nanoTime();
+        List<Path> files = walk(roots, wanted);
+        long walked = System.nanoTime();
+        ForkJoinPool pool = threadCount > 0 ? new ForkJoinPool(threadCount) : ForkJoinPool.commonPool();
+        ParallelTokenizer tokenizer = new ParallelTokenizer(tables, files, pool.getParallelism());
+        long[] totals = tokenizer.run(pool);
+        long scanned = System.nanoTime();
+
+        if (binaryFile != null) {
+            try (OutputStream out = Files.newOutputStream(Paths.get(binaryFile))) {
+                tokenizer.writeBinary(out);
+            }
+        } else if (csvFile != null) {
+            try (Writer out = Files.newBufferedWriter(Paths.get(csvFile), StandardCharsets.UTF_8)) {
+                tokenizer.writeCsv(out);
+            }
+        } else {
+            tokenizer.writeCsv(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+        }
+
+        long bytes = totals[tokenizer.width];
+        double seconds = (scanned - walked) / 1e9;
+        for (int k : tokenizer.columns()) System.err.println(tokenizer.columnName(k) + ": " + totals[k]);
+        System.err.printf("%d of %d files, %d bytes: walk %.3f s, scan %.3f s (%.1f MB/s on %d threads)%n",
+                totals[tokenizer.width + 1], files.size(), bytes, (walked - start) / 1e9, seconds,
+                bytes / seconds / 1e6, pool.getParallelism());
+    }
+}
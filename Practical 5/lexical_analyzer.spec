@@ -0,0 +1,23 @@
+# lexical_analyzer.l as a LexerGenerator spec: the same macros and rules, with the
+# printf in each action replaced by the category it prints.
+#   java LexerGenerator lexical_analyzer.spec test4.c
+digit   [0-9]+
+letter  [a-zA-Z_][a-zA-Z0-9_]*
+# \r as well, so files with CRLF line ends lex alike
+ws      [ \t\r\n]+
+
+%%
+
+int                     Keyword
+char                    Keyword
+return                  Keyword
+
+{letter}                Identifier
+{digit}                 Constant
+"+"|"-"|"*"|"/"|"%"     Operator
+"="                     Operator
+";"|"("|")"|"{"|"}"     Punctuation
+
+{ws}                    skip
+
+.                       Invalid Token
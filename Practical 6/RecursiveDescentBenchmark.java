@@ -0,0 +1,105 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+// Stress test for RecursiveDescentParser: million-element lists, million-level
+// nesting (both overflowed the old recursive parser) and a batch of random inputs
+// validated from several threads at once.
+//
+// Usage: java RecursiveDescentBenchmark [elements] [threads]
+public class RecursiveDescentBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int elements = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        String flat = flatList(elements);
+        String nested = nestedList(elements);
+        String broken = flat.substring(0, flat.length() - 1) + ",)";
+
+        check("flat list", flat, true);
+        check("nested list", nested, true);
+        check("broken list", broken, false);
+
+        for (int round = 1; round <= 5; round++) {
+            long t0 = System.nanoTime();
+            RecursiveDescentParser.accepts(flat);
+            long t1 = System.nanoTime();
+            RecursiveDescentParser.accepts(nested);
+            long t2 = System.nanoTime();
+            System.out.printf("round %d: flat %8.1f Mchar/s | nested %8.1f Mchar/s%n", round,
+                    flat.length() * 1e3 / (t1 - t0), nested.length() * 1e3 / (t2 - t1));
+        }
+
+        // Many threads validating at once must agree with a single-threaded run
+        Random random = new Random(7);
+        List<String> inputs = new ArrayList<>();
+        for (int k = 0; k < 2_000; k++) {
+            StringBuilder sb = new StringBuilder();
+            randomS(sb, random, 0);
+            if (k % 5 == 4) sb.insert(random.nextInt(sb.length() + 1), random.nextBoolean() ? ',' : ')');
+            inputs.add(sb.toString());
+        }
+        boolean[] expected = new boolean[inputs.size()];
+        long chars = 0;
+        for (int k = 0; k < inputs.size(); k++) {
+            expected[k] = RecursiveDescentParser.accepts(inputs.get(k));
+            chars += inputs.get(k).length();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<boolean[]>> futures = new ArrayList<>();
+        long t0 = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                boolean[] result = new boolean[inputs.size()];
+                for (int k = 0; k < inputs.size(); k++) {
+                    result[k] = RecursiveDescentParser.accepts(inputs.get(k));
+                }
+                return result;
+            }));
+        }
+        for (Future<boolean[]> future : futures) {
+            if (!Arrays.equals(expected, future.get())) throw new IllegalStateException("Concurrent results differ");
+        }
+        long t1 = System.nanoTime();
+        pool.shutdown();
+        System.out.printf("%d threads x %d inputs: results match, %.1f Mchar/s total%n",
+                threads, inputs.size(), chars * threads * 1e3 / (t1 - t0));
+    }
+
+    private static void check(String name, String input, boolean expected) {
+        if (RecursiveDescentParser.accepts(input) != expected) {
+            throw new IllegalStateException(name + " should be " + (expected ? "valid" : "invalid"));
+        }
+    }
+
+    // (a,a,...,a)
+    private static String flatList(int elements) {
+        StringBuilder sb = new StringBuilder(elements * 2 + 1).append('(');
+        for (int k = 0; k < elements; k++) sb.append(k == 0 ? "a" : ",a");
+        return sb.append(')').toString();
+    }
+
+    // ((...(a)...))
+    private static String nestedList(int depth) {
+        StringBuilder sb = new StringBuilder(depth * 2 + 1);
+        for (int k = 0; k < depth; k++) sb.append('(');
+        sb.append('a');
+        for (int k = 0; k < depth; k++) sb.append(')');
+        return sb.toString();
+    }
+
+    private static void randomS(StringBuilder sb, Random random, int depth) {
+        if (depth > 6 || random.nextInt(3) == 0) {
+            sb.append('a');
+            return;
+        }
+        sb.append('(');
+        int items = 1 + random.nextInt(8);
+        for (int k = 0; k < items; k++) {
+            if (k > 0) sb.append(',');
+            randomS(sb, random, depth + 1);
+        }
+        sb.append(')');
+    }
+}
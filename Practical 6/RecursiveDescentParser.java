@@ -1,55 +1,80 @@
 import java.util.Arrays;
+import metrics.*;
 
 public class RecursiveDescentParser {
-    private static int i = 0; // Index for parsing the input string
-    private static String input; // Input string to be validated
+    // Instrumentation, active with -Dmetrics=true
+    private static final Histogram ACCEPTS_TIME = Metrics.histogram("rdp.accepts");
+    private static final Counter CHARS = Metrics.counter("rdp.chars");
+    private static final HighWaterMark DEPTH = Metrics.highWaterMark("rdp.depth.max");
 
-    // Recursive Descent Parser Functions
+    private final CharSequence input; // Input string to be validated
+    private int i = 0; // Index for parsing the input string
+    private int deepest; // Deepest nesting reached, with metrics on
 
-    // S → ( L ) | a
-    private static boolean S() {
-        if (i < input.length() && input.charAt(i) == 'a') {
-            i++; // Consume 'a'
-            return true;
-        } else if (i < input.length() && input.charAt(i) == '(') {
-            i++; // Consume '('
-            if (L()) {
-                if (i < input.length() && input.charAt(i) == ')') {
-                    i++; // Consume ')'
-                    return true;
-                }
-            }
-        }
-        return false;
+    RecursiveDescentParser(CharSequence input) {
+        this.input = input;
     }
 
-    // L → S L'
-    private static boolean L() {
-        if (S()) {
-            return LPrime();
-        }
-        return false;
-    }
+    // Recursive Descent Parser, with the recursion replaced by loops
 
+    // S  → ( L ) | a
+    // L  → S L'
     // L' → , S L' | ε
-    private static boolean LPrime() {
-        if (i < input.length() && input.charAt(i) == ',') {
-            i++; // Consume ','
-            if (S()) {
-                return LPrime();
+    //
+    // L' is tail-recursive, so it becomes a loop over ", S". The only other recursion
+    // is S → ( L ), and every pending frame of it looks the same (waiting for the rest
+    // of a list and its ')'), so an explicit stack of them reduces to a depth counter.
+    // Stack depth is therefore constant however long or deeply nested the input is.
+    private boolean S() {
+        int depth = 0; // Open '(' whose list is not finished yet
+        while (true) {
+            // Start of an S
+            if (i < input.length() && input.charAt(i) == 'a') {
+                i++; // Consume 'a'
+            } else if (i < input.length() && input.charAt(i) == '(') {
+                i++; // Consume '(', then L starts with an S
+                depth++;
+                if (Metrics.ENABLED) deepest = Math.max(deepest, depth);
+                continue;
             } else {
                 return false;
             }
+
+            // An S has been completed: continue the enclosing L', closing lists as they end
+            while (true) {
+                if (depth == 0) {
+                    return true; // The outermost S is done
+                }
+                if (i < input.length() && input.charAt(i) == ',') {
+                    i++; // Consume ',', L' → , S L'
+                    break;
+                }
+                if (i < input.length() && input.charAt(i) == ')') {
+                    i++; // L' → ε, consume ')' which completes ( L )
+                    depth--;
+                    continue;
+                }
+                return false;
+            }
         }
-        return true; // Epsilon (ε) transition
     }
 
-    // Function to validate the input string
-    private static void validate(String str) {
-        input = str;
-        i = 0; // Reset index
+    // Check whether the whole input derives from S; safe to call from many threads at once
+    static boolean accepts(CharSequence str) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        RecursiveDescentParser parser = new RecursiveDescentParser(str);
+        boolean accepted = parser.S() && parser.i == str.length();
+        if (Metrics.ENABLED) {
+            CHARS.add(parser.i);
+            DEPTH.update(parser.deepest);
+            ACCEPTS_TIME.recordSince(start);
+        }
+        return accepted;
+    }
 
-        if (S() && i == input.length()) {
+    // Function to validate the input string
+    static void validate(String str) {
+        if (accepts(str)) {
             System.out.println("Valid string");
         } else {
             System.out.println("Invalid string");
@@ -1,11 +1,16 @@
 import java.util.*;
+import metrics.*;
 
 public class FirstFollow {
+    private static final Histogram SETS_TIME = Metrics.histogram("ff.sets");
+
     static Map<String, List<String>> grammar = new HashMap<>();
     static Map<String, Set<String>> firstSets = new HashMap<>();
     static Map<String, Set<String>> followSets = new HashMap<>();
+    static CompiledGrammar compiled;
 
-    public static void main(String[] args) {
+    // java FirstFollow [grammar file]: the built-in grammar, or one in GrammarFile format
+    public static void main(String[] args) throws java.io.IOException {
         // Define the grammar
         // S  -> A B C | D  
         // A  -> a | ε  
@@ -13,21 +18,20 @@ public class FirstFollow {
         // C  -> ( S ) | c  
         // D  -> A C  
 
-        grammar.put("S", Arrays.asList("A B C", "D"));
-        grammar.put("A", Arrays.asList("a", "ε"));
-        grammar.put("B", Arrays.asList("b", "ε"));
-        grammar.put("C", Arrays.asList("( S )", "c"));
-        grammar.put("D", Arrays.asList("A C"));
-
-        // Compute First sets
-        for (String nonTerminal : grammar.keySet()) {
-            firstSets.put(nonTerminal, computeFirst(nonTerminal));
+        String startSymbol = "S";
+        if (args.length > 0) {
+            grammar = GrammarFile.read(java.nio.file.Paths.get(args[0]));
+            startSymbol = GrammarFile.startSymbol(grammar);
+        } else {
+            grammar.put("S", Arrays.asList("A B C", "D"));
+            grammar.put("A", Arrays.asList("a", "ε"));
+            grammar.put("B", Arrays.asList("b", "ε"));
+            grammar.put("C", Arrays.asList("( S )", "c"));
+            grammar.put("D", Arrays.asList("A C"));
         }
 
-        // Compute Follow sets
-        for (String nonTerminal : grammar.keySet()) {
-            followSets.put(nonTerminal, computeFollow(nonTerminal));
-        }
+        // Compute First and Follow sets
+        computeSets(startSymbol);
 
         // Print First sets
         System.out.println("First Sets:");
@@ -42,88 +46,15 @@ public class FirstFollow {
         }
     }
 
-    // Compute First set for a given symbol
-    private static Set<String> computeFirst(String symbol) {
-        if (firstSets.containsKey(symbol)) {
-            return firstSets.get(symbol);
-        }
-
-        Set<String> first = new HashSet<>();
-
-        // If the symbol is a terminal, return itself
-        if (!grammar.containsKey(symbol)) {
-            first.add(symbol);
-            return first;
+    // Compile the grammar to interned ints and publish its First and Follow sets
+    private static void computeSets(String startSymbol) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        compiled = CompiledGrammar.compile(grammar, startSymbol);
+        for (int a = 0; a < compiled.numNonTerminals(); a++) {
+            firstSets.put(compiled.nonTerminals[a], compiled.firstSet(a));
+            followSets.put(compiled.nonTerminals[a], compiled.followSet(a));
         }
-
-        // Process each production rule
-        for (String production : grammar.get(symbol)) {
-            String[] tokens = production.split(" ");
-            for (String token : tokens) {
-                Set<String> tokenFirst = computeFirst(token);
-                first.addAll(tokenFirst);
-                first.remove("ε"); // Remove epsilon initially
-
-                if (!tokenFirst.contains("ε")) {
-                    break;
-                }
-            }
-
-            // If all symbols in production have ε, then add ε
-            if (Arrays.stream(tokens).allMatch(t -> computeFirst(t).contains("ε"))) {
-                first.add("ε");
-            }
-        }
-
-        firstSets.put(symbol, first);
-        return first;
-    }
-
-    // Compute Follow set for a given symbol
-    private static Set<String> computeFollow(String symbol) {
-        if (followSets.containsKey(symbol)) {
-            return followSets.get(symbol);
-        }
-
-        Set<String> follow = new HashSet<>();
-
-        // Start symbol rule
-        if (symbol.equals("S")) {
-            follow.add("$");
-        }
-
-        // Iterate over the grammar
-        for (String lhs : grammar.keySet()) {
-            for (String production : grammar.get(lhs)) {
-                String[] tokens = production.split(" ");
-                for (int i = 0; i < tokens.length; i++) {
-                    if (tokens[i].equals(symbol)) {
-                        int nextIndex = i + 1;
-
-                        // Case 1: Symbol is followed by another symbol
-                        while (nextIndex < tokens.length) {
-                            Set<String> nextFirst = computeFirst(tokens[nextIndex]);
-                            follow.addAll(nextFirst);
-                            follow.remove("ε");
-
-                            if (!nextFirst.contains("ε")) {
-                                break;
-                            }
-                            nextIndex++;
-                        }
-
-                        // Case 2: Symbol is at the end or followed by ε
-                        if (nextIndex == tokens.length) {
-                            if (!lhs.equals(symbol)) {
-                                follow.addAll(computeFollow(lhs));
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        followSets.put(symbol, follow);
-        return follow;
+        if (Metrics.ENABLED) SETS_TIME.recordSince(start);
+        System.out.println(compiled.timings() + "\n");
     }
 }
\ No newline at end of file
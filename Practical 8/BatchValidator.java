@@ -0,0 +1,158 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+
+// Streams a corpus with one space-separated sentence per line through an LL1Parser,
+// or an LRParser for grammars that only have an LALR(1) table.
+// The file is read through one fixed-size buffer and tokens are matched against the
+// terminals as raw bytes, so memory stays constant however large the input is: only
+// one byte more than the longest terminal is kept of a token, which is enough to
+// know that a longer one matches nothing.
+// For every line one byte is written, '1' for accepted and '0' for rejected,
+// followed by a newline.
+public class BatchValidator {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    static class Stats {
+        long lines, tokens, accepted, nanos;
+
+        public String toString() {
+            double seconds = nanos / 1e9;
+            return String.format("%d lines (%d accepted), %d tokens in %.3f s: %.0f lines/s, %.0f tokens/s",
+                    lines, accepted, tokens, seconds, lines / seconds, tokens / seconds);
+        }
+    }
+
+    private final Recognizer parser;
+    private final TerminalMatcher matcher;
+    private final byte[] token; // longest terminal + 1 bytes
+    private int tokenLength;
+    private boolean lineOpen;
+
+    BatchValidator(LL1Table table) {
+        this(new LL1Parser(table), new TerminalMatcher(table.grammar));
+    }
+
+    BatchValidator(LALRTable table) {
+        this(new LRParser(table), new TerminalMatcher(table.grammar));
+    }
+
+    // The matcher is immutable and can be shared by validators running on different threads
+    BatchValidator(Recognizer parser, TerminalMatcher matcher) {
+        this.parser = parser;
+        this.matcher = matcher;
+        this.token = new byte[matcher.maxLength + 1];
+    }
+
+    Stats validate(Path input, OutputStream results) throws IOException {
+        Stats stats = new Stats();
+        long start = System.nanoTime();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        OutputStream out = new BufferedOutputStream(results, 1 << 16);
+
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                feed(buffer, stats, out);
+                buffer.clear();
+            }
+        }
+        finish(stats, out);
+        out.flush();
+        stats.nanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    // Consume the remaining bytes of buffer; a line may continue into the next call
+    void feed(ByteBuffer buffer, Stats stats, OutputStream out) throws IOException {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (!lineOpen) {
+                parser.reset();
+                lineOpen = true;
+            }
+            if (b == '\n') {
+                endToken(stats);
+                endLine(stats, out);
+                lineOpen = false;
+            } else if (b == ' ' || b == '\t' || b == '\r') {
+                endToken(stats);
+            } else {
+                if (tokenLength < token.length) token[tokenLength++] = b; // the rest cannot change the lookup
+            }
+        }
+    }
+
+    // End of input: a last line without a trailing newline still counts
+    void finish(Stats stats, OutputStream out) throws IOException {
+        if (lineOpen) {
+            endToken(stats);
+            endLine(stats, out);
+            lineOpen = false;
+        }
+    }
+
+    private void endToken(Stats stats) {
+        if (tokenLength == 0) return;
+        parser.step(matcher.lookup(token, tokenLength));
+        stats.tokens++;
+        tokenLength = 0;
+    }
+
+    private void endLine(Stats stats, OutputStream out) throws IOException {
+        boolean ok = parser.finish();
+        stats.lines++;
+        if (ok) stats.accepted++;
+        out.write(ok ? '1' : '0');
+        out.write('\n');
+    }
+
+    // Open-addressing map from the UTF-8 bytes of a terminal to its id, so lookups
+    // never build a String. "$" is left out: it may not appear inside a sentence.
+    static class TerminalMatcher {
+        private final byte[][] keys;
+        private final int[] ids;
+        private final int mask;
+        final int maxLength; // bytes of the longest terminal
+
+        TerminalMatcher(CompiledGrammar grammar) {
+            int capacity = Integer.highestOneBit(Math.max(4, grammar.numTerminals() * 4) - 1) << 1;
+            keys = new byte[capacity][];
+            ids = new int[capacity];
+            mask = capacity - 1;
+            int maxLength = 0;
+            for (int t = 0; t < grammar.numTerminals(); t++) {
+                if (t == CompiledGrammar.END) continue;
+                byte[] key = grammar.terminals[t].getBytes(StandardCharsets.UTF_8);
+                int slot = hash(key, key.length) & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = key;
+                ids[slot] = t;
+                maxLength = Math.max(maxLength, key.length);
+            }
+            this.maxLength = maxLength;
+        }
+
+        // Terminal id of bytes[0 .. length), or LL1Table.ERROR
+        int lookup(byte[] bytes, int length) {
+            for (int slot = hash(bytes, length) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                byte[] key = keys[slot];
+                if (key.length == length && Arrays.equals(key, 0, length, bytes, 0, length)) {
+                    return ids[slot];
+                }
+            }
+            return LL1Table.ERROR;
+        }
+
+        private static int hash(byte[] bytes, int length) {
+            int h = 0x811c9dc5;
+            for (int i = 0; i < length; i++) {
+                h = (h ^ bytes[i]) * 0x01000193;
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,394 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Rewrites a grammar towards LL(1), keeping its language:
+//
+//   1. left recursion, direct or through other nonterminals, is removed. Nonterminals
+//      on one left-recursive cycle are substituted into each other in file order and
+//      each one's direct recursion is then turned into right recursion:
+//
+//        E -> E + T | T     becomes     E  -> T E'
+//                                       E' -> + T E' | ε
+//
+//   2. alternatives that share a prefix are left-factored:
+//
+//        S -> i E t S | i E t S e S     becomes     S  -> i E t S S'
+//                                                   S' -> ε | e S
+//
+// Only the nonterminals of a cycle are substituted, so the growth of the textbook
+// algorithm stays within the cycles that need it. Neither step removes every conflict
+// (a dangling else stays ambiguous), so the result is compiled and tabled again and
+// what is left is reported.
+//
+// Usage: java GrammarRewriter <grammar file> [output file]
+public class GrammarRewriter {
+    // Substitution can multiply alternatives; past this many a cycle is left as it is
+    static final int MAX_ALTERNATIVES = 4096;
+
+    private final Map<String, List<List<String>>> rules = new HashMap<>();
+    private final List<String> order = new ArrayList<>(); // heads, new ones after their origin
+    private final Set<String> names = new HashSet<>(); // every symbol in use, for fresh names
+
+    final String startSymbol;
+    final List<String> log = new ArrayList<>(); // each rewrite, or why one was skipped
+    final List<String> remaining = new ArrayList<>(); // left-recursive cycles still present
+    CompiledGrammar compiled;
+    LL1Table table;
+
+    private GrammarRewriter(Map<String, List<String>> grammar, String startSymbol) {
+        this.startSymbol = startSymbol;
+        names.add(CompiledGrammar.EPSILON);
+        names.add(CompiledGrammar.END_MARKER);
+        for (Map.Entry<String, List<String>> rule : grammar.entrySet()) {
+            List<List<String>> bodies = new ArrayList<>();
+            for (String production : rule.getValue()) {
+                List<String> body = new ArrayList<>();
+                for (String symbol : production.trim().split("\\s+")) {
+                    if (!symbol.isEmpty() && !symbol.equals(CompiledGrammar.EPSILON)) body.add(symbol);
+                }
+                bodies.add(body);
+                names.addAll(body);
+            }
+            rules.put(rule.getKey(), bodies);
+            order.add(rule.getKey());
+            names.add(rule.getKey());
+        }
+    }
+
+    // Remove left recursion, left-factor, then rebuild the sets and the table
+    static GrammarRewriter rewrite(Map<String, List<String>> grammar, String startSymbol) {
+        GrammarRewriter rewriter = new GrammarRewriter(grammar, startSymbol);
+        rewriter.removeLeftRecursion();
+        rewriter.leftFactor();
+        rewriter.compiled = CompiledGrammar.compile(rewriter.grammar(), startSymbol);
+        rewriter.table = LL1Table.build(rewriter.compiled);
+        for (int[] cycle : leftRecursiveCycles(rewriter.compiled)) {
+            rewriter.remaining.add("Left recursion remains through " + rewriter.join(cycle));
+        }
+        return rewriter;
+    }
+
+    // The rewritten grammar, heads in order, in the form GrammarFile reads
+    Map<String, List<String>> grammar() {
+        Map<String, List<String>> grammar = new LinkedHashMap<>();
+        for (String head : order) {
+            List<String> alternatives = new ArrayList<>();
+            for (List<String> body : rules.get(head)) alternatives.add(text(body));
+            grammar.put(head, alternatives);
+        }
+        return grammar;
+    }
+
+    boolean changed() {
+        return !log.isEmpty();
+    }
+
+    // The rewrites, what is left of the left recursion and the conflicts of the new table
+    void report(PrintStream out) {
+        for (String line : log) out.println(line);
+        for (String line : remaining) out.println(line);
+        for (int[] conflict : table.conflicts) {
+            out.println("Conflict detected for " + compiled.nonTerminals[conflict[0]] + ", "
+                    + compiled.terminals[conflict[1]] + " : " + compiled.prodText[conflict[2]]
+                    + " , " + compiled.prodText[conflict[3]]);
+        }
+        out.println("Rewritten grammar is " + (table.isLL1() ? "LL(1)" : "Not LL(1)"));
+    }
+
+    private void removeLeftRecursion() {
+        CompiledGrammar g = CompiledGrammar.compile(grammar(), startSymbol);
+        List<int[]> cycles = leftRecursiveCycles(g);
+        Set<String> nullable = new HashSet<>();
+        for (int a = 0; a < g.numNonTerminals(); a++) {
+            if (g.nullable[a]) nullable.add(g.nonTerminals[a]);
+        }
+        Set<String> cyclic = new HashSet<>();
+        for (int[] cycle : cycles) {
+            for (int a : cycle) cyclic.add(g.nonTerminals[a]);
+        }
+        for (int[] cycle : cycles) {
+            String[] members = new String[cycle.length];
+            for (int i = 0; i < cycle.length; i++) members[i] = g.nonTerminals[cycle[i]];
+            removeCycle(members, nullable, cyclic);
+        }
+    }
+
+    // Paull's algorithm over one cycle: for each member in order, substitute the
+    // earlier members that lead its alternatives, then remove its direct recursion.
+    // Recursion hidden behind a nullable prefix (S -> B S x, B -> ε) is exposed first by
+    // inlining the prefix, as long as the prefix is not on a cycle of its own.
+    private void removeCycle(String[] members, Set<String> nullable, Set<String> cyclic) {
+        Map<String, Integer> rank = new HashMap<>();
+        Map<String, List<List<String>>> saved = new HashMap<>();
+        for (int i = 0; i < members.length; i++) {
+            rank.put(members[i], i);
+            saved.put(members[i], rules.get(members[i]));
+        }
+        Map<String, String> added = new LinkedHashMap<>(); // member -> its primed nonterminal
+        Set<String> inlined = new LinkedHashSet<>();
+        for (int i = 0; i < members.length; i++) {
+            // An ε alternative can expose another member, so substituting repeats until
+            // every alternative starts with a later member or with anything else
+            Set<List<String>> bodies = new LinkedHashSet<>();
+            Deque<List<String>> work = new ArrayDeque<>(rules.get(members[i]));
+            while (!work.isEmpty()) {
+                List<String> body = work.poll();
+                Integer j = body.isEmpty() ? null : rank.get(body.get(0));
+                if (j != null && j < i || hidesMember(body, rank, nullable, cyclic)) {
+                    if (j == null) inlined.add(body.get(0));
+                    for (List<String> prefix : rules.get(body.get(0))) {
+                        List<String> expanded = new ArrayList<>(prefix);
+                        expanded.addAll(body.subList(1, body.size()));
+                        work.add(expanded);
+                    }
+                } else {
+                    bodies.add(body);
+                }
+                if (bodies.size() + work.size() > MAX_ALTERNATIVES) {
+                    restore(saved, added);
+                    log.add("Left recursion through " + String.join(", ", members) + " kept: substitution passes "
+                            + MAX_ALTERNATIVES + " alternatives");
+                    return;
+                }
+            }
+            String primed = removeDirect(members[i], new ArrayList<>(bodies));
+            if (primed == null && leftRecursive(members[i], bodies)) {
+                restore(saved, added);
+                log.add("Left recursion through " + String.join(", ", members) + " kept: every alternative of "
+                        + members[i] + " is left-recursive");
+                return;
+            }
+            if (primed != null) {
+                added.put(members[i], primed);
+                nullable.add(primed);
+            }
+        }
+        if (!inlined.isEmpty()) {
+            log.add("Inlined " + String.join(", ", inlined) + " into " + String.join(", ", members)
+                    + " to expose left recursion behind a nullable prefix");
+        }
+        if (members.length > 1) {
+            log.add("Substituted " + String.join(", ", members) + " into each other to expose their left recursion");
+        }
+        for (Map.Entry<String, String> entry : added.entrySet()) {
+            log.add("Removed left recursion from " + entry.getKey() + ": " + rule(entry.getKey()) + "; "
+                    + rule(entry.getValue()));
+        }
+    }
+
+    // A -> A α | β  becomes  A -> β A', A' -> α A' | ε; returns A', or null if A has no
+    // left-recursive alternative or nothing but left-recursive ones (it then derives
+    // no sentence, and is left as it is)
+    private String removeDirect(String head, List<List<String>> bodies) {
+        List<List<String>> alphas = new ArrayList<>();
+        List<List<String>> betas = new ArrayList<>();
+        for (List<String> body : bodies) {
+            if (body.isEmpty() || !body.get(0).equals(head)) {
+                betas.add(body);
+            } else if (body.size() > 1) {
+                alphas.add(body.subList(1, body.size())); // A -> A alone adds nothing and is dropped
+            }
+        }
+        if (alphas.isEmpty() || betas.isEmpty()) {
+            rules.put(head, betas.isEmpty() ? bodies : betas);
+            return null;
+        }
+        String primed = fresh(head);
+        List<List<String>> headBodies = new ArrayList<>();
+        for (List<String> beta : betas) headBodies.add(append(beta, primed));
+        List<List<String>> primedBodies = new ArrayList<>();
+        for (List<String> alpha : alphas) primedBodies.add(append(alpha, primed));
+        primedBodies.add(new ArrayList<>());
+        rules.put(head, headBodies);
+        rules.put(primed, primedBodies);
+        order.add(order.indexOf(head) + 1, primed);
+        return primed;
+    }
+
+    // Whether the body starts with nullable symbols outside every cycle followed by a
+    // member, so that the member can start it too
+    private static boolean hidesMember(List<String> body, Map<String, Integer> rank, Set<String> nullable,
+                                       Set<String> cyclic) {
+        for (int k = 0; k < body.size(); k++) {
+            String symbol = body.get(k);
+            if (rank.containsKey(symbol)) return k > 0;
+            if (!nullable.contains(symbol) || cyclic.contains(symbol)) return false;
+        }
+        return false;
+    }
+
+    private static boolean leftRecursive(String head, Collection<List<String>> bodies) {
+        for (List<String> body : bodies) {
+            if (!body.isEmpty() && body.get(0).equals(head) && body.size() > 1) return true;
+        }
+        return false;
+    }
+
+    private void restore(Map<String, List<List<String>>> saved, Map<String, String> added) {
+        rules.putAll(saved);
+        for (String primed : added.values()) {
+            rules.remove(primed);
+            order.remove(primed);
+        }
+    }
+
+    // Factor out the longest prefix shared by alternatives that start alike, repeating
+    // on the new nonterminals until no two alternatives of a head share a first symbol
+    private void leftFactor() {
+        Deque<String> work = new ArrayDeque<>(order);
+        while (!work.isEmpty()) {
+            String head = work.poll();
+            Map<String, List<List<String>>> groups = new LinkedHashMap<>();
+            for (List<String> body : new LinkedHashSet<>(rules.get(head))) {
+                groups.computeIfAbsent(body.isEmpty() ? "" : body.get(0), k -> new ArrayList<>()).add(body);
+            }
+            List<List<String>> bodies = new ArrayList<>();
+            String after = head;
+            for (List<List<String>> group : groups.values()) {
+                if (group.size() == 1 || group.get(0).isEmpty()) {
+                    bodies.addAll(group);
+                    continue;
+                }
+                int k = commonPrefix(group);
+                String primed = fresh(head);
+                List<List<String>> suffixes = new ArrayList<>();
+                for (List<String> body : group) suffixes.add(new ArrayList<>(body.subList(k, body.size())));
+                List<String> factored = append(group.get(0).subList(0, k), primed);
+                bodies.add(factored);
+                rules.put(primed, suffixes);
+                order.add(order.indexOf(after) + 1, primed);
+                after = primed;
+                work.add(primed);
+                log.add("Left-factored " + head + " on " + text(group.get(0).subList(0, k)) + ": "
+                        + head + " -> " + text(factored) + "; " + rule(primed));
+            }
+            rules.put(head, bodies);
+        }
+    }
+
+    private static int commonPrefix(List<List<String>> group) {
+        int k = 0;
+        while (true) {
+            for (List<String> body : group) {
+                if (k == body.size() || !body.get(k).equals(group.get(0).get(k))) return k;
+            }
+            k++;
+        }
+    }
+
+    // Nonterminals on left-recursive cycles, one sorted array of ids per cycle: the
+    // strongly connected components of the "A can start with B" graph that have an
+    // edge inside them. Tarjan's algorithm with an explicit stack, since a corpus
+    // grammar's chains are deeper than the thread stack.
+    static List<int[]> leftRecursiveCycles(CompiledGrammar g) {
+        int n = g.numNonTerminals();
+        CompiledGrammar.EdgeList leftCorners = new CompiledGrammar.EdgeList(n);
+        boolean[] selfLoop = new boolean[n];
+        for (int p = 0; p < g.numProductions(); p++) {
+            int a = g.prodLhs[p];
+            for (int i = g.prodOffset[p]; i < g.prodOffset[p + 1] && g.symbols[i] < 0; i++) {
+                int b = ~g.symbols[i];
+                leftCorners.add(a, b);
+                if (b == a) selfLoop[a] = true;
+                if (!g.nullable[b]) break;
+            }
+        }
+        int[][] edges = leftCorners.build();
+
+        int[] index = new int[n], low = new int[n], next = new int[n];
+        int[] stack = new int[n], calls = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(index, -1);
+        int counter = 0, top = 0;
+        List<int[]> cycles = new ArrayList<>();
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) continue;
+            int depth = 0;
+            calls[depth++] = root;
+            index[root] = low[root] = counter++;
+            stack[top++] = root;
+            onStack[root] = true;
+            while (depth > 0) {
+                int v = calls[depth - 1];
+                if (next[v] < edges[v].length) {
+                    int w = edges[v][next[v]++];
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        stack[top++] = w;
+                        onStack[w] = true;
+                        calls[depth++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                depth--;
+                if (depth > 0) low[calls[depth - 1]] = Math.min(low[calls[depth - 1]], low[v]);
+                if (low[v] != index[v]) continue;
+                int from = top;
+                do {
+                    onStack[stack[--from]] = false;
+                } while (stack[from] != v);
+                int[] component = Arrays.copyOfRange(stack, from, top);
+                top = from;
+                if (component.length > 1 || selfLoop[v]) {
+                    Arrays.sort(component);
+                    cycles.add(component);
+                }
+            }
+        }
+        return cycles;
+    }
+
+    // A name not used anywhere in the grammar: A', A'', ...
+    private String fresh(String head) {
+        String name = head + "'";
+        while (names.contains(name)) name += "'";
+        names.add(name);
+        return name;
+    }
+
+    private String join(int[] cycle) {
+        StringBuilder text = new StringBuilder();
+        for (int a : cycle) text.append(text.length() == 0 ? "" : ", ").append(compiled.nonTerminals[a]);
+        return text.toString();
+    }
+
+    private String rule(String head) {
+        List<String> alternatives = new ArrayList<>();
+        for (List<String> body : rules.get(head)) alternatives.add(text(body));
+        return head + " -> " + String.join(" | ", alternatives);
+    }
+
+    private static List<String> append(List<String> body, String symbol) {
+        List<String> result = new ArrayList<>(body);
+        result.add(symbol);
+        return result;
+    }
+
+    private static String text(List<String> body) {
+        return body.isEmpty() ? CompiledGrammar.EPSILON : String.join(" ", body);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java GrammarRewriter <grammar file> [output file]");
+            System.exit(2);
+        }
+        Map<String, List<String>> grammar = GrammarFile.read(Paths.get(args[0]));
+        GrammarRewriter rewriter = rewrite(grammar, GrammarFile.startSymbol(grammar));
+        rewriter.report(System.out);
+        if (args.length > 1) {
+            try (Writer out = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                GrammarFile.write(rewriter.grammar(), out);
+            }
+        } else {
+            System.out.println();
+            Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            GrammarFile.write(rewriter.grammar(), out);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+// A compiled grammar with its FIRST/FOLLOW sets and LL(1) table, saved so that later
+// runs skip the analysis. The snapshot records the hash of the grammar it was built
+// from (GrammarFile.hash, of the file or of the grammar map); load() reads the file in
+// one go, checks that hash and a CRC of the contents, and bulk-copies the arrays out,
+// so a warm start costs one pass over the file.
+//
+//   GrammarSnapshot snapshot = GrammarSnapshot.loadOrBuild(snapshotPath, grammarPath);
+//   new LL1Parser(snapshot.table).accepts(...)
+//
+// Layout, big-endian:
+//
+//   header    magic, version, grammar hash (32 bytes), payload length, payload CRC32C
+//   counts    nonterminals n, terminals t, productions p, symbols s, start, conflicts c
+//   ints      prodLhs[p], prodOffset[p + 1], symbols[s], ntProdStart[n + 1]
+//   longs     first[n][words], follow[n][words]
+//   ints      table rows, each as a cell count and (terminal, production) pairs for
+//             the cells that are not ERROR; conflicts[c][4]
+//   bytes     nullable[n], then nonterminal, terminal and production names as
+//             length-prefixed UTF-8
+public class GrammarSnapshot {
+    private static final int MAGIC = 0x4C4C3153; // "LL1S"
+    private static final int VERSION = 2; // 2: a conflict names the production that first claimed its cell
+    private static final int HASH_BYTES = 32;
+    private static final int HEADER_BYTES = 4 + 4 + HASH_BYTES + 4 + 4;
+
+    final CompiledGrammar grammar;
+    final LL1Table table;
+
+    private GrammarSnapshot(CompiledGrammar grammar, LL1Table table) {
+        this.grammar = grammar;
+        this.table = table;
+    }
+
+    // The snapshot at path if it was built from this grammar file, or else a fresh
+    // analysis, which is then saved to path for next time. The file is identified by
+    // its bytes, so a warm start does not even parse it.
+    static GrammarSnapshot loadOrBuild(Path path, Path grammarFile) throws IOException {
+        byte[] hash = GrammarFile.hash(grammarFile);
+        GrammarSnapshot snapshot = tryLoad(path, hash);
+        if (snapshot != null) return snapshot;
+        Map<String, List<String>> grammar = GrammarFile.read(grammarFile);
+        return build(path, hash, grammar, GrammarFile.startSymbol(grammar));
+    }
+
+    // The same for a grammar held in memory
+    static GrammarSnapshot loadOrBuild(Path path, Map<String, List<String>> grammar, String startSymbol)
+            throws IOException {
+        byte[] hash = GrammarFile.hash(grammar, startSymbol);
+        GrammarSnapshot snapshot = tryLoad(path, hash);
+        return snapshot != null ? snapshot : build(path, hash, grammar, startSymbol);
+    }
+
+    private static GrammarSnapshot tryLoad(Path path, byte[] hash) {
+        if (!Files.exists(path)) return null;
+        try {
+            return load(path, hash);
+        } catch (IOException e) {
+            System.err.println("Rebuilding snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static GrammarSnapshot build(Path path, byte[] hash, Map<String, List<String>> grammar,
+                                         String startSymbol) throws IOException {
+        CompiledGrammar compiled = CompiledGrammar.compile(grammar, startSymbol);
+        GrammarSnapshot snapshot = new GrammarSnapshot(compiled, LL1Table.build(compiled));
+        snapshot.write(path, hash);
+        return snapshot;
+    }
+
+    // Null if the snapshot was built from a different grammar; IOException if it is not
+    // a snapshot or is damaged. The file is read into the heap rather than mapped: a
+    // live mapping would stop write() replacing it on Windows.
+    static GrammarSnapshot load(Path path, byte[] expectedHash) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) throw new IOException("Not a grammar snapshot: " + path);
+            if (size > Integer.MAX_VALUE) throw new IOException("Corrupt grammar snapshot: " + path);
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) throw new IOException("Truncated grammar snapshot: " + path);
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC) throw new IOException("Not a grammar snapshot: " + path);
+            int version = buffer.getInt();
+            if (version != VERSION) throw new IOException("Unsupported snapshot version " + version + ": " + path);
+            byte[] hash = new byte[HASH_BYTES];
+            buffer.get(hash);
+            if (!Arrays.equals(hash, expectedHash)) return null;
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            if (length != buffer.remaining()) throw new IOException("Truncated grammar snapshot: " + path);
+            CRC32C checksum = new CRC32C();
+            checksum.update(buffer.slice());
+            if ((int) checksum.getValue() != crc) throw new IOException("Corrupt grammar snapshot: " + path);
+            return read(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Corrupt grammar snapshot: " + path, e);
+        }
+    }
+
+    private static GrammarSnapshot read(ByteBuffer buffer) {
+        int n = buffer.getInt(), t = buffer.getInt(), p = buffer.getInt(), s = buffer.getInt();
+        int start = buffer.getInt(), c = buffer.getInt();
+        int words = (t + 63) >>> 6;
+        int[] prodLhs = ints(buffer, p);
+        int[] prodOffset = ints(buffer, p + 1);
+        int[] symbols = ints(buffer, s);
+        int[] ntProdStart = ints(buffer, n + 1);
+        long[][] first = new long[n][];
+        for (int a = 0; a < n; a++) first[a] = longs(buffer, words);
+        long[][] follow = new long[n][];
+        for (int a = 0; a < n; a++) follow[a] = longs(buffer, words);
+        int[][] table = new int[n][t];
+        for (int a = 0; a < n; a++) {
+            Arrays.fill(table[a], LL1Table.ERROR);
+            for (int cells = buffer.getInt(); cells > 0; cells--) {
+                int terminal = buffer.getInt();
+                table[a][terminal] = buffer.getInt();
+            }
+        }
+        List<int[]> conflicts = new ArrayList<>(c);
+        for (int k = 0; k < c; k++) conflicts.add(ints(buffer, 4));
+        boolean[] nullable = new boolean[n];
+        for (int a = 0; a < n; a++) nullable[a] = buffer.get() != 0;
+        String[] nonTerminals = strings(buffer, n);
+        String[] terminals = strings(buffer, t);
+        String[] prodText = strings(buffer, p);
+        if (buffer.hasRemaining() || start < 0 || start >= n) throw new IndexOutOfBoundsException();
+
+        CompiledGrammar grammar = new CompiledGrammar(nonTerminals, terminals, start, prodLhs, prodOffset,
+                symbols, ntProdStart, prodText, nullable, first, follow);
+        return new GrammarSnapshot(grammar, new LL1Table(grammar, table, conflicts));
+    }
+
+    // Written to a temporary file and moved into place, so a concurrent reader sees
+    // either the old snapshot or the new one. createTempFile makes the file private
+    // (0600), so it gets the permissions of the snapshot it replaces, or rw-r--r--.
+    void write(Path path, byte[] hash) throws IOException {
+        CompiledGrammar g = grammar;
+        int n = g.numNonTerminals(), t = g.numTerminals(), p = g.numProductions();
+        byte[][] names = new byte[n + t + p][];
+        int k = 0, nameBytes = 0;
+        for (String[] group : new String[][] { g.nonTerminals, g.terminals, g.prodText }) {
+            for (String name : group) {
+                names[k] = name.getBytes(StandardCharsets.UTF_8);
+                nameBytes += 4 + names[k++].length;
+            }
+        }
+        long cells = 0;
+        for (int[] row : table.table) {
+            for (int cell : row) if (cell != LL1Table.ERROR) cells++;
+        }
+        long length = 4L * 6 + 4L * (p + p + 1 + g.symbols.length + n + 1) + 8L * 2 * n * g.words
+                + 4L * n + 8L * cells + 4L * 4 * table.conflicts.size() + n + nameBytes;
+        if (HEADER_BYTES + length > Integer.MAX_VALUE) throw new IOException("Grammar too large to snapshot");
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + (int) length);
+        buffer.putInt(MAGIC).putInt(VERSION).put(hash).putInt((int) length).putInt(0);
+        int payload = buffer.position();
+        buffer.putInt(n).putInt(t).putInt(p).putInt(g.symbols.length).putInt(g.start).putInt(table.conflicts.size());
+        putInts(buffer, g.prodLhs);
+        putInts(buffer, g.prodOffset);
+        putInts(buffer, g.symbols);
+        putInts(buffer, g.ntProdStart);
+        for (long[] set : g.first) putLongs(buffer, set);
+        for (long[] set : g.follow) putLongs(buffer, set);
+        for (int[] row : table.table) {
+            int count = buffer.position();
+            buffer.putInt(0);
+            for (int terminal = 0; terminal < row.length; terminal++) {
+                if (row[terminal] != LL1Table.ERROR) buffer.putInt(terminal).putInt(row[terminal]);
+            }
+            buffer.putInt(count, (buffer.position() - count - 4) / 8);
+        }
+        for (int[] conflict : table.conflicts) putInts(buffer, conflict);
+        for (boolean b : g.nullable) buffer.put((byte) (b ? 1 : 0));
+        for (byte[] name : names) buffer.putInt(name.length).put(name);
+
+        CRC32C checksum = new CRC32C();
+        checksum.update(buffer.array(), payload, buffer.position() - payload);
+        buffer.putInt(payload - 4, (int) checksum.getValue());
+
+        Path directory = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            PosixFileAttributeView view = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+            if (view != null) view.setPermissions(permissions(path));
+            Files.write(temp, buffer.array());
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static Set<PosixFilePermission> permissions(Path path) throws IOException {
+        try {
+            return Files.getPosixFilePermissions(path);
+        } catch (NoSuchFileException e) {
+            return PosixFilePermissions.fromString("rw-r--r--");
+        }
+    }
+
+    private static int[] ints(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * count);
+        return values;
+    }
+
+    private static long[] longs(ByteBuffer buffer, int count) {
+        long[] values = new long[count];
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + 8 * count);
+        return values;
+    }
+
+    private static String[] strings(ByteBuffer buffer, int count) {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + 4 * values.length);
+    }
+
+    private static void putLongs(ByteBuffer buffer, long[] values) {
+        buffer.asLongBuffer().put(values);
+        buffer.position(buffer.position() + 8 * values.length);
+    }
+}
@@ -0,0 +1,667 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// FIRST/FOLLOW sets and LL(1) table rows of a grammar that is edited one production
+// at a time, for interactive grammar tooling. Each edit re-propagates only the sets
+// that depend on it and rebuilds only the table rows those sets feed:
+//
+//   add      sets can only grow, so propagation starts at the edited nonterminal and
+//            follows dependency edges while something changes
+//   remove   sets can only shrink, so the region that depends on the production is
+//            cleared and solved again with everything outside it held fixed
+//
+// Dependencies are read off an occurrence index (where each nonterminal is used):
+// nullable(B) depends on every symbol of B's productions, FIRST(B) on the symbols
+// after a nullable prefix, and FOLLOW(X) on FIRST of what follows X and, when that
+// is nullable, on FOLLOW of the head.
+//
+//   IncrementalGrammar g = new IncrementalGrammar(grammar, "E");
+//   IncrementalGrammar.Change change = g.add("F", "- F");
+//   change.cells, change.newConflicts, g.isLL1()
+//
+// A removed production's nonterminal stays, possibly with no productions. Making a
+// symbol that is used as a terminal into a head renumbers the symbols, so that edit
+// rebuilds everything and diffs the whole table.
+public class IncrementalGrammar {
+    private static final String EPSILON = "ε";
+    private static final int END = 0; // "$"
+
+    private final List<String> nonTerminals = new ArrayList<>();
+    private final Map<String, Integer> nonTerminalIds = new HashMap<>();
+    private final List<String> terminals = new ArrayList<>();
+    private final Map<String, Integer> terminalIds = new HashMap<>();
+    private String startSymbol;
+
+    // Productions by id; ids are never reused, and a removed production's body is null
+    private final List<int[]> bodies = new ArrayList<>(); // nonterminal a as ~a, like CompiledGrammar
+    private final List<String> texts = new ArrayList<>();
+    private int[] heads = new int[16];
+
+    // Per nonterminal
+    private final List<List<Integer>> productionsOf = new ArrayList<>();
+    private final List<List<int[]>> occurrences = new ArrayList<>(); // {production, position}
+    private final BitSet nullable = new BitSet();
+    private final List<BitSet> first = new ArrayList<>();
+    private final List<BitSet> follow = new ArrayList<>();
+    private final List<Map<Integer, BitSet>> rows = new ArrayList<>(); // terminal -> productions
+    private int conflictCells;
+    private int evaluations; // set and row computations, reported per change
+
+    IncrementalGrammar(Map<String, List<String>> grammar, String startSymbol) {
+        load(grammar, startSymbol);
+    }
+
+    // ========== Edits ==========
+
+    static class Cell {
+        final String nonTerminal, terminal;
+        final Set<String> before, after; // production bodies in the cell
+
+        Cell(String nonTerminal, String terminal, Set<String> before, Set<String> after) {
+            this.nonTerminal = nonTerminal;
+            this.terminal = terminal;
+            this.before = before;
+            this.after = after;
+        }
+
+        public String toString() {
+            return nonTerminal + ", " + terminal + " : " + (before.isEmpty() ? "-" : String.join(" , ", before))
+                    + "  ->  " + (after.isEmpty() ? "-" : String.join(" , ", after));
+        }
+    }
+
+    static class Change {
+        final Set<String> nullableChanged = new TreeSet<>();
+        final Set<String> firstChanged = new TreeSet<>();
+        final Set<String> followChanged = new TreeSet<>();
+        final List<Cell> cells = new ArrayList<>();
+        final List<Cell> newConflicts = new ArrayList<>(); // cells that conflict now and did not, or gained a production
+        int evaluations;
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("nullable %s, first %s, follow %s (%d evaluations)%n",
+                    nullableChanged, firstChanged, followChanged, evaluations));
+            for (Cell cell : cells) sb.append("  ").append(cell).append(System.lineSeparator());
+            for (Cell cell : newConflicts) sb.append("  new conflict ").append(cell).append(System.lineSeparator());
+            return sb.toString();
+        }
+    }
+
+    // Add head -> body, creating head if it is new; body is space-separated, "ε" or "" for empty
+    Change add(String head, String body) {
+        String text = normalize(body);
+        Integer a = nonTerminalIds.get(head);
+        if (a != null && find(a, text) >= 0) throw new IllegalArgumentException("Already a production: " + head + " -> " + text);
+        if (a == null && terminalIds.containsKey(head)) {
+            Map<String, List<String>> grammar = grammar();
+            grammar.put(head, new ArrayList<>(List.of(text)));
+            return reload(grammar);
+        }
+        if (a == null) a = newNonTerminal(head);
+        evaluations = 0;
+        int p = addProduction(a, text);
+        Change change = new Change();
+
+        // Nullable, FIRST and FOLLOW only grow: propagate from the edit
+        BitSet nullableChanged = growNullable(a);
+        BitSet firstSeeds = firstDependents(nullableChanged);
+        firstSeeds.set(a);
+        BitSet firstChanged = growFirst(firstSeeds);
+        BitSet followSeeds = precedingNonTerminals(or(nullableChanged, firstChanged));
+        for (int symbol : bodies.get(p)) if (symbol < 0) followSeeds.set(~symbol);
+        BitSet followChanged = growFollow(followSeeds);
+
+        return finish(change, a, nullableChanged, firstChanged, followChanged);
+    }
+
+    Change remove(String head, String body) {
+        String text = normalize(body);
+        Integer a = nonTerminalIds.get(head);
+        int p = a == null ? -1 : find(a, text);
+        if (p < 0) throw new IllegalArgumentException("No production " + head + " -> " + text);
+        evaluations = 0;
+        Change change = new Change();
+
+        // Sets only shrink. Find what may depend on p while its edges still exist...
+        BitSet nullableRegion = new BitSet();
+        if (nullable.get(a)) {
+            nullableRegion.set(a);
+            closure(nullableRegion, x -> {
+                BitSet heads = headsOf(x);
+                heads.and(nullable);
+                return heads;
+            });
+        }
+        BitSet firstRegion = or(nullableRegion, bit(a));
+        closure(firstRegion, this::firstDependentsOf);
+        BitSet followRegion = precedingNonTerminals(firstRegion);
+        for (int symbol : bodies.get(p)) if (symbol < 0) followRegion.set(~symbol);
+        closure(followRegion, this::followDependentsOf);
+
+        // ...then drop it and solve the regions again, outside values held fixed
+        removeProduction(p);
+        BitSet oldNullable = (BitSet) nullable.clone();
+        nullable.andNot(nullableRegion);
+        growNullable(nullableRegion, nullableRegion);
+        BitSet nullableChanged = (BitSet) nullable.clone();
+        nullableChanged.xor(oldNullable);
+
+        BitSet firstChanged = resolve(first, firstRegion, this::growFirst);
+        BitSet followChanged = resolve(follow, followRegion, this::growFollow);
+        return finish(change, a, nullableChanged, firstChanged, followChanged);
+    }
+
+    // Clear the region's sets, solve them again and return those that came out different
+    private BitSet resolve(List<BitSet> sets, BitSet region, java.util.function.BiFunction<BitSet, BitSet, BitSet> grow) {
+        Map<Integer, BitSet> old = new HashMap<>();
+        for (int x = region.nextSetBit(0); x >= 0; x = region.nextSetBit(x + 1)) {
+            old.put(x, sets.get(x));
+            sets.set(x, new BitSet());
+        }
+        grow.apply(region, region);
+        BitSet changed = new BitSet();
+        for (int x = region.nextSetBit(0); x >= 0; x = region.nextSetBit(x + 1)) {
+            if (!sets.get(x).equals(old.get(x))) changed.set(x);
+        }
+        return changed;
+    }
+
+    // Rebuild the rows the changed sets feed, and report
+    private Change finish(Change change, int head, BitSet nullableChanged, BitSet firstChanged, BitSet followChanged) {
+        BitSet rows = firstDependents(or(nullableChanged, firstChanged));
+        rows.or(followChanged);
+        rows.set(head);
+        for (int x = rows.nextSetBit(0); x >= 0; x = rows.nextSetBit(x + 1)) {
+            Map<Integer, BitSet> before = this.rows.get(x);
+            Map<Integer, BitSet> after = buildRow(x);
+            this.rows.set(x, after);
+            diff(change, x, before, after);
+        }
+        names(nullableChanged, change.nullableChanged);
+        names(firstChanged, change.firstChanged);
+        names(followChanged, change.followChanged);
+        change.evaluations = evaluations;
+        return change;
+    }
+
+    private void diff(Change change, int x, Map<Integer, BitSet> before, Map<Integer, BitSet> after) {
+        Set<Integer> cells = new TreeSet<>(before.keySet());
+        cells.addAll(after.keySet());
+        for (int t : cells) {
+            BitSet was = before.getOrDefault(t, new BitSet()), is = after.getOrDefault(t, new BitSet());
+            if (was.equals(is)) continue;
+            Cell cell = new Cell(nonTerminals.get(x), terminals.get(t), texts(was), texts(is));
+            change.cells.add(cell);
+            if (was.cardinality() > 1) conflictCells--;
+            if (is.cardinality() > 1) {
+                conflictCells++;
+                BitSet gained = (BitSet) is.clone();
+                gained.andNot(was);
+                if (was.cardinality() <= 1 || !gained.isEmpty()) change.newConflicts.add(cell);
+            }
+        }
+    }
+
+    // Renumbering edit: rebuild from scratch and diff every row by name
+    private Change reload(Map<String, List<String>> grammar) {
+        Map<String, Map<String, Set<String>>> rowsBefore = new HashMap<>();
+        Map<String, List<Object>> setsBefore = new HashMap<>();
+        for (String x : nonTerminals) {
+            rowsBefore.put(x, row(x));
+            setsBefore.put(x, List.of(nullable(x), first(x), follow(x)));
+        }
+        load(grammar, startSymbol);
+        Change change = new Change();
+        change.evaluations = evaluations;
+        for (String x : nonTerminals) {
+            Map<String, Set<String>> before = rowsBefore.getOrDefault(x, Map.of()), after = row(x);
+            Set<String> cells = new TreeSet<>(before.keySet());
+            cells.addAll(after.keySet());
+            for (String t : cells) {
+                Set<String> was = before.getOrDefault(t, Set.of()), is = after.getOrDefault(t, Set.of());
+                if (was.equals(is)) continue;
+                Cell cell = new Cell(x, t, was, is);
+                change.cells.add(cell);
+                if (is.size() > 1 && (was.size() <= 1 || !was.containsAll(is))) change.newConflicts.add(cell);
+            }
+            List<Object> sets = setsBefore.getOrDefault(x, List.of(false, Set.of(), Set.of()));
+            if (!sets.get(0).equals(nullable(x))) change.nullableChanged.add(x);
+            if (!sets.get(1).equals(first(x))) change.firstChanged.add(x);
+            if (!sets.get(2).equals(follow(x))) change.followChanged.add(x);
+        }
+        return change;
+    }
+
+    // ========== Propagation ==========
+
+    // Worklist over nonterminals; limit, if not null, confines it to a region
+    private BitSet growNullable(int a) {
+        return growNullable(bit(a), null);
+    }
+
+    private BitSet growNullable(BitSet seeds, BitSet limit) {
+        BitSet changed = new BitSet();
+        Worklist work = new Worklist(seeds);
+        for (int x; (x = work.poll()) >= 0; ) {
+            evaluations++;
+            if (nullable.get(x) || !derivesEmpty(x)) continue;
+            nullable.set(x);
+            changed.set(x);
+            work.addAll(headsOf(x), limit);
+        }
+        return changed;
+    }
+
+    private BitSet growFirst(BitSet seeds) {
+        return growFirst(seeds, null);
+    }
+
+    private BitSet growFirst(BitSet seeds, BitSet limit) {
+        BitSet changed = new BitSet();
+        BitSet set = new BitSet();
+        Worklist work = new Worklist(seeds);
+        for (int x; (x = work.poll()) >= 0; ) {
+            evaluations++;
+            set.clear();
+            for (int p : productionsOf.get(x)) firstOfSequence(bodies.get(p), 0, set);
+            if (!grows(first.get(x), set)) continue;
+            changed.set(x);
+            work.addAll(firstDependentsOf(x), limit);
+        }
+        return changed;
+    }
+
+    private BitSet growFollow(BitSet seeds) {
+        return growFollow(seeds, null);
+    }
+
+    private BitSet growFollow(BitSet seeds, BitSet limit) {
+        BitSet changed = new BitSet();
+        BitSet set = new BitSet();
+        Worklist work = new Worklist(seeds);
+        for (int x; (x = work.poll()) >= 0; ) {
+            evaluations++;
+            set.clear();
+            if (nonTerminals.get(x).equals(startSymbol)) set.set(END);
+            for (int[] occurrence : occurrences.get(x)) {
+                int[] body = bodies.get(occurrence[0]);
+                if (firstOfSequence(body, occurrence[1] + 1, set)) set.or(follow.get(heads[occurrence[0]]));
+            }
+            if (!grows(follow.get(x), set)) continue;
+            changed.set(x);
+            work.addAll(followDependentsOf(x), limit);
+        }
+        return changed;
+    }
+
+    // dst |= src, returning whether dst changed
+    private static boolean grows(BitSet dst, BitSet src) {
+        int before = dst.cardinality();
+        dst.or(src);
+        return dst.cardinality() != before;
+    }
+
+    private boolean derivesEmpty(int x) {
+        for (int p : productionsOf.get(x)) {
+            boolean empty = true;
+            for (int symbol : bodies.get(p)) {
+                if (symbol >= 0 || !nullable.get(~symbol)) {
+                    empty = false;
+                    break;
+                }
+            }
+            if (empty) return true;
+        }
+        return false;
+    }
+
+    // Add FIRST of body[from ..] to out; returns whether that suffix is nullable
+    private boolean firstOfSequence(int[] body, int from, BitSet out) {
+        for (int i = from; i < body.length; i++) {
+            int symbol = body[i];
+            if (symbol >= 0) {
+                out.set(symbol);
+                return false;
+            }
+            out.or(first.get(~symbol));
+            if (!nullable.get(~symbol)) return false;
+        }
+        return true;
+    }
+
+    // ========== Dependencies ==========
+
+    // Heads of the productions that use x
+    private BitSet headsOf(int x) {
+        BitSet result = new BitSet();
+        for (int[] occurrence : occurrences.get(x)) result.set(heads[occurrence[0]]);
+        return result;
+    }
+
+    // Heads whose FIRST reads FIRST(x): x comes after a nullable prefix
+    private BitSet firstDependentsOf(int x) {
+        BitSet result = new BitSet();
+        for (int[] occurrence : occurrences.get(x)) {
+            if (nullablePrefix(bodies.get(occurrence[0]), 0, occurrence[1])) result.set(heads[occurrence[0]]);
+        }
+        return result;
+    }
+
+    private BitSet firstDependents(BitSet xs) {
+        BitSet result = new BitSet();
+        for (int x = xs.nextSetBit(0); x >= 0; x = xs.nextSetBit(x + 1)) result.or(firstDependentsOf(x));
+        return result;
+    }
+
+    // Nonterminals whose FOLLOW reads FOLLOW(x): they end a production of x, up to a nullable suffix
+    private BitSet followDependentsOf(int x) {
+        BitSet result = new BitSet();
+        for (int p : productionsOf.get(x)) {
+            int[] body = bodies.get(p);
+            for (int i = body.length - 1; i >= 0; i--) {
+                if (body[i] >= 0) break;
+                result.set(~body[i]);
+                if (!nullable.get(~body[i])) break;
+            }
+        }
+        return result;
+    }
+
+    // Nonterminals whose FOLLOW reads FIRST or nullable of some y in ys: they precede y,
+    // with only nullable symbols in between
+    private BitSet precedingNonTerminals(BitSet ys) {
+        BitSet result = new BitSet();
+        for (int y = ys.nextSetBit(0); y >= 0; y = ys.nextSetBit(y + 1)) {
+            for (int[] occurrence : occurrences.get(y)) {
+                int[] body = bodies.get(occurrence[0]);
+                for (int i = occurrence[1] - 1; i >= 0 && body[i] < 0; i--) {
+                    result.set(~body[i]);
+                    if (!nullable.get(~body[i])) break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean nullablePrefix(int[] body, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (body[i] >= 0 || !nullable.get(~body[i])) return false;
+        }
+        return true;
+    }
+
+    // Grow set along edges until closed
+    private void closure(BitSet set, java.util.function.IntFunction<BitSet> edges) {
+        Worklist work = new Worklist(set);
+        for (int x; (x = work.poll()) >= 0; ) {
+            BitSet next = edges.apply(x);
+            next.andNot(set);
+            set.or(next);
+            work.addAll(next, null);
+        }
+    }
+
+    // FIFO of nonterminals, each queued at most once at a time
+    private static final class Worklist {
+        private final ArrayDeque<Integer> queue = new ArrayDeque<>();
+        private final BitSet queued = new BitSet();
+
+        Worklist(BitSet seeds) {
+            addAll(seeds, null);
+        }
+
+        void addAll(BitSet xs, BitSet limit) {
+            for (int x = xs.nextSetBit(0); x >= 0; x = xs.nextSetBit(x + 1)) {
+                if ((limit == null || limit.get(x)) && !queued.get(x)) {
+                    queued.set(x);
+                    queue.add(x);
+                }
+            }
+        }
+
+        int poll() {
+            Integer x = queue.poll();
+            if (x == null) return -1;
+            queued.clear(x);
+            return x;
+        }
+    }
+
+    // ========== Structure ==========
+
+    private void load(Map<String, List<String>> grammar, String startSymbol) {
+        nonTerminals.clear();
+        nonTerminalIds.clear();
+        terminals.clear();
+        terminalIds.clear();
+        bodies.clear();
+        texts.clear();
+        productionsOf.clear();
+        occurrences.clear();
+        nullable.clear();
+        first.clear();
+        follow.clear();
+        rows.clear();
+        conflictCells = 0;
+        evaluations = 0;
+
+        terminals.add("$");
+        terminalIds.put("$", END);
+        for (String head : grammar.keySet()) newNonTerminal(head);
+        if (!nonTerminalIds.containsKey(startSymbol)) throw new IllegalArgumentException("Unknown start symbol: " + startSymbol);
+        this.startSymbol = startSymbol;
+        for (Map.Entry<String, List<String>> rule : grammar.entrySet()) {
+            for (String body : rule.getValue()) addProduction(nonTerminalIds.get(rule.getKey()), normalize(body));
+        }
+
+        BitSet all = new BitSet();
+        all.set(0, nonTerminals.size());
+        growNullable(all, null);
+        growFirst(all);
+        growFollow(all);
+        for (int x = 0; x < nonTerminals.size(); x++) {
+            Map<Integer, BitSet> row = buildRow(x);
+            rows.set(x, row);
+            for (BitSet cell : row.values()) if (cell.cardinality() > 1) conflictCells++;
+        }
+    }
+
+    private int newNonTerminal(String name) {
+        int a = nonTerminals.size();
+        nonTerminals.add(name);
+        nonTerminalIds.put(name, a);
+        productionsOf.add(new ArrayList<>());
+        occurrences.add(new ArrayList<>());
+        first.add(new BitSet());
+        follow.add(new BitSet());
+        rows.add(new HashMap<>());
+        return a;
+    }
+
+    private int addProduction(int a, String text) {
+        int p = bodies.size();
+        String[] words = text.equals(EPSILON) ? new String[0] : text.split(" ");
+        int[] body = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            Integer b = nonTerminalIds.get(words[i]);
+            if (b != null) {
+                body[i] = ~b;
+                occurrences.get(b).add(new int[] { p, i });
+            } else {
+                body[i] = terminalIds.computeIfAbsent(words[i], w -> {
+                    terminals.add(w);
+                    return terminals.size() - 1;
+                });
+            }
+        }
+        if (p == heads.length) heads = Arrays.copyOf(heads, p * 2);
+        heads[p] = a;
+        bodies.add(body);
+        texts.add(text);
+        productionsOf.get(a).add(p);
+        return p;
+    }
+
+    private void removeProduction(int p) {
+        for (int symbol : bodies.get(p)) {
+            if (symbol < 0) occurrences.get(~symbol).removeIf(occurrence -> occurrence[0] == p);
+        }
+        productionsOf.get(heads[p]).remove(Integer.valueOf(p));
+        bodies.set(p, null);
+    }
+
+    private int find(int a, String text) {
+        for (int p : productionsOf.get(a)) {
+            if (texts.get(p).equals(text)) return p;
+        }
+        return -1;
+    }
+
+    // Row of the predictive parsing table: select sets of x's productions
+    private Map<Integer, BitSet> buildRow(int x) {
+        evaluations++;
+        Map<Integer, BitSet> row = new HashMap<>();
+        BitSet select = new BitSet();
+        for (int p : productionsOf.get(x)) {
+            select.clear();
+            if (firstOfSequence(bodies.get(p), 0, select)) select.or(follow.get(x));
+            for (int t = select.nextSetBit(0); t >= 0; t = select.nextSetBit(t + 1)) {
+                row.computeIfAbsent(t, k -> new BitSet()).set(p);
+            }
+        }
+        return row;
+    }
+
+    private static String normalize(String body) {
+        String text = body.trim().replaceAll("\\s+", " ");
+        return text.isEmpty() ? EPSILON : text;
+    }
+
+    private static BitSet bit(int x) {
+        BitSet set = new BitSet();
+        set.set(x);
+        return set;
+    }
+
+    private static BitSet or(BitSet a, BitSet b) {
+        BitSet result = (BitSet) a.clone();
+        result.or(b);
+        return result;
+    }
+
+    private void names(BitSet xs, Set<String> out) {
+        for (int x = xs.nextSetBit(0); x >= 0; x = xs.nextSetBit(x + 1)) out.add(nonTerminals.get(x));
+    }
+
+    private Set<String> texts(BitSet productions) {
+        Set<String> result = new TreeSet<>();
+        for (int p = productions.nextSetBit(0); p >= 0; p = productions.nextSetBit(p + 1)) result.add(texts.get(p));
+        return result;
+    }
+
+    private Set<String> terminalNames(BitSet set) {
+        Set<String> result = new TreeSet<>();
+        for (int t = set.nextSetBit(0); t >= 0; t = set.nextSetBit(t + 1)) result.add(terminals.get(t));
+        return result;
+    }
+
+    private int id(String nonTerminal) {
+        Integer a = nonTerminalIds.get(nonTerminal);
+        if (a == null) throw new IllegalArgumentException("Unknown nonterminal: " + nonTerminal);
+        return a;
+    }
+
+    // ========== Queries ==========
+
+    boolean nullable(String nonTerminal) {
+        return nullable.get(id(nonTerminal));
+    }
+
+    // FIRST, with ε when nullable, as CompiledGrammar.firstSet
+    Set<String> first(String nonTerminal) {
+        int a = id(nonTerminal);
+        Set<String> names = terminalNames(first.get(a));
+        if (nullable.get(a)) names.add(EPSILON);
+        return names;
+    }
+
+    Set<String> follow(String nonTerminal) {
+        return terminalNames(follow.get(id(nonTerminal)));
+    }
+
+    // Terminal -> production bodies, as a row of PP.parsingTable
+    Map<String, Set<String>> row(String nonTerminal) {
+        Map<String, Set<String>> result = new TreeMap<>();
+        for (Map.Entry<Integer, BitSet> cell : rows.get(id(nonTerminal)).entrySet()) {
+            result.put(terminals.get(cell.getKey()), texts(cell.getValue()));
+        }
+        return result;
+    }
+
+    boolean isLL1() {
+        return conflictCells == 0;
+    }
+
+    Set<String> nonTerminals() {
+        return new LinkedHashSet<>(nonTerminals);
+    }
+
+    // The grammar as it stands, heads in the order they were introduced
+    Map<String, List<String>> grammar() {
+        Map<String, List<String>> grammar = new LinkedHashMap<>();
+        for (int a = 0; a < nonTerminals.size(); a++) {
+            List<String> alternatives = new ArrayList<>();
+            for (int p : productionsOf.get(a)) alternatives.add(texts.get(p));
+            grammar.put(nonTerminals.get(a), alternatives);
+        }
+        return grammar;
+    }
+
+    // java IncrementalGrammar [grammar file]: edits from stdin, one per line,
+    //   + A -> x y     add a production
+    //   - A -> x y     remove one
+    //   ? A            print nullable, FIRST, FOLLOW and the row of A
+    public static void main(String[] args) throws IOException {
+        Map<String, List<String>> grammar;
+        if (args.length > 0) {
+            grammar = GrammarFile.read(Paths.get(args[0]));
+        } else {
+            grammar = new LinkedHashMap<>();
+            grammar.put("S", Arrays.asList("A B C", "D"));
+            grammar.put("A", Arrays.asList("a", "ε"));
+            grammar.put("B", Arrays.asList("b", "ε"));
+            grammar.put("C", Arrays.asList("( S )", "c"));
+            grammar.put("D", Arrays.asList("A C"));
+        }
+        IncrementalGrammar g = new IncrementalGrammar(grammar, GrammarFile.startSymbol(grammar));
+        System.out.println("Grammar is " + (g.isLL1() ? "LL(1)" : "Not LL(1)"));
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        for (String line; (line = in.readLine()) != null; ) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            try {
+                if (line.startsWith("?")) {
+                    String x = line.substring(1).trim();
+                    System.out.println("nullable " + g.nullable(x) + ", FIRST " + g.first(x)
+                            + ", FOLLOW " + g.follow(x) + ", row " + g.row(x));
+                    continue;
+                }
+                int arrow = line.indexOf("->");
+                if ((line.charAt(0) != '+' && line.charAt(0) != '-') || arrow < 0) {
+                    System.out.println("Expected '+ A -> body', '- A -> body' or '? A'");
+                    continue;
+                }
+                String head = line.substring(1, arrow).trim(), body = line.substring(arrow + 2);
+                long start = System.nanoTime();
+                Change change = line.charAt(0) == '+' ? g.add(head, body) : g.remove(head, body);
+                System.out.printf("%s%.3f ms, grammar is %s%n", change, (System.nanoTime() - start) / 1e6,
+                        g.isLL1() ? "LL(1)" : "Not LL(1)");
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,494 @@
+import java.util.*;
+
+// LALR(1) parsing tables for grammars that are not LL(1), built from the same
+// CompiledGrammar as LL1Table, so terminal ids and tokenize() are shared.
+//
+//   1. LR(0) item sets of the grammar augmented with S' -> S, from kernels
+//   2. lookaheads by propagation: the closure of each kernel item with a dummy
+//      lookahead # tells which lookaheads a successor's kernel item gets spontaneously
+//      and which it inherits from this one; they are then pushed along those links
+//      until nothing changes
+//   3. ACTION and GOTO, with shift/reduce conflicts resolved as shift and
+//      reduce/reduce conflicts as the earlier production, as yacc does; every
+//      conflict is recorded
+//
+// An item is an int: itemBase[p] + dot. A state's actions are packed into a comb
+// vector: an action for (state, terminal) lives at actionBase[state] + terminal if
+// actionCheck says that slot belongs to the state, and is the state's default (its
+// most common reduction, or ERROR) otherwise. GOTO is packed the same way by
+// nonterminal column. An ACTION entry is kind | argument << 2.
+public class LALRTable {
+    static final int ERROR = 0, SHIFT = 1, REDUCE = 2, ACCEPT = 3;
+
+    final CompiledGrammar grammar;
+    final int stateCount;
+    final int[] prodLength; // body length per production
+    final List<int[]> conflicts; // {state, terminal, kept action, dropped action}
+
+    final int[] actionBase, actionDefault, actionCheck, actionValue;
+    final int[] gotoBase, gotoDefault, gotoCheck, gotoValue;
+
+    // Items of the augmented grammar; production P = numProductions is S' -> S
+    private final int[] itemBase;
+    private final int[] itemProd;
+    private final int[] augOffset;
+    private final int[] augSymbols;
+
+    private LALRTable(CompiledGrammar grammar) {
+        this.grammar = grammar;
+        int productions = grammar.numProductions();
+        int n = grammar.numNonTerminals(), t = grammar.numTerminals();
+
+        augOffset = Arrays.copyOf(grammar.prodOffset, productions + 2);
+        augSymbols = Arrays.copyOf(grammar.symbols, grammar.symbols.length + 1);
+        augSymbols[grammar.symbols.length] = ~grammar.start;
+        augOffset[productions + 1] = augSymbols.length;
+        prodLength = new int[productions + 1];
+        itemBase = new int[productions + 2];
+        for (int p = 0; p <= productions; p++) {
+            prodLength[p] = augOffset[p + 1] - augOffset[p];
+            itemBase[p + 1] = itemBase[p] + prodLength[p] + 1;
+        }
+        itemProd = new int[itemBase[productions + 1]];
+        for (int p = 0; p <= productions; p++) Arrays.fill(itemProd, itemBase[p], itemBase[p + 1], p);
+
+        // ========== LR(0) states ==========
+        List<int[]> kernels = new ArrayList<>();
+        Map<Kernel, Integer> stateOf = new HashMap<>();
+        List<int[]> transitions = new ArrayList<>(); // per state: symbol, target, symbol, target, ...
+        kernels.add(new int[] { itemBase[productions] });
+        stateOf.put(new Kernel(kernels.get(0)), 0);
+
+        int symbolCount = t + n; // terminal t, nonterminal a at t + a
+        int[][] groups = new int[symbolCount][];
+        int[] groupSize = new int[symbolCount];
+        int[] touched = new int[symbolCount];
+        for (int s = 0; s < kernels.size(); s++) {
+            int touchedCount = 0;
+            for (int item : closure(kernels.get(s))) {
+                int x = next(item);
+                if (x == Integer.MAX_VALUE) continue;
+                int g = x >= 0 ? x : t + ~x;
+                if (groupSize[g] == 0) {
+                    touched[touchedCount++] = g;
+                    if (groups[g] == null) groups[g] = new int[4];
+                }
+                if (groupSize[g] == groups[g].length) groups[g] = Arrays.copyOf(groups[g], groupSize[g] * 2);
+                groups[g][groupSize[g]++] = item + 1;
+            }
+            Arrays.sort(touched, 0, touchedCount); // terminals first, in id order
+            int[] edges = new int[2 * touchedCount];
+            for (int k = 0; k < touchedCount; k++) {
+                int g = touched[k];
+                int[] kernel = Arrays.copyOf(groups[g], groupSize[g]);
+                Arrays.sort(kernel);
+                groupSize[g] = 0;
+                Integer target = stateOf.get(new Kernel(kernel));
+                if (target == null) {
+                    target = kernels.size();
+                    kernels.add(kernel);
+                    stateOf.put(new Kernel(kernel), target);
+                }
+                edges[2 * k] = g < t ? g : ~(g - t);
+                edges[2 * k + 1] = target;
+            }
+            transitions.add(edges);
+        }
+        stateCount = kernels.size();
+
+        // ========== Lookaheads ==========
+        // Bit t of a lookahead set is the dummy #
+        int words = (t + 1 + 63) >>> 6;
+        long[][][] lookahead = new long[stateCount][][];
+        for (int s = 0; s < stateCount; s++) lookahead[s] = new long[kernels.get(s).length][words];
+        lookahead[0][0][CompiledGrammar.END >>> 6] |= 1L << CompiledGrammar.END;
+
+        // links[s][k]: successor kernel items {state, index} that inherit from kernel item k of s
+        int[][][] links = new int[stateCount][][];
+        long[][] dummy = new long[1][words];
+        dummy[0][t >>> 6] |= 1L << t;
+        for (int s = 0; s < stateCount; s++) {
+            int[] kernel = kernels.get(s);
+            links[s] = new int[kernel.length][];
+            for (int k = 0; k < kernel.length; k++) {
+                int[] linked = new int[8];
+                int linkCount = 0;
+                // Lookaheads of every item in the closure of [kernel[k], #]
+                for (ClosureItem ci : closureWithLookaheads(new int[] { kernel[k] }, dummy, words)) {
+                    int x = next(ci.item);
+                    if (x == Integer.MAX_VALUE) continue;
+                    int target = transition(transitions.get(s), x);
+                    int index = Arrays.binarySearch(kernels.get(target), ci.item + 1);
+                    long[] into = lookahead[target][index];
+                    for (int w = 0; w < words; w++) into[w] |= ci.lookahead[w];
+                    if (contains(ci.lookahead, t)) {
+                        into[t >>> 6] &= ~(1L << t); // # itself is never a lookahead
+                        if (linkCount + 2 > linked.length) linked = Arrays.copyOf(linked, linked.length * 2);
+                        linked[linkCount++] = target;
+                        linked[linkCount++] = index;
+                    }
+                }
+                links[s][k] = Arrays.copyOf(linked, linkCount);
+            }
+        }
+        propagate(lookahead, links);
+
+        // ========== ACTION and GOTO ==========
+        List<int[]> conflicts = new ArrayList<>();
+        int[][] actionColumns = new int[stateCount][], actionValues = new int[stateCount][];
+        int[] actionDefault = new int[stateCount];
+        CompiledGrammar.EdgeList gotoStates = new CompiledGrammar.EdgeList(n), gotoTargets = new CompiledGrammar.EdgeList(n);
+        int[] row = new int[t];
+        for (int s = 0; s < stateCount; s++) {
+            Arrays.fill(row, ERROR);
+            int[] edges = transitions.get(s);
+            for (int e = 0; e < edges.length; e += 2) {
+                if (edges[e] >= 0) row[edges[e]] = SHIFT | edges[e + 1] << 2;
+                else {
+                    gotoStates.add(~edges[e], s);
+                    gotoTargets.add(~edges[e], edges[e + 1]);
+                }
+            }
+            // Reductions: completed kernel items, and ε-productions in the closure
+            int[] kernel = kernels.get(s);
+            for (ClosureItem ci : closureWithLookaheads(kernel, lookahead[s], words)) {
+                if (next(ci.item) != Integer.MAX_VALUE) continue;
+                int p = itemProd[ci.item];
+                for (int w = 0; w < words; w++) {
+                    for (long bits = ci.lookahead[w]; bits != 0; bits &= bits - 1) {
+                        int terminal = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        if (terminal >= t) continue;
+                        int action = p == productions ? ACCEPT : REDUCE | p << 2;
+                        int old = row[terminal];
+                        if (old == ERROR || old == action) {
+                            row[terminal] = action;
+                        } else if ((old & 3) == SHIFT) {
+                            conflicts.add(new int[] { s, terminal, old, action });
+                        } else {
+                            int kept = (action >>> 2) < (old >>> 2) ? action : old;
+                            conflicts.add(new int[] { s, terminal, kept, kept == action ? old : action });
+                            row[terminal] = kept;
+                        }
+                    }
+                }
+            }
+            actionDefault[s] = mostCommonReduction(row);
+            int count = 0;
+            for (int a : row) if (a != actionDefault[s]) count++;
+            actionColumns[s] = new int[count];
+            actionValues[s] = new int[count];
+            count = 0;
+            for (int terminal = 0; terminal < t; terminal++) {
+                if (row[terminal] == actionDefault[s]) continue;
+                actionColumns[s][count] = terminal;
+                actionValues[s][count++] = row[terminal];
+            }
+        }
+        this.conflicts = Collections.unmodifiableList(conflicts);
+
+        Comb actions = Comb.pack(actionColumns, actionValues, t);
+        this.actionBase = actions.base;
+        this.actionCheck = actions.check;
+        this.actionValue = actions.value;
+        this.actionDefault = actionDefault;
+
+        // GOTO by nonterminal column, defaulting to its most common target
+        int[][] states = gotoStates.build(), targets = gotoTargets.build(); // states ascending
+        int[][] gotoColumns = new int[n][], gotoValues = new int[n][];
+        gotoDefault = new int[n];
+        for (int a = 0; a < n; a++) {
+            gotoDefault[a] = mostCommonTarget(targets[a]);
+            int count = 0;
+            for (int target : targets[a]) if (target != gotoDefault[a]) count++;
+            gotoColumns[a] = new int[count];
+            gotoValues[a] = new int[count];
+            count = 0;
+            for (int k = 0; k < targets[a].length; k++) {
+                if (targets[a][k] == gotoDefault[a]) continue;
+                gotoColumns[a][count] = states[a][k];
+                gotoValues[a][count++] = targets[a][k];
+            }
+        }
+        Comb gotos = Comb.pack(gotoColumns, gotoValues, stateCount);
+        this.gotoBase = gotos.base;
+        this.gotoCheck = gotos.check;
+        this.gotoValue = gotos.value;
+    }
+
+    static LALRTable build(CompiledGrammar grammar) {
+        return new LALRTable(grammar);
+    }
+
+    boolean isLALR1() {
+        return conflicts.isEmpty();
+    }
+
+    int action(int state, int terminal) {
+        int i = actionBase[state] + terminal;
+        return actionCheck[i] == state ? actionValue[i] : actionDefault[state];
+    }
+
+    // Only asked for states that have a transition on the nonterminal, so the default is safe
+    int goTo(int state, int nonTerminal) {
+        int i = gotoBase[nonTerminal] + state;
+        return gotoCheck[i] == nonTerminal ? gotoValue[i] : gotoDefault[nonTerminal];
+    }
+
+    // Entries in the packed ACTION and GOTO vectors
+    int packedSize() {
+        return actionValue.length + gotoValue.length;
+    }
+
+    // Map a space-separated sentence to terminal ids followed by "$", as LL1Table does
+    int[] tokenize(String input) {
+        String[] words = input.trim().split("\\s+");
+        int count = words.length == 1 && words[0].isEmpty() ? 0 : words.length;
+        int[] tokens = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            tokens[i] = grammar.terminalId(words[i]);
+            if (tokens[i] == CompiledGrammar.END) tokens[i] = -1; // "$" is not valid inside a sentence
+        }
+        tokens[count] = CompiledGrammar.END;
+        return tokens;
+    }
+
+    String describe(int action) {
+        switch (action & 3) {
+            case SHIFT: return "shift " + (action >>> 2);
+            case REDUCE: return "reduce " + grammar.nonTerminals[grammar.prodLhs[action >>> 2]] + " -> " + grammar.prodText[action >>> 2];
+            case ACCEPT: return "accept";
+            default: return "error";
+        }
+    }
+
+    // ========== Items ==========
+
+    // Symbol after the dot, or MAX_VALUE at the end of the production
+    private int next(int item) {
+        int p = itemProd[item];
+        int dot = item - itemBase[p];
+        return dot < prodLength[p] ? augSymbols[augOffset[p] + dot] : Integer.MAX_VALUE;
+    }
+
+    // LR(0) closure: the kernel followed by the dot-0 items it predicts
+    private int[] closure(int[] kernel) {
+        int[] items = Arrays.copyOf(kernel, kernel.length + 8);
+        int size = kernel.length;
+        BitSet predicted = new BitSet();
+        for (int i = 0; i < size; i++) {
+            int x = next(items[i]);
+            if (x >= 0 || predicted.get(~x)) continue;
+            predicted.set(~x);
+            for (int p = grammar.ntProdStart[~x]; p < grammar.ntProdStart[~x + 1]; p++) {
+                if (size == items.length) items = Arrays.copyOf(items, size * 2);
+                items[size++] = itemBase[p];
+            }
+        }
+        return Arrays.copyOf(items, size);
+    }
+
+    static final class ClosureItem {
+        final int item;
+        final long[] lookahead;
+
+        ClosureItem(int item, long[] lookahead) {
+            this.item = item;
+            this.lookahead = lookahead;
+        }
+    }
+
+    // LR(1) closure of kernel items with the given lookaheads. All dot-0 items of one
+    // nonterminal share a lookahead set, so the sets are solved per nonterminal: B gets
+    // FIRST(β) from every item [.. -> α . B β], and the item's own lookahead if β is
+    // nullable.
+    private List<ClosureItem> closureWithLookaheads(int[] kernel, long[][] kernelLookahead, int words) {
+        int[] closure = closure(kernel);
+        Map<Integer, long[]> predicted = new HashMap<>(); // nonterminal -> lookahead
+        for (int i = kernel.length; i < closure.length; i++) {
+            predicted.computeIfAbsent(grammar.prodLhs[itemProd[closure[i]]], a -> new long[words]);
+        }
+        long[][] lookaheads = new long[closure.length][];
+        for (int i = 0; i < closure.length; i++) {
+            lookaheads[i] = i < kernel.length ? kernelLookahead[i] : predicted.get(grammar.prodLhs[itemProd[closure[i]]]);
+        }
+        // FIRST(β) goes in once; the item's own lookahead flows on while sets change
+        List<long[]> from = new ArrayList<>(), to = new ArrayList<>();
+        for (int i = 0; i < closure.length; i++) {
+            int x = next(closure[i]);
+            if (x >= 0) continue; // a terminal, or the end
+            int p = itemProd[closure[i]];
+            long[] into = predicted.get(~x);
+            if (firstOf(augOffset[p] + closure[i] - itemBase[p] + 1, augOffset[p + 1], into)) {
+                from.add(lookaheads[i]);
+                to.add(into);
+            }
+        }
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            for (int e = 0; e < from.size(); e++) changed |= orInto(to.get(e), from.get(e));
+        }
+        List<ClosureItem> result = new ArrayList<>(closure.length);
+        for (int i = 0; i < closure.length; i++) result.add(new ClosureItem(closure[i], lookaheads[i]));
+        return result;
+    }
+
+    // Add FIRST of augSymbols[from .. to) to out; returns whether it is nullable
+    private boolean firstOf(int from, int to, long[] out) {
+        for (int i = from; i < to; i++) {
+            int symbol = augSymbols[i];
+            if (symbol >= 0) {
+                out[symbol >>> 6] |= 1L << symbol;
+                return false;
+            }
+            long[] first = grammar.first[~symbol];
+            for (int w = 0; w < first.length; w++) out[w] |= first[w];
+            if (!grammar.nullable[~symbol]) return false;
+        }
+        return true;
+    }
+
+    private static int transition(int[] edges, int symbol) {
+        for (int e = 0; e < edges.length; e += 2) {
+            if (edges[e] == symbol) return edges[e + 1];
+        }
+        throw new IllegalStateException("No transition on " + symbol);
+    }
+
+    // Push lookaheads along the links until nothing changes
+    private static void propagate(long[][][] lookahead, int[][][] links) {
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        for (int s = 0; s < links.length; s++) {
+            for (int k = 0; k < links[s].length; k++) queue.add(new int[] { s, k });
+        }
+        Set<Long> queued = new HashSet<>();
+        for (int[] entry : queue) queued.add((long) entry[0] << 32 | entry[1]);
+        while (!queue.isEmpty()) {
+            int[] from = queue.poll();
+            queued.remove((long) from[0] << 32 | from[1]);
+            int[] targets = links[from[0]][from[1]];
+            for (int i = 0; i < targets.length; i += 2) {
+                if (orInto(lookahead[targets[i]][targets[i + 1]], lookahead[from[0]][from[1]])
+                        && queued.add((long) targets[i] << 32 | targets[i + 1])) {
+                    queue.add(new int[] { targets[i], targets[i + 1] });
+                }
+            }
+        }
+    }
+
+    private static boolean orInto(long[] dst, long[] src) {
+        boolean changed = false;
+        for (int w = 0; w < dst.length; w++) {
+            long merged = dst[w] | src[w];
+            if (merged != dst[w]) {
+                dst[w] = merged;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean contains(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static int mostCommonReduction(int[] row) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        int best = ERROR, bestCount = 0;
+        for (int action : row) {
+            if ((action & 3) != REDUCE) continue;
+            int count = counts.merge(action, 1, Integer::sum);
+            if (count > bestCount) {
+                best = action;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private static int mostCommonTarget(int[] targets) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        int best = -1, bestCount = 0;
+        for (int target : targets) {
+            int count = counts.merge(target, 1, Integer::sum);
+            if (count > bestCount) {
+                best = target;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    // Sorted items of a kernel, as a hash key
+    private static final class Kernel {
+        private final int[] items;
+        private final int hash;
+
+        Kernel(int[] items) {
+            this.items = items;
+            this.hash = Arrays.hashCode(items);
+        }
+
+        public boolean equals(Object other) {
+            return other instanceof Kernel kernel && Arrays.equals(items, kernel.items);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // Row displacement packing: each row's entries are placed at base + column, at the
+    // first base where they all land on free slots; check records the owning row
+    static final class Comb {
+        final int[] base, check, value;
+
+        private Comb(int[] base, int[] check, int[] value) {
+            this.base = base;
+            this.check = check;
+            this.value = value;
+        }
+
+        // columns[r] are ascending, each below width
+        static Comb pack(int[][] columns, int[][] values, int width) {
+            int rows = columns.length;
+            Integer[] order = new Integer[rows];
+            for (int r = 0; r < rows; r++) order[r] = r;
+            Arrays.sort(order, (x, y) -> columns[y].length - columns[x].length); // densest first
+
+            int[] base = new int[rows];
+            BitSet used = new BitSet();
+            int maxBase = 0, firstFree = 0;
+            for (int r : order) {
+                int[] cols = columns[r];
+                if (cols.length == 0) continue; // every lookup falls through to the default
+                int b = Math.max(0, firstFree - cols[0]);
+                search:
+                while (true) {
+                    for (int col : cols) {
+                        if (used.get(b + col)) {
+                            b++;
+                            continue search;
+                        }
+                    }
+                    break;
+                }
+                base[r] = b;
+                maxBase = Math.max(maxBase, b);
+                for (int col : cols) used.set(b + col);
+                firstFree = used.nextClearBit(firstFree);
+            }
+
+            // Any lookup indexes below maxBase + width
+            int[] check = new int[maxBase + width];
+            int[] value = new int[check.length];
+            Arrays.fill(check, -1);
+            for (int r = 0; r < rows; r++) {
+                for (int k = 0; k < columns[r].length; k++) {
+                    check[base[r] + columns[r][k]] = r;
+                    value[base[r] + columns[r][k]] = values[r][k];
+                }
+            }
+            return new Comb(base, check, value);
+        }
+    }
+}
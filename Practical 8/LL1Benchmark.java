@@ -0,0 +1,89 @@
+import java.util.*;
+
+// Compares PP.validateString (string stack, map table) with the dense LL1Parser
+// on random sentences of the expression grammar
+//
+//   E  -> T E'
+//   E' -> + T E' | ε
+//   T  -> F T'
+//   T' -> * F T' | ε
+//   F  -> ( E ) | id
+//
+// Usage: java LL1Benchmark [sentences] [tokensPerSentence] [seed]
+public class LL1Benchmark {
+
+    public static void main(String[] args) {
+        int sentences = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int length = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+
+        PP.grammar.put("E", Arrays.asList("T E'"));
+        PP.grammar.put("E'", Arrays.asList("+ T E'", "ε"));
+        PP.grammar.put("T", Arrays.asList("F T'"));
+        PP.grammar.put("T'", Arrays.asList("* F T'", "ε"));
+        PP.grammar.put("F", Arrays.asList("( E )", "id"));
+        PP.computeSets("E");
+        PP.constructParsingTable();
+        LL1Table table = LL1Table.build(PP.compiled);
+        if (!table.isLL1()) throw new IllegalStateException("Benchmark grammar must be LL(1)");
+
+        // Generate the corpus once in both representations
+        Random random = new Random(seed);
+        String[] text = new String[sentences];
+        int[][] tokens = new int[sentences][];
+        long totalTokens = 0;
+        for (int s = 0; s < sentences; s++) {
+            StringBuilder sb = new StringBuilder();
+            expression(sb, random, length, 0);
+            if (s % 10 == 9) sb.append(" )"); // keep some rejects in the mix
+            text[s] = sb.toString().trim();
+            tokens[s] = table.tokenize(text[s]);
+            totalTokens += tokens[s].length - 1;
+        }
+
+        LL1Parser parser = new LL1Parser(table);
+        for (int s = 0; s < sentences; s++) {
+            if (PP.validateString(text[s]) != parser.accepts(tokens[s])) {
+                throw new IllegalStateException("Drivers disagree on: " + text[s]);
+            }
+        }
+
+        System.out.printf("%n%d sentences, %d tokens%n", sentences, totalTokens);
+        for (int round = 1; round <= 5; round++) {
+            long t0 = System.nanoTime();
+            int legacyAccepted = 0;
+            for (String sentence : text) {
+                if (PP.validateString(sentence)) legacyAccepted++;
+            }
+            long t1 = System.nanoTime();
+            int denseAccepted = 0;
+            for (int[] sentence : tokens) {
+                if (parser.accepts(sentence)) denseAccepted++;
+            }
+            long t2 = System.nanoTime();
+
+            System.out.printf("round %d: validateString %8.2f Mtok/s (%d ok) | LL1Parser %8.2f Mtok/s (%d ok)%n",
+                    round, totalTokens * 1e3 / (t1 - t0), legacyAccepted,
+                    totalTokens * 1e3 / (t2 - t1), denseAccepted);
+        }
+    }
+
+    // Append roughly budget tokens of a random expression
+    private static void expression(StringBuilder sb, Random random, int budget, int depth) {
+        term(sb, random, depth);
+        for (int used = 1; used < budget; used += 2) {
+            sb.append(random.nextBoolean() ? " +" : " *");
+            term(sb, random, depth);
+        }
+    }
+
+    private static void term(StringBuilder sb, Random random, int depth) {
+        if (depth < 8 && random.nextInt(8) == 0) {
+            sb.append(" (");
+            expression(sb, random, 1 + random.nextInt(6), depth + 1);
+            sb.append(" )");
+        } else {
+            sb.append(" id");
+        }
+    }
+}
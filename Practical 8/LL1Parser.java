@@ -0,0 +1,194 @@
+import java.util.Arrays;
+import metrics.Counter;
+import metrics.HighWaterMark;
+import metrics.Metrics;
+
+// Table-driven LL(1) driver over terminal ids. The symbol stack is a plain int[]
+// that is reused across parses, so feeding tokens allocates nothing once the
+// stack has grown to the deepest sentence seen.
+//
+// Tokens can be pushed one at a time with step(), which lets callers validate a
+// stream without first collecting the sentence into an array.
+//
+// Given a ParseTree, the parser also records the derivation: each symbol popped off
+// the stack becomes a node, and a parallel stack remembers which node each pending
+// symbol is a child of. Without one, validation takes a path that never looks at it.
+//
+// A parser is the per-thread parse context: it is not thread-safe itself, but the
+// LL1Table it reads is, so give each thread its own parser over a shared table.
+//
+// With -Dmetrics=true the parser counts tokens, table lookups, expansions and the
+// stack high-water mark per sentence and adds them to the shared counters when the
+// sentence ends, so the hot loop itself only touches plain fields.
+public class LL1Parser implements Recognizer {
+    private static final Counter SENTENCES = Metrics.counter("ll1.sentences");
+    private static final Counter ACCEPTED = Metrics.counter("ll1.accepted");
+    private static final Counter TOKENS = Metrics.counter("ll1.tokens");
+    private static final Counter LOOKUPS = Metrics.counter("ll1.lookups");
+    private static final Counter EXPANSIONS = Metrics.counter("ll1.expansions");
+    private static final HighWaterMark STACK = Metrics.highWaterMark("ll1.stack.max");
+
+    private final int[][] table;
+    private final int[] prodOffset;
+    private final int[] symbols;
+    private final int startSymbol;
+
+    private int[] stack = new int[64];
+    private int top;
+    private boolean failed;
+    private ParseTree tree; // null when only validating
+    private int[] parents = new int[0]; // with a tree: node that each stack entry is a child of
+    private int position; // with a tree: tokens matched so far
+    private int tokenCount, lookupCount, expansionCount, deepest; // of the current sentence, with metrics on
+
+    LL1Parser(LL1Table table) {
+        this.table = table.table;
+        this.prodOffset = table.grammar.prodOffset;
+        this.symbols = table.grammar.symbols;
+        this.startSymbol = ~table.grammar.start;
+    }
+
+    // Start a new sentence: stack holds "$" under the start symbol
+    public void reset() {
+        top = 0;
+        stack[top++] = CompiledGrammar.END;
+        stack[top++] = startSymbol;
+        failed = false;
+        if (tree != null) {
+            tree.clear();
+            parents[1] = -1;
+            position = 0;
+        }
+    }
+
+    // Build a parse tree in every following sentence, or stop with null
+    void setTree(ParseTree tree) {
+        this.tree = tree;
+        if (tree != null && parents.length < stack.length) parents = new int[stack.length];
+    }
+
+    // Validate a token array that ends with the end marker, leaving its parse tree,
+    // as far as it got, in tree
+    boolean parse(int[] tokens, ParseTree tree) {
+        setTree(tree);
+        try {
+            return accepts(tokens);
+        } finally {
+            this.tree = null;
+        }
+    }
+
+    // Consume one terminal; returns false once the sentence can no longer be accepted
+    public boolean step(int token) {
+        if (failed) return false;
+        if (Metrics.ENABLED) tokenCount++;
+        if (token < 0) return fail();
+        if (tree != null) return stepWithTree(token);
+        int[][] table = this.table;
+        int[] symbols = this.symbols;
+        while (top > 0) {
+            int x = stack[--top];
+            if (x >= 0) {
+                return x == token || fail();
+            }
+            int p = table[~x][token];
+            if (Metrics.ENABLED) lookupCount++;
+            if (p < 0) return fail();
+            int from = prodOffset[p], to = prodOffset[p + 1];
+            if (top + (to - from) > stack.length) grow(top + (to - from));
+            for (int i = to - 1; i >= from; i--) {
+                stack[top++] = symbols[i];
+            }
+            if (Metrics.ENABLED) {
+                expansionCount++;
+                deepest = Math.max(deepest, top);
+            }
+        }
+        return fail(); // input continues after "$" was matched
+    }
+
+    // step() that also adds the popped symbols to the tree
+    private boolean stepWithTree(int token) {
+        int[][] table = this.table;
+        int[] symbols = this.symbols;
+        ParseTree tree = this.tree;
+        while (top > 0) {
+            int x = stack[--top];
+            int parent = parents[top];
+            if (x >= 0) {
+                if (x != token) return fail();
+                if (x != CompiledGrammar.END) tree.add(x, position++, parent);
+                return true;
+            }
+            int p = table[~x][token];
+            if (Metrics.ENABLED) lookupCount++;
+            if (p < 0) return fail();
+            int node = tree.add(x, p, parent);
+            int from = prodOffset[p], to = prodOffset[p + 1];
+            if (top + (to - from) > stack.length) grow(top + (to - from));
+            for (int i = to - 1; i >= from; i--) {
+                parents[top] = node;
+                stack[top++] = symbols[i];
+            }
+            if (Metrics.ENABLED) {
+                expansionCount++;
+                deepest = Math.max(deepest, top);
+            }
+        }
+        return fail();
+    }
+
+    // Feed the end marker and report whether the sentence was accepted
+    public boolean finish() {
+        boolean accepted = step(CompiledGrammar.END) && top == 0;
+        if (Metrics.ENABLED) record(accepted);
+        return accepted;
+    }
+
+    // Validate tokens[from .. to) followed by the end marker
+    boolean accepts(int[] tokens, int from, int to) {
+        reset();
+        for (int i = from; i < to; i++) {
+            if (!step(tokens[i])) return false;
+        }
+        return finish();
+    }
+
+    // Validate a token array that already ends with the end marker
+    boolean accepts(int[] tokens) {
+        reset();
+        boolean accepted = true;
+        for (int token : tokens) {
+            if (!step(token)) {
+                accepted = false;
+                break;
+            }
+        }
+        accepted &= top == 0;
+        if (Metrics.ENABLED) record(accepted);
+        return accepted;
+    }
+
+    // Publish the counts of the sentence that just ended
+    private void record(boolean accepted) {
+        SENTENCES.increment();
+        if (accepted) ACCEPTED.increment();
+        TOKENS.add(tokenCount);
+        LOOKUPS.add(lookupCount);
+        EXPANSIONS.add(expansionCount);
+        STACK.update(deepest);
+        tokenCount = lookupCount = expansionCount = deepest = 0;
+    }
+
+    private boolean fail() {
+        failed = true;
+        return false;
+    }
+
+    private void grow(int needed) {
+        int[] larger = new int[Math.max(needed, stack.length * 2)];
+        System.arraycopy(stack, 0, larger, 0, top);
+        stack = larger;
+        if (tree != null) parents = Arrays.copyOf(parents, larger.length);
+    }
+}
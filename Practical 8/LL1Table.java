@@ -0,0 +1,80 @@
+import java.util.*;
+
+// Predictive parsing table compiled to a dense int[nonterminal][terminal] of production
+// indices. Built once from a CompiledGrammar and never modified afterwards, so one
+// table can be shared by any number of threads, each with its own LL1Parser.
+public class LL1Table {
+    static final int ERROR = -1;
+    static final int CONFLICT = -2;
+
+    final CompiledGrammar grammar;
+    final int[][] table;
+    final List<int[]> conflicts; // {nonterminal, terminal, production, production}
+
+    private LL1Table(CompiledGrammar grammar) {
+        this.grammar = grammar;
+        int n = grammar.numNonTerminals();
+        int t = grammar.numTerminals();
+        table = new int[n][t];
+        for (int[] row : table) Arrays.fill(row, ERROR);
+
+        List<int[]> conflicts = new ArrayList<>();
+        long[] select = new long[grammar.words];
+        int[] claimed = new int[t]; // first production entered in each cell of the row
+        for (int a = 0; a < n; a++) {
+            for (int p = grammar.ntProdStart[a]; p < grammar.ntProdStart[a + 1]; p++) {
+                Arrays.fill(select, 0L);
+                if (grammar.firstOfProduction(p, select)) {
+                    CompiledGrammar.orInto(select, grammar.follow[a]);
+                }
+                for (int w = 0; w < select.length; w++) {
+                    for (long word = select[w]; word != 0; word &= word - 1) {
+                        int terminal = (w << 6) + Long.numberOfTrailingZeros(word);
+                        if (table[a][terminal] == ERROR) {
+                            table[a][terminal] = p;
+                            claimed[terminal] = p;
+                        } else {
+                            // Every later production conflicts with the one that claimed the cell
+                            table[a][terminal] = CONFLICT;
+                            conflicts.add(new int[] { a, terminal, claimed[terminal], p });
+                        }
+                    }
+                }
+            }
+        }
+        this.conflicts = Collections.unmodifiableList(conflicts);
+    }
+
+    // A table built before, e.g. read back from a GrammarSnapshot
+    LL1Table(CompiledGrammar grammar, int[][] table, List<int[]> conflicts) {
+        this.grammar = grammar;
+        this.table = table;
+        this.conflicts = Collections.unmodifiableList(conflicts);
+    }
+
+    static LL1Table build(CompiledGrammar grammar) {
+        return new LL1Table(grammar);
+    }
+
+    boolean isLL1() {
+        return conflicts.isEmpty();
+    }
+
+    // Production to expand for nonterminal a on lookahead t, or ERROR / CONFLICT
+    int lookup(int a, int t) {
+        return table[a][t];
+    }
+
+    // Map a space-separated sentence to terminal ids followed by "$"; unknown tokens become ERROR
+    int[] tokenize(String input) {
+        String[] words = input.trim().split("\\s+");
+        int count = words.length == 1 && words[0].isEmpty() ? 0 : words.length;
+        int[] tokens = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            tokens[i] = grammar.terminalId(words[i]);
+            if (tokens[i] == CompiledGrammar.END) tokens[i] = ERROR; // "$" is not valid inside a sentence
+        }
+        tokens[count] = CompiledGrammar.END;
+        return tokens;
+    }
+}
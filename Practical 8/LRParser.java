@@ -0,0 +1,98 @@
+// Shift-reduce driver over an LALRTable. The state stack is a plain int[] reused
+// across parses, so feeding tokens allocates nothing once the stack has grown to the
+// deepest sentence seen; there is no symbol stack, since the parser only recognises.
+//
+//   LRParser parser = new LRParser(table);
+//   boolean ok = parser.accepts(table.tokenize("id + id * id"));
+//
+// Like LL1Parser, a parser is a per-thread context over a table that can be shared.
+public class LRParser implements Recognizer {
+    private final int[] actionBase, actionDefault, actionCheck, actionValue;
+    private final int[] gotoBase, gotoDefault, gotoCheck, gotoValue;
+    private final int[] prodLength;
+    private final int[] prodLhs;
+
+    private int[] stack = new int[64];
+    private int top;
+    private boolean failed, accepted;
+
+    LRParser(LALRTable table) {
+        this.actionBase = table.actionBase;
+        this.actionDefault = table.actionDefault;
+        this.actionCheck = table.actionCheck;
+        this.actionValue = table.actionValue;
+        this.gotoBase = table.gotoBase;
+        this.gotoDefault = table.gotoDefault;
+        this.gotoCheck = table.gotoCheck;
+        this.gotoValue = table.gotoValue;
+        this.prodLength = table.prodLength;
+        this.prodLhs = table.grammar.prodLhs;
+        reset();
+    }
+
+    // Start a new sentence in state 0
+    public void reset() {
+        top = 0;
+        stack[top++] = 0;
+        failed = false;
+        accepted = false;
+    }
+
+    // Consume one terminal, reducing as needed first; returns false once the sentence
+    // can no longer be accepted
+    public boolean step(int token) {
+        if (failed || accepted) return fail();
+        if (token < 0) return fail();
+        int[] stack = this.stack;
+        while (true) {
+            int state = stack[top - 1];
+            int i = actionBase[state] + token;
+            int action = actionCheck[i] == state ? actionValue[i] : actionDefault[state];
+            switch (action & 3) {
+                case LALRTable.SHIFT:
+                    if (top == stack.length) stack = grow();
+                    stack[top++] = action >>> 2;
+                    return true;
+                case LALRTable.REDUCE: {
+                    int p = action >>> 2;
+                    top -= prodLength[p];
+                    int a = prodLhs[p];
+                    int j = gotoBase[a] + stack[top - 1];
+                    int target = gotoCheck[j] == a ? gotoValue[j] : gotoDefault[a];
+                    if (top == stack.length) stack = grow();
+                    stack[top++] = target;
+                    break;
+                }
+                case LALRTable.ACCEPT:
+                    accepted = true;
+                    return true;
+                default:
+                    return fail();
+            }
+        }
+    }
+
+    // Feed the end marker and report whether the sentence was accepted
+    public boolean finish() {
+        return step(CompiledGrammar.END) && accepted;
+    }
+
+    // Validate a token array that already ends with the end marker
+    boolean accepts(int[] tokens) {
+        reset();
+        for (int token : tokens) {
+            if (!step(token)) return false;
+        }
+        return accepted;
+    }
+
+    private boolean fail() {
+        failed = true;
+        return false;
+    }
+
+    private int[] grow() {
+        stack = java.util.Arrays.copyOf(stack, stack.length * 2);
+        return stack;
+    }
+}
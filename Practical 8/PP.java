@@ -1,123 +1,204 @@
+import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import metrics.*;
 
 public class PP {
+    // Instrumentation, active with -Dmetrics=true (LL1Parser keeps its own ll1.* counters)
+    private static final Histogram SETS_TIME = Metrics.histogram("pp.sets");
+    private static final Histogram TABLE_TIME = Metrics.histogram("pp.table");
+    private static final Histogram VALIDATE_TIME = Metrics.histogram("pp.validate");
+    private static final Counter TOKENS = Metrics.counter("pp.tokens");
+    private static final Counter LOOKUPS = Metrics.counter("pp.lookups");
+    private static final Counter EXPANSIONS = Metrics.counter("pp.expansions");
+    private static final HighWaterMark STACK = Metrics.highWaterMark("pp.stack.max");
+
     static Map<String, List<String>> grammar = new HashMap<>();
     static Map<String, Set<String>> firstSets = new HashMap<>();
     static Map<String, Set<String>> followSets = new HashMap<>();
+    static CompiledGrammar compiled;
+    static LL1Table ll1Table;
+    static LALRTable lalrTable; // only built when the grammar is not LL(1)
     static Map<String, Map<String, Set<String>>> parsingTable = new HashMap<>();
 
-    public static void main(String[] args) {
-        // Step 1: Define the Grammar
-        grammar.put("S", Arrays.asList("A B C", "D"));
-        grammar.put("A", Arrays.asList("a", "ε"));
-        grammar.put("B", Arrays.asList("b", "ε"));
-        grammar.put("C", Arrays.asList("( S )", "c"));
-        grammar.put("D", Arrays.asList("A C"));
+    // java PP [--grammar <file>] [--snapshot <file>] [--tree] [mode ...]
+    //   --grammar   read the grammar from a file (GrammarFile format) instead of the built-in one
+    //   --snapshot  reuse the analysis saved in <file> if it matches the grammar, or save it there
+    //   --tree      print the parse tree of a valid string (LL(1) grammars only)
+    public static void main(String[] args) throws IOException {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        String grammarFile = option(arguments, "--grammar");
+        String snapshotFile = option(arguments, "--snapshot");
+        boolean printTree = arguments.remove("--tree");
+        args = arguments.toArray(new String[0]);
 
-        // Step 2: Compute First and Follow Sets
-        for (String nonTerminal : grammar.keySet()) {
-            firstSets.put(nonTerminal, computeFirst(nonTerminal));
-        }
-        for (String nonTerminal : grammar.keySet()) {
-            followSets.put(nonTerminal, computeFollow(nonTerminal));
+        // Step 1: Define the Grammar (with a snapshot of a grammar file, only read if the snapshot is stale)
+        String startSymbol = "S";
+        if (grammarFile != null && snapshotFile == null) {
+            grammar = GrammarFile.read(Paths.get(grammarFile));
+            startSymbol = GrammarFile.startSymbol(grammar);
+        } else if (grammarFile == null) {
+            grammar.put("S", Arrays.asList("A B C", "D"));
+            grammar.put("A", Arrays.asList("a", "ε"));
+            grammar.put("B", Arrays.asList("b", "ε"));
+            grammar.put("C", Arrays.asList("( S )", "c"));
+            grammar.put("D", Arrays.asList("A C"));
         }
 
-        // Step 3: Construct Predictive Parsing Table
-        constructParsingTable();
+        boolean isLL1;
+        if (snapshotFile != null) {
+            // Warm start: the sets and table come from the snapshot; nothing is printed
+            // but the conflicts
+            long start = System.nanoTime();
+            GrammarSnapshot snapshot = grammarFile != null
+                    ? GrammarSnapshot.loadOrBuild(Paths.get(snapshotFile), Paths.get(grammarFile))
+                    : GrammarSnapshot.loadOrBuild(Paths.get(snapshotFile), grammar, startSymbol);
+            compiled = snapshot.grammar;
+            ll1Table = snapshot.table;
+            System.out.printf("Grammar analysis ready in %.3f ms%n", (System.nanoTime() - start) / 1e6);
+            for (int[] conflict : ll1Table.conflicts) {
+                System.out.println("Conflict detected for " + compiled.nonTerminals[conflict[0]] + ", "
+                        + compiled.terminals[conflict[1]] + " : " + compiled.prodText[conflict[2]]
+                        + " , " + compiled.prodText[conflict[3]]);
+            }
+            isLL1 = ll1Table.isLL1();
+            if (!isLL1) buildParsingTable(); // for the map-based driver
+        } else {
+            // Step 2: Compute First and Follow Sets
+            computeSets(startSymbol);
 
-        // Step 4: Check if the Grammar is LL(1)
-        boolean isLL1 = checkLL1Grammar();
+            // Step 3: Construct Predictive Parsing Table
+            constructParsingTable();
+            ll1Table = LL1Table.build(compiled);
+
+            // Step 4: Check if the Grammar is LL(1)
+            isLL1 = checkLL1Grammar();
+        }
         System.out.println("\nGrammar is " + (isLL1 ? "LL(1)" : "Not LL(1)"));
 
+        // Step 4b: Remove left recursion and left-factor, and use the rewritten grammar if
+        // that makes it LL(1)
+        if (!isLL1) {
+            if (snapshotFile != null) {
+                // A warm start reads neither the grammar file nor its start symbol
+                if (grammarFile != null) grammar = GrammarFile.read(Paths.get(grammarFile));
+                startSymbol = compiled.nonTerminals[compiled.start];
+            }
+            isLL1 = rewriteGrammar(startSymbol);
+        }
+
+        // Step 4c: Fall back to LALR(1) when the predictive table still has conflicts
+        if (!isLL1) {
+            lalrTable = LALRTable.build(compiled);
+            for (int[] conflict : lalrTable.conflicts) {
+                System.out.println("LALR conflict in state " + conflict[0] + " on " + compiled.terminals[conflict[1]]
+                        + " : " + lalrTable.describe(conflict[2]) + " over " + lalrTable.describe(conflict[3]));
+            }
+            System.out.println("Grammar is " + (lalrTable.isLALR1() ? "LALR(1)" : "Not LALR(1)") + ": "
+                    + lalrTable.stateCount + " states, " + lalrTable.packedSize() + " table entries");
+        }
+
+        // Batch mode: java PP --batch|--parallel <sentences file> [results file]
+        //             java PP --verify <sentences file>
+        // on the LL(1) table, or the LALR(1) one when that is what the grammar got
+        boolean batch = args.length >= 2 && (args[0].equals("--batch") || args[0].equals("--parallel")
+                || args[0].equals("--verify"));
+        if (batch && !isLL1 && !lalrTable.isLALR1()) {
+            System.err.println("Batch validation needs an LL(1) or LALR(1) grammar");
+            System.exit(2);
+        }
+        if (args.length >= 2 && (args[0].equals("--batch") || args[0].equals("--parallel"))) {
+            validateFile(Paths.get(args[1]), args.length > 2 ? Paths.get(args[2]) : null, args[0].equals("--parallel"));
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--verify")) {
+            verifyParallel(Paths.get(args[1]));
+            return;
+        }
+
         // Step 5: Validate an Input String
         Scanner scanner = new Scanner(System.in);
         System.out.print("\nEnter a string to validate: ");
         String input = scanner.nextLine();
-        boolean isValid = validateString(input);
+        boolean isValid;
+        if (isLL1 && printTree) {
+            ParseTree tree = new ParseTree(compiled);
+            isValid = new LL1Parser(ll1Table).parse(ll1Table.tokenize(input), tree);
+            if (isValid) tree.print(System.out);
+        } else if (isLL1) {
+            // Dense table and int stack; the map-based driver is kept for grammars with conflicts
+            isValid = new LL1Parser(ll1Table).accepts(ll1Table.tokenize(input));
+        } else if (lalrTable.isLALR1()) {
+            isValid = new LRParser(lalrTable).accepts(lalrTable.tokenize(input));
+        } else {
+            isValid = validateString(input);
+        }
         System.out.println(isValid ? "Valid string" : "Invalid string");
     }
 
-    // Compute First Set
-    private static Set<String> computeFirst(String symbol) {
-        if (firstSets.containsKey(symbol)) return firstSets.get(symbol);
-        Set<String> first = new HashSet<>();
+    // Remove "--name value" from the arguments and return the value, or null if absent
+    private static String option(List<String> arguments, String name) {
+        int i = arguments.indexOf(name);
+        if (i < 0) return null;
+        if (i + 1 == arguments.size()) throw new IllegalArgumentException(name + " needs a file");
+        arguments.remove(i);
+        return arguments.remove(i);
+    }
 
-        if (!grammar.containsKey(symbol)) {
-            first.add(symbol);
-            return first;
+    // Validate one sentence per line, writing 1/0 per line to the results file (or stdout)
+    static void validateFile(Path input, Path output, boolean parallel) throws IOException {
+        OutputStream results = output == null ? System.out : Files.newOutputStream(output);
+        BatchValidator.Stats stats;
+        try {
+            stats = parallel
+                    ? parallelValidator().validate(input, results)
+                    : batchValidator().validate(input, results);
+        } finally {
+            if (output != null) results.close();
         }
+        System.err.println(stats);
+    }
 
-        for (String production : grammar.get(symbol)) {
-            String[] tokens = production.split(" ");
-            for (String token : tokens) {
-                Set<String> tokenFirst = computeFirst(token);
-                first.addAll(tokenFirst);
-                first.remove("ε");
+    // Run the sequential and parallel validators on the same file and compare their output
+    static void verifyParallel(Path input) throws IOException {
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        BatchValidator.Stats one = batchValidator().validate(input, sequential);
+        BatchValidator.Stats many = parallelValidator().validate(input, parallel);
+        boolean same = Arrays.equals(sequential.toByteArray(), parallel.toByteArray());
+        System.out.println("sequential: " + one);
+        System.out.println("parallel:   " + many);
+        System.out.println(same ? "Results match" : "Results differ");
+    }
 
-                if (!tokenFirst.contains("ε")) break;
-            }
-            if (Arrays.stream(tokens).allMatch(t -> computeFirst(t).contains("ε"))) {
-                first.add("ε");
-            }
-        }
+    // Validators over the table the grammar is parsed with: LL(1) if it has no conflicts,
+    // otherwise the LALR(1) fallback
+    private static BatchValidator batchValidator() {
+        return lalrTable != null ? new BatchValidator(lalrTable) : new BatchValidator(ll1Table);
+    }
 
-        firstSets.put(symbol, first);
-        return first;
+    private static ParallelValidator parallelValidator() {
+        return lalrTable != null
+                ? new ParallelValidator(lalrTable, ForkJoinPool.commonPool())
+                : new ParallelValidator(ll1Table, ForkJoinPool.commonPool());
     }
 
-    // Compute Follow Set
-    private static Set<String> computeFollow(String symbol) {
-        if (followSets.containsKey(symbol)) return followSets.get(symbol);
-        Set<String> follow = new HashSet<>();
-
-        if (symbol.equals("S")) follow.add("$");
-
-        for (String lhs : grammar.keySet()) {
-            for (String production : grammar.get(lhs)) {
-                String[] tokens = production.split(" ");
-                for (int i = 0; i < tokens.length; i++) {
-                    if (tokens[i].equals(symbol)) {
-                        int nextIndex = i + 1;
-                        while (nextIndex < tokens.length) {
-                            Set<String> nextFirst = computeFirst(tokens[nextIndex]);
-                            follow.addAll(nextFirst);
-                            follow.remove("ε");
-                            if (!nextFirst.contains("ε")) break;
-                            nextIndex++;
-                        }
-                        if (nextIndex == tokens.length) {
-                            if (!lhs.equals(symbol)) follow.addAll(computeFollow(lhs));
-                        }
-                    }
-                }
-            }
+    // Compile the grammar to interned ints and publish its First and Follow sets
+    static void computeSets(String startSymbol) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        compiled = CompiledGrammar.compile(grammar, startSymbol);
+        for (int a = 0; a < compiled.numNonTerminals(); a++) {
+            firstSets.put(compiled.nonTerminals[a], compiled.firstSet(a));
+            followSets.put(compiled.nonTerminals[a], compiled.followSet(a));
         }
-
-        followSets.put(symbol, follow);
-        return follow;
+        if (Metrics.ENABLED) SETS_TIME.recordSince(start);
+        System.out.println(compiled.timings() + "\n");
     }
 
     // Construct Predictive Parsing Table
-    private static void constructParsingTable() {
-        for (String nonTerminal : grammar.keySet()) {
-            parsingTable.put(nonTerminal, new HashMap<>());
-
-            for (String production : grammar.get(nonTerminal)) {
-                Set<String> firstOfProduction = getFirstOfProduction(production);
-
-                for (String terminal : firstOfProduction) {
-                    if (!terminal.equals("ε")) {
-                        parsingTable.get(nonTerminal).computeIfAbsent(terminal, k -> new HashSet<>()).add(production);
-                    }
-                }
-
-                if (firstOfProduction.contains("ε")) {
-                    for (String terminal : followSets.get(nonTerminal)) {
-                        parsingTable.get(nonTerminal).computeIfAbsent(terminal, k -> new HashSet<>()).add(production);
-                    }
-                }
-            }
-        }
+    static void constructParsingTable() {
+        buildParsingTable();
 
         // Print the parsing table
         System.out.println("Predictive Parsing Table:");
@@ -129,20 +210,31 @@ public class PP {
         }
     }
 
-    // Get First Set of a production rule
-    private static Set<String> getFirstOfProduction(String production) {
-        Set<String> firstSet = new HashSet<>();
-        String[] tokens = production.split(" ");
-        for (String token : tokens) {
-            Set<String> tokenFirst = computeFirst(token);
-            firstSet.addAll(tokenFirst);
-            if (!tokenFirst.contains("ε")) break;
+    // Fill parsingTable from the compiled grammar, without printing it
+    static void buildParsingTable() {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        for (String nonTerminal : compiled.nonTerminals) {
+            parsingTable.put(nonTerminal, new HashMap<>());
         }
-        return firstSet;
+
+        // Select set of each production: FIRST of its body, plus FOLLOW of the head if the body is nullable
+        long[] select = new long[compiled.words];
+        for (int p = 0; p < compiled.numProductions(); p++) {
+            int a = compiled.prodLhs[p];
+            Arrays.fill(select, 0L);
+            if (compiled.firstOfProduction(p, select)) {
+                CompiledGrammar.orInto(select, compiled.follow[a]);
+            }
+            Map<String, Set<String>> row = parsingTable.get(compiled.nonTerminals[a]);
+            for (String terminal : compiled.toNames(select)) {
+                row.computeIfAbsent(terminal, k -> new HashSet<>()).add(compiled.prodText[p]);
+            }
+        }
+        if (Metrics.ENABLED) TABLE_TIME.recordSince(start);
     }
 
     // Check if Grammar is LL(1)
-    private static boolean checkLL1Grammar() {
+    static boolean checkLL1Grammar() {
         boolean isLL1 = true;
         for (String nonTerminal : parsingTable.keySet()) {
             for (String terminal : parsingTable.get(nonTerminal).keySet()) {
@@ -156,14 +248,60 @@ public class PP {
         return isLL1;
     }
 
+    // Rewrite the grammar towards LL(1) and report what changed; if the result is
+    // LL(1) it replaces the grammar, its sets and both tables
+    static boolean rewriteGrammar(String startSymbol) {
+        GrammarRewriter rewriter = GrammarRewriter.rewrite(grammar, startSymbol);
+        if (!rewriter.changed()) {
+            System.out.println("No left recursion or common prefixes to rewrite");
+            return false;
+        }
+        System.out.println("\nRewritten grammar:");
+        for (Map.Entry<String, List<String>> rule : rewriter.grammar().entrySet()) {
+            System.out.println(rule.getKey() + " -> " + String.join(" | ", rule.getValue()));
+        }
+        System.out.println();
+        rewriter.report(System.out);
+        if (!rewriter.table.isLL1()) return false;
+
+        grammar = rewriter.grammar();
+        compiled = rewriter.compiled;
+        ll1Table = rewriter.table;
+        firstSets.clear();
+        followSets.clear();
+        for (int a = 0; a < compiled.numNonTerminals(); a++) {
+            firstSets.put(compiled.nonTerminals[a], compiled.firstSet(a));
+            followSets.put(compiled.nonTerminals[a], compiled.followSet(a));
+        }
+        parsingTable.clear();
+        System.out.println();
+        constructParsingTable();
+        return true;
+    }
+
     // **Validate Input String using Predictive Parsing**
-    private static boolean validateString(String input) {
+    static boolean validateString(String input) {
+        if (!Metrics.ENABLED) return validateString(input, null);
+        long start = System.nanoTime();
+        int[] counts = new int[4]; // tokens, table lookups, expansions, deepest stack
+        boolean valid = validateString(input, counts);
+        TOKENS.add(counts[0]);
+        LOOKUPS.add(counts[1]);
+        EXPANSIONS.add(counts[2]);
+        STACK.update(counts[3]);
+        VALIDATE_TIME.recordSince(start);
+        return valid;
+    }
+
+    // counts is null unless metrics are on
+    private static boolean validateString(String input, int[] counts) {
         Stack<String> stack = new Stack<>();
         stack.push("$");
-        stack.push("S");
+        stack.push(compiled.nonTerminals[compiled.start]);
 
         String[] tokens = (input + " $").split(" ");
         int index = 0;
+        if (counts != null) counts[0] = tokens.length;
 
         while (!stack.isEmpty()) {
             String top = stack.pop();
@@ -181,7 +319,13 @@ public class PP {
                 for (int i = rule.length - 1; i >= 0; i--) {
                     if (!rule[i].equals("ε")) stack.push(rule[i]);
                 }
+                if (counts != null) {
+                    counts[1]++;
+                    counts[2]++;
+                    counts[3] = Math.max(counts[3], stack.size());
+                }
             } else {
+                if (counts != null) counts[1]++; // the failed lookup
                 return false; // Parsing error
             }
         }
@@ -0,0 +1,154 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+// Validates a one-sentence-per-line corpus on all cores. The file is cut into
+// chunks at line boundaries; each chunk is validated by a fork-join task with its
+// own BatchValidator (parse stack and token buffer), while the LL1Table or
+// LALRTable and the TerminalMatcher are immutable and shared. Chunk results are written in file order
+// as soon as the chunks before them are done, so the output is identical to
+// BatchValidator's.
+//
+// At most twice as many chunks as there are workers are in flight, and a chunk holds
+// at most maxChunk bytes plus the rest of its last line, so the results waiting to
+// be written stay bounded however long the corpus is. A chunk is mapped maxChunk
+// bytes at a time, which keeps a line longer than a mapping can be (2 GiB) valid.
+public class ParallelValidator {
+    private static final long MIN_CHUNK = 4 << 20;
+    private static final long MAX_CHUNK = 64 << 20;
+
+    private final Supplier<Recognizer> parsers; // a new parser over the shared table
+    private final BatchValidator.TerminalMatcher matcher;
+    private final ForkJoinPool pool;
+    private final long minChunk, maxChunk;
+
+    ParallelValidator(LL1Table table, ForkJoinPool pool) {
+        this(table, pool, MIN_CHUNK, MAX_CHUNK);
+    }
+
+    ParallelValidator(LALRTable table, ForkJoinPool pool) {
+        this(table, pool, MIN_CHUNK, MAX_CHUNK);
+    }
+
+    // Chunks of minChunk to maxChunk bytes before moving to the end of a line
+    ParallelValidator(LL1Table table, ForkJoinPool pool, long minChunk, long maxChunk) {
+        this(table.grammar, () -> new LL1Parser(table), pool, minChunk, maxChunk);
+    }
+
+    ParallelValidator(LALRTable table, ForkJoinPool pool, long minChunk, long maxChunk) {
+        this(table.grammar, () -> new LRParser(table), pool, minChunk, maxChunk);
+    }
+
+    private ParallelValidator(CompiledGrammar grammar, Supplier<Recognizer> parsers, ForkJoinPool pool,
+                              long minChunk, long maxChunk) {
+        if (minChunk <= 0 || maxChunk < minChunk || maxChunk > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad chunk sizes " + minChunk + ", " + maxChunk);
+        }
+        this.parsers = parsers;
+        this.matcher = new BatchValidator.TerminalMatcher(grammar);
+        this.pool = pool;
+        this.minChunk = minChunk;
+        this.maxChunk = maxChunk;
+    }
+
+    private static class Chunk {
+        final BatchValidator.Stats stats = new BatchValidator.Stats();
+        final ByteArrayOutputStream results = new ByteArrayOutputStream();
+    }
+
+    BatchValidator.Stats validate(Path input, OutputStream results) throws IOException {
+        long start = System.nanoTime();
+        BatchValidator.Stats total = new BatchValidator.Stats();
+
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel);
+            int window = pool.getParallelism() * 2;
+            ArrayDeque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+            OutputStream out = new BufferedOutputStream(results, 1 << 16);
+            int next = 0;
+            try {
+                while (next + 1 < bounds.length || !inFlight.isEmpty()) {
+                    while (inFlight.size() < window && next + 1 < bounds.length) {
+                        long from = bounds[next], to = bounds[next + 1];
+                        boolean last = next + 2 == bounds.length;
+                        inFlight.add(pool.submit(() -> validateChunk(channel, from, to, last)));
+                        next++;
+                    }
+                    Chunk chunk = join(inFlight.poll());
+                    chunk.results.writeTo(out);
+                    total.lines += chunk.stats.lines;
+                    total.tokens += chunk.stats.tokens;
+                    total.accepted += chunk.stats.accepted;
+                }
+                out.flush();
+            } finally {
+                for (ForkJoinTask<Chunk> task : inFlight) task.cancel(false);
+            }
+        }
+        total.nanos = System.nanoTime() - start;
+        return total;
+    }
+
+    private static Chunk join(ForkJoinTask<Chunk> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Chunk validateChunk(FileChannel channel, long from, long to, boolean last) {
+        Chunk chunk = new Chunk();
+        try {
+            BatchValidator validator = new BatchValidator(parsers.get(), matcher);
+            for (long position = from; position < to; position += maxChunk) {
+                long length = Math.min(maxChunk, to - position);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                validator.feed(region, chunk.stats, chunk.results);
+            }
+            if (last) validator.finish(chunk.stats, chunk.results);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return chunk;
+    }
+
+    // Offsets where chunks start, each just after a newline, plus the file size
+    private long[] chunkBounds(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int wanted = pool.getParallelism() * 4;
+        long chunkSize = Math.min(maxChunk, Math.max(minChunk, size / wanted + 1));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = chunkSize;
+        while (position < size) {
+            long boundary = -1;
+            while (boundary < 0 && position < size) {
+                probe.clear();
+                int read = channel.read(probe, position);
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        boundary = position + i + 1;
+                        break;
+                    }
+                }
+                position += Math.max(read, 0);
+            }
+            if (boundary < 0 || boundary >= size) break;
+            bounds.add(boundary);
+            position = boundary + chunkSize;
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) result[i] = bounds.get(i);
+        return result;
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+
+// A parse tree held in parallel int arrays rather than one object per node, so a tree
+// of millions of nodes is four ints a node and a few arrays for the GC to see. It is
+// filled by LL1Parser, which creates nodes in the order of a leftmost derivation,
+// i.e. preorder: the root is node 0, a node's first child is the node after it, and
+// its subtree ends at end(node), where its next sibling starts.
+//
+//   symbol   terminal id, or ~a for nonterminal a, as in CompiledGrammar
+//   value    production expanded at a nonterminal; token position at a terminal
+//   parent   parent node, -1 at the root
+//   end      one past the last node of the subtree, filled in on first use
+//
+// An ε production gives a nonterminal without children. The end marker gets no node.
+//
+//   ParseTree tree = new ParseTree(table.grammar);
+//   if (parser.parse(tokens, tree)) {
+//       ParseTree.Cursor cursor = tree.cursor();
+//       for (boolean more = cursor.firstChild(); more; more = cursor.nextSibling()) ...
+//   }
+//
+// Clearing a tree keeps its arrays, so one tree can be refilled sentence after sentence.
+public class ParseTree {
+    final CompiledGrammar grammar;
+    private int[] symbol, value, parent, end;
+    private int size;
+    private boolean sealed;
+
+    ParseTree(CompiledGrammar grammar) {
+        this(grammar, 64);
+    }
+
+    ParseTree(CompiledGrammar grammar, int capacity) {
+        this.grammar = grammar;
+        capacity = Math.max(capacity, 1);
+        symbol = new int[capacity];
+        value = new int[capacity];
+        parent = new int[capacity];
+        end = new int[capacity];
+    }
+
+    void clear() {
+        size = 0;
+        sealed = false;
+    }
+
+    // Append the next node in preorder and return its index
+    int add(int symbol, int value, int parent) {
+        if (size == this.symbol.length) grow();
+        this.symbol[size] = symbol;
+        this.value[size] = value;
+        this.parent[size] = parent;
+        sealed = false;
+        return size++;
+    }
+
+    int size() { return size; }
+    int symbol(int node) { return symbol[node]; }
+    int parent(int node) { return parent[node]; }
+    boolean isTerminal(int node) { return symbol[node] >= 0; }
+
+    // Production expanded at a nonterminal node, -1 at a terminal
+    int production(int node) {
+        return symbol[node] < 0 ? value[node] : -1;
+    }
+
+    // Position in the input of a terminal node, -1 at a nonterminal
+    int token(int node) {
+        return symbol[node] >= 0 ? value[node] : -1;
+    }
+
+    int end(int node) {
+        seal();
+        return end[node];
+    }
+
+    String name(int node) {
+        int s = symbol[node];
+        return s >= 0 ? grammar.terminals[s] : grammar.nonTerminals[~s];
+    }
+
+    // A cursor at the root; the tree must not be empty
+    Cursor cursor() {
+        if (size == 0) throw new IllegalStateException("Empty parse tree");
+        seal();
+        return new Cursor(this);
+    }
+
+    // Subtree ends in one backwards pass: children come after their parent, so each
+    // node's end is final before it is passed up
+    private void seal() {
+        if (sealed) return;
+        for (int i = 0; i < size; i++) end[i] = i + 1;
+        for (int i = size - 1; i > 0; i--) {
+            int p = parent[i];
+            if (end[i] > end[p]) end[p] = end[i];
+        }
+        sealed = true;
+    }
+
+    // One node per line, indented by depth: nonterminals with their production,
+    // terminals with their position in the input
+    void print(PrintStream out) {
+        seal();
+        int[] open = new int[16]; // ends of the subtrees around the current node
+        int depth = 0;
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            while (depth > 0 && open[depth - 1] <= i) depth--;
+            line.setLength(0);
+            for (int d = 0; d < depth; d++) line.append("  ");
+            if (symbol[i] < 0) {
+                line.append(name(i)).append(" -> ").append(grammar.prodText[value[i]]);
+            } else {
+                line.append(name(i)).append(" @").append(value[i]);
+            }
+            out.println(line);
+            if (end[i] > i + 1) {
+                if (depth == open.length) open = Arrays.copyOf(open, depth * 2);
+                open[depth++] = end[i];
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = symbol.length * 2;
+        symbol = Arrays.copyOf(symbol, capacity);
+        value = Arrays.copyOf(value, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        end = Arrays.copyOf(end, capacity);
+    }
+
+    // A position in a ParseTree that moves by index arithmetic, without allocating.
+    // Moves that have nowhere to go return false and leave the cursor where it was.
+    // A cursor is only valid until the tree is cleared or refilled.
+    static class Cursor {
+        private final ParseTree tree;
+        private int node;
+
+        Cursor(ParseTree tree) {
+            this.tree = tree;
+        }
+
+        int node() { return node; }
+        int symbol() { return tree.symbol[node]; }
+        boolean isTerminal() { return tree.symbol[node] >= 0; }
+        int production() { return tree.production(node); }
+        int token() { return tree.token(node); }
+        String name() { return tree.name(node); }
+
+        // Number of nodes in the subtree, this one included
+        int subtreeSize() {
+            return tree.end[node] - node;
+        }
+
+        boolean firstChild() {
+            if (tree.end[node] == node + 1) return false;
+            node++;
+            return true;
+        }
+
+        boolean nextSibling() {
+            int p = tree.parent[node];
+            int next = tree.end[node];
+            if (p < 0 || next >= tree.end[p]) return false;
+            node = next;
+            return true;
+        }
+
+        boolean parent() {
+            int p = tree.parent[node];
+            if (p < 0) return false;
+            node = p;
+            return true;
+        }
+
+        // The next node in preorder, descending first; false after the last node
+        boolean next() {
+            if (node + 1 >= tree.size) return false;
+            node++;
+            return true;
+        }
+
+        void moveTo(int node) {
+            if (node < 0 || node >= tree.size) throw new IndexOutOfBoundsException("Node " + node);
+            this.node = node;
+        }
+    }
+}
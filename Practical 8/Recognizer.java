@@ -0,0 +1,17 @@
+// A parser that is fed a sentence one terminal id at a time, as BatchValidator and
+// ParallelValidator do. LL1Parser and LRParser both are one, so the batch modes run
+// on whichever table the grammar got.
+//
+//   parser.reset();
+//   for (int token : tokens) parser.step(token);   // without the end marker
+//   boolean ok = parser.finish();
+public interface Recognizer {
+    // Start a new sentence
+    void reset();
+
+    // Consume one terminal; returns false once the sentence can no longer be accepted
+    boolean step(int token);
+
+    // Feed the end marker and report whether the sentence was accepted
+    boolean finish();
+}
@@ -0,0 +1,146 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+// ParallelValidator must write exactly what BatchValidator writes, for any way the
+// corpus is cut into chunks and mappings
+class ParallelValidatorTest {
+    private static final String[] WORDS = { "id", "id", "+", "*", "(", ")", "x" };
+
+    private static LL1Table table;
+    private static LALRTable lalrTable;
+    private static ForkJoinPool pool;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void buildTable() {
+        Map<String, List<String>> grammar = new LinkedHashMap<>();
+        grammar.put("E", Arrays.asList("T E'"));
+        grammar.put("E'", Arrays.asList("+ T E'", "ε"));
+        grammar.put("T", Arrays.asList("F T'"));
+        grammar.put("T'", Arrays.asList("* F T'", "ε"));
+        grammar.put("F", Arrays.asList("( E )", "id"));
+        table = LL1Table.build(CompiledGrammar.compile(grammar, "E"));
+        assertTrue(table.isLL1());
+
+        // The same language, left-recursive, so only an LALR(1) table parses it
+        Map<String, List<String>> leftRecursive = new LinkedHashMap<>();
+        leftRecursive.put("E", Arrays.asList("E + T", "T"));
+        leftRecursive.put("T", Arrays.asList("T * F", "F"));
+        leftRecursive.put("F", Arrays.asList("( E )", "id"));
+        lalrTable = LALRTable.build(CompiledGrammar.compile(leftRecursive, "E"));
+        assertTrue(lalrTable.isLALR1());
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void shutDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void randomCorpusInSmallChunks() throws IOException {
+        Path input = write(randomCorpus(new Random(313), 5000));
+        long[] accepted = assertSameResults(input, 64, 256);
+        assertTrue(accepted[0] > 0 && accepted[0] < 5000, "the corpus should mix valid and invalid lines");
+        assertSameResults(input, 1, 1);
+        assertSameResults(input, 4 << 20, 64 << 20);
+    }
+
+    @Test
+    void lalrTableMatchesLineByLineParsing() throws IOException {
+        String corpus = randomCorpus(new Random(8), 3000);
+        Path input = write(corpus);
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        BatchValidator.Stats one = new BatchValidator(lalrTable).validate(input, sequential);
+        BatchValidator.Stats many = new ParallelValidator(lalrTable, pool, 64, 256).validate(input, parallel);
+        assertEquals(sequential.toString(StandardCharsets.US_ASCII), parallel.toString(StandardCharsets.US_ASCII));
+        assertEquals(one.accepted, many.accepted);
+
+        // and with the LL(1) table, since both grammars describe the same language
+        ByteArrayOutputStream ll1 = new ByteArrayOutputStream();
+        new BatchValidator(table).validate(input, ll1);
+        assertEquals(ll1.toString(StandardCharsets.US_ASCII), sequential.toString(StandardCharsets.US_ASCII));
+
+        StringBuilder expected = new StringBuilder();
+        LRParser parser = new LRParser(lalrTable);
+        String[] lines = corpus.split("\n", -1); // the corpus ends with a newline
+        for (String line : Arrays.copyOf(lines, lines.length - 1)) {
+            expected.append(parser.accepts(lalrTable.tokenize(line.trim())) ? '1' : '0').append('\n');
+        }
+        assertEquals(expected.toString(), sequential.toString(StandardCharsets.US_ASCII));
+        assertTrue(one.accepted > 0 && one.accepted < one.lines);
+    }
+
+    @Test
+    void linesLongerThanAMapping() throws IOException {
+        StringBuilder corpus = new StringBuilder("id + id\n");
+        for (int i = 0; i < 200; i++) corpus.append("( ");
+        corpus.append("id");
+        for (int i = 0; i < 200; i++) corpus.append(" ) * id");
+        corpus.append("\n+\n( id * id )");
+        long[] accepted = assertSameResults(write(corpus.toString()), 16, 32);
+        assertEquals(3, accepted[0]);
+    }
+
+    @Test
+    void tokensLongerThanAnyTerminal() throws IOException {
+        // A token is kept only up to one byte past the longest terminal, so an endless
+        // one costs no memory and still matches nothing
+        String corpus = "id\nidd\n" + "id".repeat(100_000) + " + id\nid + id\n";
+        Path input = write(corpus);
+        ByteArrayOutputStream results = new ByteArrayOutputStream();
+        new BatchValidator(table).validate(input, results);
+        assertEquals("1\n0\n0\n1\n", results.toString(StandardCharsets.US_ASCII));
+        assertSameResults(input, 16, 32);
+    }
+
+    @Test
+    void emptyAndUnterminatedInput() throws IOException {
+        assertSameResults(write(""), 1, 1);
+        assertSameResults(write("id"), 1, 1);
+        assertSameResults(write("\n\n"), 1, 1);
+    }
+
+    // Lines of up to seven words, some with runs of blanks or a CRLF ending
+    private static String randomCorpus(Random random, int lines) {
+        StringBuilder corpus = new StringBuilder();
+        for (int line = 0; line < lines; line++) {
+            int words = random.nextInt(8);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) corpus.append(random.nextInt(10) == 0 ? "  \t" : " ");
+                corpus.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            corpus.append(random.nextInt(20) == 0 ? "\r\n" : "\n");
+        }
+        return corpus.toString();
+    }
+
+    // Compare the results and counts of both validators; returns the accepted count
+    private long[] assertSameResults(Path input, long minChunk, long maxChunk) throws IOException {
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        BatchValidator.Stats one = new BatchValidator(table).validate(input, sequential);
+        BatchValidator.Stats many = new ParallelValidator(table, pool, minChunk, maxChunk).validate(input, parallel);
+        assertEquals(sequential.toString(StandardCharsets.US_ASCII), parallel.toString(StandardCharsets.US_ASCII));
+        assertEquals(one.lines, many.lines);
+        assertEquals(one.tokens, many.tokens);
+        assertEquals(one.accepted, many.accepted);
+        return new long[] { one.accepted };
+    }
+
+    private Path write(String corpus) throws IOException {
+        Path file = Files.createTempFile(directory, "corpus", ".txt");
+        Files.write(file, corpus.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
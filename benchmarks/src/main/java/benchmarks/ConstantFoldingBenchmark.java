@@ -0,0 +1,52 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// ConstantFoldingOptimizer's front end: parsing alone, parsing plus foldConstants,
+// and the same formula served from a warm ExpressionCache
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConstantFoldingBenchmark {
+    private static final MethodHandle NEW_PARSER = Toolchain.constructor("ConstantFoldingOptimizer$Parser", String.class);
+    private static final MethodHandle PARSE = Toolchain.virtual("ConstantFoldingOptimizer$Parser", "parse",
+            Toolchain.type("ConstantFoldingOptimizer$ASTNode"));
+    private static final MethodHandle FOLD = Toolchain.method("ConstantFoldingOptimizer", "foldConstants",
+            Toolchain.type("ConstantFoldingOptimizer$ASTNode"), Toolchain.type("ConstantFoldingOptimizer$ASTNode"));
+    private static final MethodHandle NEW_CACHE = Toolchain.constructor("ExpressionCache", long.class);
+    private static final MethodHandle CACHE_GET = Toolchain.virtual("ExpressionCache", "get",
+            Toolchain.type("ExpressionCache$Entry"), String.class);
+
+    @Param({"16", "256", "4096"})
+    int operators;
+
+    private String expression;
+    private Object cache;
+
+    @Setup
+    public void setUp() throws Throwable {
+        expression = Inputs.formula(operators, 4, Inputs.SEED);
+        cache = (Object) NEW_CACHE.invokeExact(64L << 20);
+        cached();
+    }
+
+    @Benchmark
+    public Object parse() throws Throwable {
+        return (Object) PARSE.invokeExact((Object) NEW_PARSER.invokeExact(expression));
+    }
+
+    @Benchmark
+    public Object parseAndFold() throws Throwable {
+        return (Object) FOLD.invokeExact((Object) PARSE.invokeExact((Object) NEW_PARSER.invokeExact(expression)));
+    }
+
+    @Benchmark
+    public Object cached() throws Throwable {
+        return (Object) CACHE_GET.invokeExact(cache, expression);
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// BottomUpEvaluator: the legacy infix -> RPN token list and its evaluation, against
+// compile() straight to an opcode Program and Program.evaluate on a reused stack
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluatorBenchmark {
+    private static final MethodHandle INFIX_TO_RPN = Toolchain.method("BottomUpEvaluator", "infixToRPN",
+            List.class, String.class);
+    private static final MethodHandle EVALUATE_RPN = Toolchain.method("BottomUpEvaluator", "evaluateRPN",
+            double.class, List.class);
+    private static final MethodHandle COMPILE = Toolchain.method("BottomUpEvaluator", "compile",
+            Toolchain.type("BottomUpEvaluator$Program"), String.class);
+    private static final MethodHandle EVALUATE = Toolchain.virtual("BottomUpEvaluator$Program", "evaluate",
+            double.class, double[].class);
+    private static final MethodHandle MAX_STACK = Toolchain.getter("BottomUpEvaluator$Program", "maxStack", int.class);
+
+    @Param({"16", "256", "4096"})
+    int operators;
+
+    private String expression;
+    private List<String> rpn;
+    private Object program;
+    private double[] stack;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable {
+        expression = Inputs.formula(operators, 0, Inputs.SEED);
+        rpn = (List<String>) INFIX_TO_RPN.invokeExact(expression);
+        program = (Object) COMPILE.invokeExact(expression);
+        stack = new double[(int) MAX_STACK.invokeExact(program)];
+        if (Double.compare((double) EVALUATE_RPN.invokeExact((List) rpn), evaluateProgram()) != 0) {
+            throw new IllegalStateException("RPN and Program disagree");
+        }
+    }
+
+    @Benchmark
+    public List<?> infixToRpn() throws Throwable {
+        return (List) INFIX_TO_RPN.invokeExact(expression);
+    }
+
+    @Benchmark
+    public double evaluateRpn() throws Throwable {
+        return (double) EVALUATE_RPN.invokeExact((List) rpn);
+    }
+
+    @Benchmark
+    public Object compile() throws Throwable {
+        return (Object) COMPILE.invokeExact(expression);
+    }
+
+    @Benchmark
+    public double evaluateProgram() throws Throwable {
+        return (double) EVALUATE.invokeExact(program, stack);
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// FIRST/FOLLOW and parsing table construction on random grammars of growing size.
+// FirstFollow.computeSets and PP.computeSets are CompiledGrammar.compile plus
+// printing, so the set benchmark calls compile directly.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GrammarBenchmark {
+    private static final MethodHandle COMPILE = Toolchain.method("CompiledGrammar", "compile",
+            Toolchain.type("CompiledGrammar"), Map.class, String.class);
+    private static final MethodHandle BUILD_TABLE = Toolchain.method("LL1Table", "build",
+            Toolchain.type("LL1Table"), Toolchain.type("CompiledGrammar"));
+    private static final MethodHandle SET_COMPILED = Toolchain.staticSetter("PP", "compiled",
+            Toolchain.type("CompiledGrammar"));
+    private static final MethodHandle BUILD_PARSING_TABLE = Toolchain.method("PP", "buildParsingTable", void.class);
+
+    @Param({"16", "128", "1024"})
+    int nonTerminals;
+
+    private Map<String, List<String>> grammar;
+    private Object compiled;
+
+    @Setup
+    public void setUp() throws Throwable {
+        grammar = Inputs.grammar(nonTerminals, Inputs.SEED);
+        compiled = (Object) COMPILE.invokeExact((Map) grammar, "N0");
+        SET_COMPILED.invokeExact(compiled);
+    }
+
+    // Interning, nullable, FIRST and FOLLOW
+    @Benchmark
+    public Object firstFollow() throws Throwable {
+        return (Object) COMPILE.invokeExact((Map) grammar, "N0");
+    }
+
+    // Dense LL1Table from the compiled sets
+    @Benchmark
+    public Object ll1Table() throws Throwable {
+        return (Object) BUILD_TABLE.invokeExact(compiled);
+    }
+
+    // PP's map-of-maps parsing table from the compiled sets
+    @Benchmark
+    public void parsingTable() throws Throwable {
+        BUILD_PARSING_TABLE.invokeExact();
+    }
+}
@@ -0,0 +1,137 @@
+package benchmarks;
+
+import java.util.*;
+
+// Seeded synthetic inputs, so every run of a benchmark sees the same data
+final class Inputs {
+    static final long SEED = 42;
+
+    private Inputs() {
+    }
+
+    // Random grammar over N0 .. N(n-1), start symbol N0. Each nonterminal has one to
+    // three productions of up to four symbols, drawn from about n/2 terminals and
+    // nonterminals with a higher index (plus an occasional back edge, which gives
+    // the fixpoints something to iterate on); one production in eight is ε.
+    static Map<String, List<String>> grammar(int nonTerminals, long seed) {
+        Random random = new Random(seed);
+        int terminals = Math.max(2, nonTerminals / 2);
+        Map<String, List<String>> grammar = new LinkedHashMap<>();
+        for (int a = 0; a < nonTerminals; a++) {
+            List<String> productions = new ArrayList<>();
+            int count = 1 + random.nextInt(3);
+            for (int p = 0; p < count; p++) {
+                if (random.nextInt(8) == 0) {
+                    productions.add("ε");
+                    continue;
+                }
+                StringJoiner body = new StringJoiner(" ");
+                int length = 1 + random.nextInt(4);
+                for (int s = 0; s < length; s++) {
+                    if (random.nextBoolean() || a == nonTerminals - 1) {
+                        body.add("t" + random.nextInt(terminals));
+                    } else if (random.nextInt(10) == 0) {
+                        body.add("N" + random.nextInt(a + 1));
+                    } else {
+                        body.add("N" + (a + 1 + random.nextInt(nonTerminals - a - 1)));
+                    }
+                }
+                productions.add(body.toString());
+            }
+            grammar.put("N" + a, productions);
+        }
+        return grammar;
+    }
+
+    // The LL(1) expression grammar used by Practical 8's LL1Benchmark, start symbol E
+    static Map<String, List<String>> expressionGrammar() {
+        Map<String, List<String>> grammar = new LinkedHashMap<>();
+        grammar.put("E", Arrays.asList("T E'"));
+        grammar.put("E'", Arrays.asList("+ T E'", "ε"));
+        grammar.put("T", Arrays.asList("F T'"));
+        grammar.put("T'", Arrays.asList("* F T'", "ε"));
+        grammar.put("F", Arrays.asList("( E )", "id"));
+        return grammar;
+    }
+
+    // The same language with left recursion, the natural form for an LALR(1) parser
+    static Map<String, List<String>> leftRecursiveExpressionGrammar() {
+        Map<String, List<String>> grammar = new LinkedHashMap<>();
+        grammar.put("E", Arrays.asList("E + T", "T"));
+        grammar.put("T", Arrays.asList("T * F", "F"));
+        grammar.put("F", Arrays.asList("( E )", "id"));
+        return grammar;
+    }
+
+    // A valid sentence of expressionGrammar() of roughly the given number of tokens
+    static String expressionSentence(int tokens, long seed) {
+        StringBuilder sb = new StringBuilder();
+        sentence(sb, new Random(seed), tokens, 0);
+        return sb.toString().trim();
+    }
+
+    private static void sentence(StringBuilder sb, Random random, int budget, int depth) {
+        int used = 1;
+        sentenceTerm(sb, random, depth);
+        while (used < budget) {
+            sb.append(random.nextBoolean() ? " +" : " *");
+            used += 1 + sentenceTerm(sb, random, depth);
+        }
+    }
+
+    private static int sentenceTerm(StringBuilder sb, Random random, int depth) {
+        if (depth < 8 && random.nextInt(8) == 0) {
+            int inner = 1 + random.nextInt(6);
+            sb.append(" (");
+            sentence(sb, random, inner, depth + 1);
+            sb.append(" )");
+            return inner + 2;
+        }
+        sb.append(" id");
+        return 1;
+    }
+
+    // A valid input for RecursiveDescentParser with the given number of a's
+    static String list(int elements, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(elements * 3).append('(');
+        int open = 1;
+        for (int k = 0; k < elements; k++) {
+            if (k > 0) sb.append(',');
+            while (random.nextInt(4) == 0) {
+                sb.append('(');
+                open++;
+            }
+            sb.append('a');
+            while (open > 1 && random.nextInt(3) == 0) {
+                sb.append(')');
+                open--;
+            }
+        }
+        while (open-- > 0) sb.append(')');
+        return sb.toString();
+    }
+
+    // Fully parenthesised formula with the given number of + - * / operators. Leaves
+    // are constants 1 .. 9 and, if variables > 0, names x0 .. x(variables - 1); about a
+    // third of the leaves are constants so constant folding has work to do.
+    static String formula(int operators, int variables, long seed) {
+        StringBuilder sb = new StringBuilder(operators * 8);
+        formula(sb, new Random(seed), operators, variables);
+        return sb.toString();
+    }
+
+    private static void formula(StringBuilder sb, Random random, int operators, int variables) {
+        if (operators == 0) {
+            if (variables == 0 || random.nextInt(3) == 0) sb.append(1 + random.nextInt(9));
+            else sb.append('x').append(random.nextInt(variables));
+            return;
+        }
+        int left = random.nextInt(operators);
+        sb.append('(');
+        formula(sb, random, left, variables);
+        sb.append(' ').append("+-*/".charAt(random.nextInt(4))).append(' ');
+        formula(sb, random, operators - 1 - left, variables);
+        sb.append(')');
+    }
+}
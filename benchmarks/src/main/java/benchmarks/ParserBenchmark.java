@@ -0,0 +1,111 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Throughput of the parsers on one valid input of the given number of tokens:
+// PP.validateString and LL1Parser (with and without a ParseTree) on the expression
+// grammar, LRParser on its left-recursive form, and RecursiveDescentParser on a
+// nested list with that many elements.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    private static final MethodHandle GRAMMAR = Toolchain.staticGetter("PP", "grammar", Map.class);
+    private static final MethodHandle COMPUTE_SETS = Toolchain.method("PP", "computeSets", void.class, String.class);
+    private static final MethodHandle BUILD_PARSING_TABLE = Toolchain.method("PP", "buildParsingTable", void.class);
+    private static final MethodHandle COMPILED = Toolchain.staticGetter("PP", "compiled", Toolchain.type("CompiledGrammar"));
+    private static final MethodHandle VALIDATE_STRING = Toolchain.method("PP", "validateString", boolean.class, String.class);
+    private static final MethodHandle BUILD_TABLE = Toolchain.method("LL1Table", "build",
+            Toolchain.type("LL1Table"), Toolchain.type("CompiledGrammar"));
+    private static final MethodHandle TOKENIZE = Toolchain.virtual("LL1Table", "tokenize", int[].class, String.class);
+    private static final MethodHandle NEW_PARSER = Toolchain.constructor("LL1Parser", Toolchain.type("LL1Table"));
+    private static final MethodHandle ACCEPTS = Toolchain.virtual("LL1Parser", "accepts", boolean.class, int[].class);
+    private static final MethodHandle NEW_TREE = Toolchain.constructor("ParseTree", Toolchain.type("CompiledGrammar"));
+    private static final MethodHandle PARSE = Toolchain.virtual("LL1Parser", "parse", boolean.class, int[].class,
+            Toolchain.type("ParseTree"));
+    private static final MethodHandle COMPILE = Toolchain.method("CompiledGrammar", "compile",
+            Toolchain.type("CompiledGrammar"), Map.class, String.class);
+    private static final MethodHandle BUILD_LALR = Toolchain.method("LALRTable", "build",
+            Toolchain.type("LALRTable"), Toolchain.type("CompiledGrammar"));
+    private static final MethodHandle LALR_TOKENIZE = Toolchain.virtual("LALRTable", "tokenize", int[].class, String.class);
+    private static final MethodHandle NEW_LR_PARSER = Toolchain.constructor("LRParser", Toolchain.type("LALRTable"));
+    private static final MethodHandle LR_ACCEPTS = Toolchain.virtual("LRParser", "accepts", boolean.class, int[].class);
+    private static final MethodHandle RECURSIVE_DESCENT = Toolchain.method("RecursiveDescentParser", "accepts",
+            boolean.class, CharSequence.class);
+
+    @Param({"64", "1024", "16384"})
+    int tokens;
+
+    private String sentence;
+    private String list;
+    private Object table;
+    private int[] tokenIds;
+    private Object parser;
+    private Object tree;
+    private int[] lrTokenIds;
+    private Object lrParser;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable {
+        Map<String, List<String>> grammar = (Map<String, List<String>>) GRAMMAR.invokeExact();
+        grammar.clear();
+        grammar.putAll(Inputs.expressionGrammar());
+        COMPUTE_SETS.invokeExact("E");
+        BUILD_PARSING_TABLE.invokeExact();
+        table = (Object) BUILD_TABLE.invokeExact((Object) COMPILED.invokeExact());
+        parser = (Object) NEW_PARSER.invokeExact(table);
+        tree = (Object) NEW_TREE.invokeExact((Object) COMPILED.invokeExact());
+
+        sentence = Inputs.expressionSentence(tokens, Inputs.SEED);
+        tokenIds = (int[]) TOKENIZE.invokeExact(table, sentence);
+        Object lalr = (Object) BUILD_LALR.invokeExact((Object) COMPILE.invokeExact(
+                Inputs.leftRecursiveExpressionGrammar(), "E"));
+        lrParser = (Object) NEW_LR_PARSER.invokeExact(lalr);
+        lrTokenIds = (int[]) LALR_TOKENIZE.invokeExact(lalr, sentence);
+        list = Inputs.list(tokens, Inputs.SEED);
+        if (!validateString() || !ll1Parser() || !ll1ParseTree() || !lrParser() || !recursiveDescent()) {
+            throw new IllegalStateException("Benchmark inputs must be valid");
+        }
+    }
+
+    @Benchmark
+    public boolean validateString() throws Throwable {
+        return (boolean) VALIDATE_STRING.invokeExact(sentence);
+    }
+
+    // Pre-tokenised input, reused parser
+    @Benchmark
+    public boolean ll1Parser() throws Throwable {
+        return (boolean) ACCEPTS.invokeExact(parser, tokenIds);
+    }
+
+    // Pre-tokenised input, reused parser, building the parse tree into a reused arena
+    @Benchmark
+    public boolean ll1ParseTree() throws Throwable {
+        return (boolean) PARSE.invokeExact(parser, tokenIds, tree);
+    }
+
+    // Including LL1Table.tokenize, comparable to validateString's split
+    @Benchmark
+    public boolean ll1TokenizeAndParse() throws Throwable {
+        return (boolean) ACCEPTS.invokeExact(parser, (int[]) TOKENIZE.invokeExact(table, sentence));
+    }
+
+    // Pre-tokenised input, reused parser
+    @Benchmark
+    public boolean lrParser() throws Throwable {
+        return (boolean) LR_ACCEPTS.invokeExact(lrParser, lrTokenIds);
+    }
+
+    @Benchmark
+    public boolean recursiveDescent() throws Throwable {
+        return (boolean) RECURSIVE_DESCENT.invokeExact((CharSequence) list);
+    }
+}
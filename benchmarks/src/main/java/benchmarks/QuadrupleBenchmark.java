@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// QuadrupleGenerator emission, QuadrupleOptimizer, and running the packed
+// QuadrupleProgram over a reused register file
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuadrupleBenchmark {
+    private static final MethodHandle NEW_PARSER = Toolchain.constructor("QuadrupleGenerator$Parser", String.class);
+    private static final MethodHandle PARSE = Toolchain.virtual("QuadrupleGenerator$Parser", "parse", String.class);
+    private static final MethodHandle QUADRUPLES = Toolchain.virtual("QuadrupleGenerator$Parser", "quadruples", List.class);
+    private static final MethodHandle OPTIMIZE = Toolchain.method("QuadrupleOptimizer", "optimize",
+            Toolchain.type("QuadrupleOptimizer$Result"), List.class, String.class);
+    private static final MethodHandle ENCODE = Toolchain.method("QuadrupleProgram", "encode",
+            Toolchain.type("QuadrupleProgram"), List.class, String.class);
+    private static final MethodHandle NEW_REGISTERS = Toolchain.virtual("QuadrupleProgram", "newRegisters", double[].class);
+    private static final MethodHandle RUN = Toolchain.virtual("QuadrupleProgram", "run",
+            double.class, double[].class, double[].class);
+    private static final MethodHandle INPUTS = Toolchain.getter("QuadrupleProgram", "inputs", String[].class);
+
+    @Param({"16", "256", "4096"})
+    int operators;
+
+    private String expression;
+    private List<?> quadruples;
+    private String value;
+    private Object program;
+    private double[] inputs, registers;
+
+    @Setup
+    public void setUp() throws Throwable {
+        expression = Inputs.formula(operators, 4, Inputs.SEED);
+        Object parser = (Object) NEW_PARSER.invokeExact(expression);
+        value = (String) PARSE.invokeExact(parser);
+        quadruples = (List) QUADRUPLES.invokeExact(parser);
+        program = (Object) ENCODE.invokeExact((List) quadruples, value);
+        registers = (double[]) NEW_REGISTERS.invokeExact(program);
+        inputs = new double[((String[]) INPUTS.invokeExact(program)).length];
+        Arrays.setAll(inputs, i -> 1.5 + i);
+    }
+
+    @Benchmark
+    public String emit() throws Throwable {
+        return (String) PARSE.invokeExact((Object) NEW_PARSER.invokeExact(expression));
+    }
+
+    @Benchmark
+    public Object optimize() throws Throwable {
+        return (Object) OPTIMIZE.invokeExact((List) quadruples, value);
+    }
+
+    @Benchmark
+    public double run() throws Throwable {
+        return (double) RUN.invokeExact(program, inputs, registers);
+    }
+}
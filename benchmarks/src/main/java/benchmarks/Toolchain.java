@@ -0,0 +1,113 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// The practicals live in the default package, which a named package cannot import,
+// and most of their members are package-private. Benchmarks reach them through
+// method handles from a private lookup instead; everything is in the unnamed module,
+// so privateLookupIn grants full access.
+//
+// Types from the default package are erased to Object in the handle types, so call
+// sites can use invokeExact with plain casts:
+//
+//   static final MethodHandle ACCEPTS = Toolchain.method("RecursiveDescentParser", "accepts", boolean.class, CharSequence.class);
+//   boolean ok = (boolean) ACCEPTS.invokeExact((CharSequence) input);
+//
+// Handles held in static final fields are constants to the JIT, so the call costs
+// the same as a direct one.
+final class Toolchain {
+
+    private Toolchain() {
+    }
+
+    // A class of the practicals by its binary name, e.g. "BottomUpEvaluator$Program"
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name, true, Toolchain.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Practical class not on the classpath: " + name, e);
+        }
+    }
+
+    static MethodHandle method(String owner, String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            Class<?> type = type(owner);
+            return erase(lookup(type).findStatic(type, name, MethodType.methodType(returnType, parameterTypes)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No static method " + owner + "." + name, e);
+        }
+    }
+
+    // The receiver becomes the first parameter
+    static MethodHandle virtual(String owner, String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            Class<?> type = type(owner);
+            return erase(lookup(type).findVirtual(type, name, MethodType.methodType(returnType, parameterTypes)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No method " + owner + "." + name, e);
+        }
+    }
+
+    static MethodHandle constructor(String owner, Class<?>... parameterTypes) {
+        try {
+            Class<?> type = type(owner);
+            return erase(lookup(type).findConstructor(type, MethodType.methodType(void.class, parameterTypes)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No constructor for " + owner, e);
+        }
+    }
+
+    static MethodHandle getter(String owner, String name, Class<?> fieldType) {
+        try {
+            Class<?> type = type(owner);
+            return erase(lookup(type).findGetter(type, name, fieldType));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No field " + owner + "." + name, e);
+        }
+    }
+
+    static MethodHandle staticSetter(String owner, String name, Class<?> fieldType) {
+        try {
+            Class<?> type = type(owner);
+            return erase(lookup(type).findStaticSetter(type, name, fieldType));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No static field " + owner + "." + name, e);
+        }
+    }
+
+    static MethodHandle staticGetter(String owner, String name, Class<?> fieldType) {
+        try {
+            Class<?> type = type(owner);
+            return erase(lookup(type).findStaticGetter(type, name, fieldType));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No static field " + owner + "." + name, e);
+        }
+    }
+
+    // Wrap a checked Throwable from invokeExact for use in setup code
+    static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException runtime) return runtime;
+        if (t instanceof Error error) throw error;
+        return new IllegalStateException(t);
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> type) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+    }
+
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (inDefaultPackage(type.parameterType(i))) type = type.changeParameterType(i, Object.class);
+        }
+        if (inDefaultPackage(type.returnType())) type = type.changeReturnType(Object.class);
+        return handle.asType(type);
+    }
+
+    private static boolean inDefaultPackage(Class<?> type) {
+        while (type.isArray()) type = type.getComponentType();
+        return !type.isPrimitive() && type.getPackageName().isEmpty();
+    }
+}
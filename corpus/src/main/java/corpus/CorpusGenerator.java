@@ -0,0 +1,176 @@
+package corpus;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Seeded corpus generator for load-testing the practicals. The same arguments always
+// produce the same bytes.
+//
+//   java -jar corpus/target/corpus.jar <kind> <out|-> [options]
+//
+//   grammar       --nonterminals N [--conflicts]
+//   sentences     --nonterminals N [--conflicts] | --grammar <file>;  --tokens T  --invalid F
+//   lists         --elements E  --depth D  --branch P  --invalid F
+//   expressions   --depth D  --width W  --branch P  --variables V  --operators "+-*/"
+//
+// Common: --seed S (default 1), --count N lines (default 1), --bytes B (stop once B
+// bytes are written, for GB-scale files: --count 0 --bytes 2g). Sizes accept k, m, g.
+// With --nonterminals, sentences derive from the grammar the same seed and size would
+// write, so a grammar and its sentences can be generated by two separate runs.
+//
+// Output is streamed through a 64 KiB buffer; nothing is held per line beyond the
+// current sentence.
+public class CorpusGenerator {
+
+    private static final String USAGE = "Usage: CorpusGenerator grammar|sentences|lists|expressions <out|-> [options]";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            generate(args);
+        } catch (IllegalArgumentException e) {
+            // Bad or missing option values, which includes NumberFormatException
+            System.err.println("CorpusGenerator: " + e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+    }
+
+    private static void generate(String[] args) throws IOException {
+        String kind = args[0];
+        Map<String, String> options = options(args);
+        long seed = size(options.getOrDefault("seed", "1"));
+        long count = size(options.getOrDefault("count", options.containsKey("bytes") ? "0" : "1"));
+        long bytes = size(options.getOrDefault("bytes", "0"));
+        if (count <= 0) count = Long.MAX_VALUE;
+        if (bytes <= 0) bytes = Long.MAX_VALUE;
+
+        long start = System.nanoTime();
+        CountingWriter out = open(args[1]);
+        try (out) {
+            switch (kind) {
+                case "grammar":
+                    GrammarGenerator.write(grammar(options, seed), out);
+                    break;
+                case "sentences": {
+                    Map<String, List<String>> grammar = grammar(options, seed);
+                    SentenceGenerator sentences = new SentenceGenerator(grammar, grammar.keySet().iterator().next(), seed + 1);
+                    int tokens = (int) size(options.getOrDefault("tokens", "100"));
+                    double invalid = Double.parseDouble(options.getOrDefault("invalid", "0"));
+                    for (long n = 0; n < count && out.count < bytes; n++) sentences.write(out, 1, tokens, invalid);
+                    break;
+                }
+                case "lists": {
+                    ListGenerator lists = new ListGenerator(seed);
+                    long elements = size(options.getOrDefault("elements", "100"));
+                    int depth = (int) size(options.getOrDefault("depth", "8"));
+                    double branch = Double.parseDouble(options.getOrDefault("branch", "0.1"));
+                    double invalid = Double.parseDouble(options.getOrDefault("invalid", "0"));
+                    for (long n = 0; n < count && out.count < bytes; n++) lists.write(out, 1, elements, depth, branch, invalid);
+                    break;
+                }
+                case "expressions": {
+                    ExpressionGenerator expressions = new ExpressionGenerator(seed);
+                    int depth = (int) size(options.getOrDefault("depth", "4"));
+                    int width = (int) size(options.getOrDefault("width", "3"));
+                    double branch = Double.parseDouble(options.getOrDefault("branch", "0"));
+                    int variables = (int) size(options.getOrDefault("variables", "0"));
+                    String operators = options.getOrDefault("operators", "+-*/");
+                    for (long n = 0; n < count && out.count < bytes; n++) {
+                        expressions.write(out, 1, depth, width, branch, variables, operators);
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown kind: " + kind);
+            }
+        }
+        System.err.printf("%s: %,d bytes in %.2f s%n", kind, out.count, (System.nanoTime() - start) / 1e9);
+    }
+
+    private static Map<String, List<String>> grammar(Map<String, String> options, long seed) throws IOException {
+        String file = options.get("grammar");
+        if (file != null) {
+            try (BufferedReader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+                return GrammarGenerator.read(in);
+            }
+        }
+        GrammarGenerator generator = new GrammarGenerator(seed);
+        int nonTerminals = (int) size(options.getOrDefault("nonterminals", "10"));
+        return options.containsKey("conflicts") ? generator.nonLL1(nonTerminals) : generator.ll1(nonTerminals);
+    }
+
+    // --name value pairs after the kind and output; --conflicts is the only bare flag and
+    // maps to ""
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 2; i < args.length; i++) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Expected an option: " + args[i]);
+            String name = args[i].substring(2);
+            boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+            if (!hasValue && !name.equals("conflicts")) throw new IllegalArgumentException("--" + name + " needs a value");
+            options.put(name, hasValue ? args[++i] : "");
+        }
+        return options;
+    }
+
+    // 100, 64k, 10m, 2g
+    static long size(String value) {
+        char suffix = Character.toLowerCase(value.charAt(value.length() - 1));
+        int shift = suffix == 'k' ? 10 : suffix == 'm' ? 20 : suffix == 'g' ? 30 : 0;
+        String digits = shift == 0 ? value : value.substring(0, value.length() - 1);
+        return Long.parseLong(digits) << shift;
+    }
+
+    private static CountingWriter open(String path) throws IOException {
+        OutputStream stream = path.equals("-") ? new FileOutputStream(FileDescriptor.out) : Files.newOutputStream(Paths.get(path));
+        return new CountingWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+    }
+
+    // Unsynchronised char buffer in front of the encoder, since the generators write
+    // one char at a time. Counts chars, which equals bytes for everything but ε.
+    private static final class CountingWriter extends Writer {
+        private final Writer out;
+        private final char[] buffer = new char[1 << 16];
+        private int size;
+        long count;
+
+        CountingWriter(Writer out) {
+            this.out = out;
+        }
+
+        public void write(int c) throws IOException {
+            if (size == buffer.length) drain();
+            buffer[size++] = (char) c;
+            count++;
+        }
+
+        public void write(char[] chars, int offset, int length) throws IOException {
+            for (int i = 0; i < length; i++) write(chars[offset + i]);
+        }
+
+        public void write(String s, int offset, int length) throws IOException {
+            for (int i = 0; i < length; i++) write(s.charAt(offset + i));
+        }
+
+        private void drain() throws IOException {
+            out.write(buffer, 0, size);
+            size = 0;
+        }
+
+        public void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        public void close() throws IOException {
+            drain();
+            out.close();
+        }
+    }
+}
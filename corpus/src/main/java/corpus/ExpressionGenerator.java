@@ -0,0 +1,66 @@
+package corpus;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+// Arithmetic expressions of controlled depth and width, one per line, e.g.
+// with depth 2 and width 3:   (7 * (x0 - 3 + 2) / x1) + 5 - x2
+//
+// Every parenthesised group, and the top level, holds `width` operands. The first
+// operand of each group opens a new group until `depth` groups are nested, so the
+// stated depth is always reached; any other operand opens one with probability
+// `branch`. Operators are drawn from `operators` (any of + - * / ^), leaves are the
+// integers 1 .. 9 or, with variables > 0, names x0 .. x(variables - 1).
+//
+// Generation runs on an explicit stack, so depth is limited by memory only.
+public final class ExpressionGenerator {
+    private final Random random;
+
+    public ExpressionGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public void write(Writer out, long count, int depth, int width, double branch, int variables, String operators)
+            throws IOException {
+        if (width < 1) throw new IllegalArgumentException("width must be positive: " + width);
+        if (operators.isEmpty() || operators.chars().anyMatch(c -> "+-*/^".indexOf(c) < 0)) {
+            throw new IllegalArgumentException("operators must be drawn from +-*/^: " + operators);
+        }
+        int[] remaining = new int[depth + 1]; // operands still to write in each open group
+        for (long line = 0; line < count; line++) {
+            int level = 0;
+            remaining[0] = width;
+            boolean first = true;
+            while (true) {
+                if (remaining[level] == 0) {
+                    if (level == 0) break;
+                    out.write(')');
+                    level--;
+                    first = false;
+                    continue;
+                }
+                if (!first) {
+                    out.write(' ');
+                    out.write(operators.charAt(random.nextInt(operators.length())));
+                    out.write(' ');
+                }
+                remaining[level]--;
+                if (level < depth && (first || random.nextDouble() < branch)) {
+                    out.write('(');
+                    remaining[++level] = width;
+                    first = true;
+                    continue;
+                }
+                first = false;
+                if (variables == 0 || random.nextInt(3) == 0) {
+                    out.write('1' + random.nextInt(9));
+                } else {
+                    out.write('x');
+                    out.write(Integer.toString(random.nextInt(variables)));
+                }
+            }
+            out.write('\n');
+        }
+    }
+}
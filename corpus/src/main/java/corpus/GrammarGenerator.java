@@ -0,0 +1,119 @@
+package corpus;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+// Random context-free grammars over nonterminals N0 .. N(n-1), start symbol N0, in the
+// representation PP and FirstFollow use: head -> alternatives, each alternative a
+// space-separated string of symbols, "ε" for the empty one.
+//
+// LL(1) grammars are built so that no lookahead can be ambiguous:
+//   - every non-ε alternative of Ni starts with its own terminal, ai_k, used nowhere else
+//   - the rest of a body mixes shared terminals t0 .. tm with nonterminals Nj, j > i,
+//     each at most once per body, and may end in Ni itself (tail recursion)
+//   - a nonterminal with an ε alternative is always followed by its own end marker ej
+//     when it appears in another body
+// So FIRST sets of alternatives are distinct singletons, and FOLLOW(Nj) of a nullable
+// Nj is {ej} plus FOLLOW of itself, which keeps the ε alternative conflict-free.
+//
+// Non-LL(1) grammars start from an LL(1) one and then break about a quarter of the
+// nonterminals, alternating between
+//   - a common prefix:   Ni -> ai_0 ... | ai_0 tk        (needs left factoring)
+//   - left recursion:    Ni -> Ni tk                     (needs left-recursion removal)
+public final class GrammarGenerator {
+    public static final String EPSILON = "ε";
+
+    private final Random random;
+
+    public GrammarGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public Map<String, List<String>> ll1(int nonTerminals) {
+        if (nonTerminals < 1) throw new IllegalArgumentException("nonTerminals must be positive: " + nonTerminals);
+        int shared = Math.max(2, nonTerminals / 2);
+        List<List<String>> rules = new ArrayList<>(Collections.nCopies(nonTerminals, null));
+        boolean[] nullable = new boolean[nonTerminals];
+        // Last to first, so whether a referenced nonterminal is nullable is already known
+        for (int i = nonTerminals - 1; i >= 0; i--) {
+            List<String> alternatives = new ArrayList<>();
+            int count = 1 + random.nextInt(3);
+            for (int k = 0; k < count; k++) {
+                StringJoiner body = new StringJoiner(" ");
+                body.add("a" + i + "_" + k);
+                int tail = random.nextInt(4);
+                BitSet used = new BitSet();
+                for (int s = 0; s < tail; s++) {
+                    if (i == nonTerminals - 1 || random.nextBoolean()) {
+                        body.add("t" + random.nextInt(shared));
+                    } else {
+                        int j = i + 1 + random.nextInt(nonTerminals - i - 1);
+                        if (!used.get(j)) {
+                            used.set(j);
+                            body.add("N" + j);
+                            if (nullable[j]) body.add("e" + j);
+                        }
+                    }
+                }
+                // Alternative 0 never recurses, so every nonterminal can finish
+                if (k > 0 && random.nextInt(3) == 0) body.add("N" + i);
+                alternatives.add(body.toString());
+            }
+            if (random.nextInt(4) == 0) {
+                alternatives.add(EPSILON);
+                nullable[i] = true;
+            }
+            rules.set(i, alternatives);
+        }
+        Map<String, List<String>> grammar = new LinkedHashMap<>();
+        for (int i = 0; i < nonTerminals; i++) grammar.put("N" + i, rules.get(i));
+        return grammar;
+    }
+
+    public Map<String, List<String>> nonLL1(int nonTerminals) {
+        Map<String, List<String>> grammar = ll1(nonTerminals);
+        int shared = Math.max(2, nonTerminals / 2);
+        int broken = 0;
+        for (int i = 0; i < nonTerminals; i++) {
+            if (i > 0 && random.nextInt(4) != 0) continue;
+            List<String> alternatives = grammar.get("N" + i);
+            String terminal = "t" + random.nextInt(shared);
+            if (broken++ % 2 == 0) {
+                alternatives.add("a" + i + "_0 " + terminal);
+            } else {
+                alternatives.add("N" + i + " " + terminal);
+            }
+        }
+        return grammar;
+    }
+
+    // One rule per line, "N0 -> a0_0 t1 N3 | ε", the start symbol first
+    public static void write(Map<String, List<String>> grammar, Writer out) throws IOException {
+        for (Map.Entry<String, List<String>> rule : grammar.entrySet()) {
+            out.write(rule.getKey());
+            out.write(" -> ");
+            out.write(String.join(" | ", rule.getValue()));
+            out.write('\n');
+        }
+    }
+
+    // Inverse of write; blank lines and lines starting with # are skipped, and a head
+    // that appears twice gets the alternatives of both lines
+    public static Map<String, List<String>> read(BufferedReader in) throws IOException {
+        Map<String, List<String>> grammar = new LinkedHashMap<>();
+        String line;
+        for (int number = 1; (line = in.readLine()) != null; number++) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int arrow = line.indexOf("->");
+            if (arrow <= 0) throw new IOException("Line " + number + ": expected 'A -> ...': " + line);
+            List<String> alternatives = grammar.computeIfAbsent(line.substring(0, arrow).trim(), k -> new ArrayList<>());
+            for (String alternative : line.substring(arrow + 2).split("\\|")) {
+                alternatives.add(alternative.trim().isEmpty() ? EPSILON : alternative.trim().replaceAll("\\s+", " "));
+            }
+        }
+        return grammar;
+    }
+}
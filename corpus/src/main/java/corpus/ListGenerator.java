@@ -0,0 +1,53 @@
+package corpus;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+// Inputs for RecursiveDescentParser, S -> ( L ) | a, L -> S L', L' -> , S L' | ε:
+// one list per line, e.g. (a,(a,(a,a)),a)
+//
+// Each line holds exactly `elements` a's inside an outer list. Nesting follows a
+// spine: the first element of every list opens a sublist until maxDepth lists are
+// open, so the deepest point is always reached; after that a new sublist opens with
+// probability `branch` at each element. Written one char at a time, so a single
+// line can be far larger than the heap.
+public final class ListGenerator {
+    private final Random random;
+
+    public ListGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public void write(Writer out, long count, long elements, int maxDepth, double branch, double invalidFraction)
+            throws IOException {
+        for (long line = 0; line < count; line++) {
+            boolean invalid = random.nextDouble() < invalidFraction;
+            long breakAt = invalid ? (long) (random.nextDouble() * elements) : -1;
+            list(out, elements, Math.max(1, maxDepth), branch, breakAt);
+            out.write('\n');
+        }
+    }
+
+    // breakAt >= 0 writes a stray ',' or ')' before that element
+    private void list(Writer out, long elements, int maxDepth, double branch, long breakAt) throws IOException {
+        out.write('(');
+        int depth = 1;
+        boolean spine = true;
+        for (long k = 0; k < elements; k++) {
+            if (k > 0) out.write(',');
+            if (k == breakAt) out.write(random.nextBoolean() ? ',' : ')');
+            while (depth < maxDepth && (spine || random.nextDouble() < branch)) {
+                out.write('(');
+                depth++;
+            }
+            spine = false;
+            out.write('a');
+            while (depth > 1 && random.nextDouble() < 1.0 / (1 + elements / Math.max(1, maxDepth))) {
+                out.write(')');
+                depth--;
+            }
+        }
+        while (depth-- > 0) out.write(')');
+    }
+}
@@ -0,0 +1,174 @@
+package corpus;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+// Random sentences of a grammar, one per line with tokens separated by single spaces,
+// the format PP.validateString and LL1Table.tokenize read.
+//
+// Each sentence gets a random token budget of up to maxTokens. A leftmost derivation
+// runs on an explicit stack. Until the sentence is committed to three quarters of the
+// budget, alternatives that mention a nonterminal are preferred, since uniform picks
+// end most sentences after a few tokens; past that an alternative is picked at random
+// while the sentence can still be finished within the budget, otherwise the one that
+// derives the fewest tokens is taken. Derivation depth is therefore bounded by the
+// budget, not by the Java stack.
+public final class SentenceGenerator {
+    private final Random random;
+    private final String[] terminals;
+    private final int[][][] alternatives; // nonterminal -> alternative -> symbols, nonterminal a as ~a
+    private final long[] minTokens;       // fewest tokens each nonterminal can derive
+    private final int start;
+
+    public SentenceGenerator(Map<String, List<String>> grammar, String start, long seed) {
+        this.random = new Random(seed);
+        Map<String, Integer> nonTerminalIds = new HashMap<>();
+        for (String head : grammar.keySet()) nonTerminalIds.put(head, nonTerminalIds.size());
+        Integer startId = nonTerminalIds.get(start);
+        if (startId == null) throw new IllegalArgumentException("Unknown start symbol: " + start);
+        this.start = startId;
+
+        Map<String, Integer> terminalIds = new LinkedHashMap<>();
+        alternatives = new int[grammar.size()][][];
+        int a = 0;
+        for (List<String> bodies : grammar.values()) {
+            alternatives[a] = new int[bodies.size()][];
+            for (int p = 0; p < bodies.size(); p++) {
+                String[] symbols = bodies.get(p).trim().split("\\s+");
+                int[] ids = new int[symbols.length];
+                int n = 0;
+                for (String symbol : symbols) {
+                    if (symbol.isEmpty() || symbol.equals(GrammarGenerator.EPSILON)) continue;
+                    Integer id = nonTerminalIds.get(symbol);
+                    if (id != null) {
+                        ids[n++] = ~id;
+                    } else {
+                        Integer t = terminalIds.putIfAbsent(symbol, terminalIds.size());
+                        ids[n++] = t != null ? t : terminalIds.size() - 1;
+                    }
+                }
+                alternatives[a][p] = Arrays.copyOf(ids, n);
+            }
+            a++;
+        }
+        terminals = terminalIds.keySet().toArray(new String[0]);
+
+        // Bellman-Ford style fixpoint; nonterminals that never terminate stay at MAX_VALUE
+        minTokens = new long[alternatives.length];
+        Arrays.fill(minTokens, Long.MAX_VALUE);
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            for (a = 0; a < alternatives.length; a++) {
+                for (int[] body : alternatives[a]) {
+                    long cost = cost(body);
+                    if (cost < minTokens[a]) {
+                        minTokens[a] = cost;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        if (minTokens[this.start] == Long.MAX_VALUE) {
+            throw new IllegalArgumentException("Start symbol derives no finite sentence: " + start);
+        }
+    }
+
+    private long cost(int[] body) {
+        long cost = 0;
+        for (int symbol : body) {
+            long c = symbol >= 0 ? 1 : minTokens[~symbol];
+            if (c == Long.MAX_VALUE) return Long.MAX_VALUE;
+            cost += c;
+        }
+        return cost;
+    }
+
+    // Append count sentences; a fraction of them (0 .. 1) get one token deleted or
+    // inserted, which makes them invalid in all but rare cases
+    public void write(Writer out, long count, int maxTokens, double invalidFraction) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        for (long s = 0; s < count; s++) {
+            sentence(tokens, 1 + random.nextInt(Math.max(1, maxTokens)));
+            if (random.nextDouble() < invalidFraction) corrupt(tokens);
+            for (int i = 0; i < tokens.size(); i++) {
+                if (i > 0) out.write(' ');
+                out.write(tokens.get(i));
+            }
+            out.write('\n');
+        }
+    }
+
+    // One sentence into tokens, at most budget tokens and, where the grammar has
+    // recursion to spend them on, usually at least three quarters of that
+    public void sentence(List<String> tokens, int budget) {
+        tokens.clear();
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = ~start;
+        long pending = minTokens[start]; // fewest tokens still owed by the stack
+        long grow = budget - budget / 4L;
+        long expansions = 0;             // caps growth on cycles that owe no tokens
+        while (top > 0) {
+            int symbol = stack[--top];
+            if (symbol >= 0) {
+                tokens.add(terminals[symbol]);
+                pending--;
+                continue;
+            }
+            int a = ~symbol;
+            pending -= minTokens[a];
+            int[][] bodies = alternatives[a];
+            int[] body = tokens.size() + pending < grow && expansions++ < budget
+                    ? growing(bodies)
+                    : bodies[random.nextInt(bodies.length)];
+            long cost = cost(body);
+            if (cost == Long.MAX_VALUE || tokens.size() + pending + cost > budget) {
+                body = shortest(bodies);
+                cost = minTokens[a];
+            }
+            pending += cost;
+            if (top + body.length > stack.length) stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + body.length));
+            for (int i = body.length - 1; i >= 0; i--) stack[top++] = body[i];
+        }
+    }
+
+    // A random finite alternative that mentions a nonterminal, or any alternative if
+    // there is none
+    private int[] growing(int[][] bodies) {
+        int[] pick = null;
+        int seen = 0;
+        for (int[] body : bodies) {
+            if (recurses(body) && cost(body) != Long.MAX_VALUE && random.nextInt(++seen) == 0) pick = body;
+        }
+        return pick != null ? pick : bodies[random.nextInt(bodies.length)];
+    }
+
+    private static boolean recurses(int[] body) {
+        for (int symbol : body) {
+            if (symbol < 0) return true;
+        }
+        return false;
+    }
+
+    private int[] shortest(int[][] bodies) {
+        int[] best = null;
+        long bestCost = Long.MAX_VALUE;
+        for (int[] body : bodies) {
+            long cost = cost(body);
+            if (cost < bestCost) {
+                best = body;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    private void corrupt(List<String> tokens) {
+        if (!tokens.isEmpty() && random.nextBoolean()) {
+            tokens.remove(random.nextInt(tokens.size()));
+        } else if (terminals.length > 0) {
+            tokens.add(random.nextInt(tokens.size() + 1), terminals[random.nextInt(terminals.length)]);
+        }
+    }
+}
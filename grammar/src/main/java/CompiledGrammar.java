@@ -0,0 +1,371 @@
+import java.util.*;
+import metrics.*;
+
+// A grammar compiled to dense ints so that analysis, table building and parsing
+// never hash or split strings.
+//
+//   nonterminals  0 .. n-1, written as ~a inside productions
+//   terminals     0 .. t-1, "$" is always terminal 0
+//   productions   p spans symbols[prodOffset[p] .. prodOffset[p + 1]), ε is empty
+//
+// Productions of one nonterminal are contiguous: ntProdStart[a] .. ntProdStart[a + 1].
+public class CompiledGrammar {
+    private static final Histogram INTERN_TIME = Metrics.histogram("grammar.intern");
+    private static final Histogram NULLABLE_TIME = Metrics.histogram("grammar.nullable");
+    private static final Histogram FIRST_TIME = Metrics.histogram("grammar.first");
+    private static final Histogram FOLLOW_TIME = Metrics.histogram("grammar.follow");
+
+    static final String EPSILON = "ε";
+    static final String END_MARKER = "$";
+    static final int END = 0;
+
+    final String[] nonTerminals;
+    final String[] terminals;
+    final Map<String, Integer> nonTerminalIds;
+    final Map<String, Integer> terminalIds;
+    final int start;
+
+    final int[] prodLhs;
+    final int[] prodOffset;
+    final int[] symbols;
+    final int[] ntProdStart;
+    final String[] prodText;
+
+    final int words; // longs per terminal bitset
+    final boolean[] nullable;
+    final long[][] first;
+    final long[][] follow;
+
+    // Nanoseconds spent in intern, nullable, first and follow
+    final long[] phaseNanos = new long[4];
+
+    private CompiledGrammar(Map<String, List<String>> grammar, String startSymbol) {
+        long t0 = System.nanoTime();
+
+        // Intern symbols and flatten productions
+        nonTerminals = grammar.keySet().toArray(new String[0]);
+        nonTerminalIds = new HashMap<>();
+        for (String nonTerminal : nonTerminals) {
+            nonTerminalIds.put(nonTerminal, nonTerminalIds.size());
+        }
+        Integer startId = nonTerminalIds.get(startSymbol);
+        if (startId == null) throw new IllegalArgumentException("Unknown start symbol: " + startSymbol);
+        start = startId;
+
+        List<String> terminalList = new ArrayList<>();
+        terminalIds = new HashMap<>();
+        terminalList.add(END_MARKER);
+        terminalIds.put(END_MARKER, END);
+
+        int productionCount = 0;
+        for (List<String> productions : grammar.values()) productionCount += productions.size();
+        prodLhs = new int[productionCount];
+        prodOffset = new int[productionCount + 1];
+        prodText = new String[productionCount];
+        ntProdStart = new int[nonTerminals.length + 1];
+
+        int[] flat = new int[16];
+        int size = 0, p = 0;
+        for (int a = 0; a < nonTerminals.length; a++) {
+            ntProdStart[a] = p;
+            for (String production : grammar.get(nonTerminals[a])) {
+                prodLhs[p] = a;
+                prodOffset[p] = size;
+                prodText[p] = production;
+                for (String token : production.trim().split("\\s+")) {
+                    if (token.isEmpty() || token.equals(EPSILON)) continue;
+                    int symbol;
+                    Integer id = nonTerminalIds.get(token);
+                    if (id != null) {
+                        symbol = ~id;
+                    } else {
+                        Integer t = terminalIds.get(token);
+                        if (t == null) {
+                            t = terminalList.size();
+                            terminalList.add(token);
+                            terminalIds.put(token, t);
+                        }
+                        symbol = t;
+                    }
+                    if (size == flat.length) flat = Arrays.copyOf(flat, size * 2);
+                    flat[size++] = symbol;
+                }
+                p++;
+            }
+        }
+        ntProdStart[nonTerminals.length] = p;
+        prodOffset[p] = size;
+        symbols = Arrays.copyOf(flat, size);
+        terminals = terminalList.toArray(new String[0]);
+        words = (terminals.length + 63) >>> 6;
+        long t1 = System.nanoTime();
+
+        nullable = computeNullable();
+        long t2 = System.nanoTime();
+        first = computeFirst();
+        long t3 = System.nanoTime();
+        follow = computeFollow();
+        long t4 = System.nanoTime();
+
+        phaseNanos[0] = t1 - t0;
+        phaseNanos[1] = t2 - t1;
+        phaseNanos[2] = t3 - t2;
+        phaseNanos[3] = t4 - t3;
+        if (Metrics.ENABLED) {
+            INTERN_TIME.record(phaseNanos[0]);
+            NULLABLE_TIME.record(phaseNanos[1]);
+            FIRST_TIME.record(phaseNanos[2]);
+            FOLLOW_TIME.record(phaseNanos[3]);
+        }
+    }
+
+    // Compile a grammar of space-separated right-hand sides
+    static CompiledGrammar compile(Map<String, List<String>> grammar, String startSymbol) {
+        return new CompiledGrammar(grammar, startSymbol);
+    }
+
+    // A grammar whose analysis was done before, e.g. read back from a GrammarSnapshot;
+    // only the name lookups are rebuilt
+    CompiledGrammar(String[] nonTerminals, String[] terminals, int start, int[] prodLhs, int[] prodOffset,
+                    int[] symbols, int[] ntProdStart, String[] prodText,
+                    boolean[] nullable, long[][] first, long[][] follow) {
+        this.nonTerminals = nonTerminals;
+        this.terminals = terminals;
+        this.start = start;
+        this.prodLhs = prodLhs;
+        this.prodOffset = prodOffset;
+        this.symbols = symbols;
+        this.ntProdStart = ntProdStart;
+        this.prodText = prodText;
+        this.nullable = nullable;
+        this.first = first;
+        this.follow = follow;
+        this.words = (terminals.length + 63) >>> 6;
+        nonTerminalIds = new HashMap<>(nonTerminals.length * 2);
+        for (String nonTerminal : nonTerminals) nonTerminalIds.put(nonTerminal, nonTerminalIds.size());
+        terminalIds = new HashMap<>(terminals.length * 2);
+        for (String terminal : terminals) terminalIds.put(terminal, terminalIds.size());
+    }
+
+    int numNonTerminals() { return nonTerminals.length; }
+    int numTerminals() { return terminals.length; }
+    int numProductions() { return prodLhs.length; }
+
+    // Terminal id of a token, or -1 if the grammar never uses it
+    int terminalId(String token) {
+        Integer t = terminalIds.get(token);
+        return t == null ? -1 : t;
+    }
+
+    // Nullable, by counting the not-yet-nullable symbols of each production
+    private boolean[] computeNullable() {
+        int n = nonTerminals.length;
+        boolean[] result = new boolean[n];
+        int[] remaining = new int[prodLhs.length];
+        int[][] occurrences = new int[n][];
+        int[] occurrenceCount = new int[n];
+        for (int symbol : symbols) {
+            if (symbol < 0) occurrenceCount[~symbol]++;
+        }
+        for (int a = 0; a < n; a++) occurrences[a] = new int[occurrenceCount[a]];
+        Arrays.fill(occurrenceCount, 0);
+
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        for (int p = 0; p < prodLhs.length; p++) {
+            for (int i = prodOffset[p]; i < prodOffset[p + 1]; i++) {
+                int symbol = symbols[i];
+                if (symbol < 0) occurrences[~symbol][occurrenceCount[~symbol]++] = p;
+                if (remaining[p] < 0) continue;
+                remaining[p] = symbol >= 0 ? -1 : remaining[p] + 1; // a terminal is never nullable
+            }
+            int a = prodLhs[p];
+            if (remaining[p] == 0 && !result[a]) {
+                result[a] = true;
+                queue[tail++] = a;
+            }
+        }
+        while (head < tail) {
+            for (int p : occurrences[queue[head++]]) {
+                if (remaining[p] > 0 && --remaining[p] == 0) {
+                    int a = prodLhs[p];
+                    if (!result[a]) {
+                        result[a] = true;
+                        queue[tail++] = a;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // First, seeded with leading terminals and propagated along B -> A edges
+    private long[][] computeFirst() {
+        int n = nonTerminals.length;
+        long[][] sets = new long[n][words];
+        EdgeList edges = new EdgeList(n);
+        for (int p = 0; p < prodLhs.length; p++) {
+            int a = prodLhs[p];
+            for (int i = prodOffset[p]; i < prodOffset[p + 1]; i++) {
+                int symbol = symbols[i];
+                if (symbol >= 0) {
+                    sets[a][symbol >>> 6] |= 1L << symbol;
+                    break;
+                }
+                if (~symbol != a) edges.add(~symbol, a);
+                if (!nullable[~symbol]) break;
+            }
+        }
+        propagate(sets, edges.build());
+        return sets;
+    }
+
+    // Follow, scanning each production right to left with a trailer set
+    private long[][] computeFollow() {
+        int n = nonTerminals.length;
+        long[][] sets = new long[n][words];
+        EdgeList edges = new EdgeList(n);
+        sets[start][END >>> 6] |= 1L << END;
+        long[] trailer = new long[words];
+        for (int p = 0; p < prodLhs.length; p++) {
+            int a = prodLhs[p];
+            boolean reachesEnd = true;
+            Arrays.fill(trailer, 0L);
+            for (int i = prodOffset[p + 1] - 1; i >= prodOffset[p]; i--) {
+                int symbol = symbols[i];
+                if (symbol >= 0) {
+                    Arrays.fill(trailer, 0L);
+                    trailer[symbol >>> 6] |= 1L << symbol;
+                    reachesEnd = false;
+                    continue;
+                }
+                int b = ~symbol;
+                orInto(sets[b], trailer);
+                if (reachesEnd && b != a) edges.add(a, b);
+                if (!nullable[b]) {
+                    System.arraycopy(first[b], 0, trailer, 0, words);
+                    reachesEnd = false;
+                } else {
+                    orInto(trailer, first[b]);
+                }
+            }
+        }
+        propagate(sets, edges.build());
+        return sets;
+    }
+
+    // Add FIRST of symbols[from .. to) to out; returns whether the whole sequence is nullable
+    boolean firstOfSequence(int from, int to, long[] out) {
+        for (int i = from; i < to; i++) {
+            int symbol = symbols[i];
+            if (symbol >= 0) {
+                out[symbol >>> 6] |= 1L << symbol;
+                return false;
+            }
+            orInto(out, first[~symbol]);
+            if (!nullable[~symbol]) return false;
+        }
+        return true;
+    }
+
+    boolean firstOfProduction(int p, long[] out) {
+        return firstOfSequence(prodOffset[p], prodOffset[p + 1], out);
+    }
+
+    // FIRST of a nonterminal by name, with ε when it is nullable
+    Set<String> firstSet(int a) {
+        Set<String> names = toNames(first[a]);
+        if (nullable[a]) names.add(EPSILON);
+        return names;
+    }
+
+    Set<String> followSet(int a) {
+        return toNames(follow[a]);
+    }
+
+    Set<String> toNames(long[] bits) {
+        Set<String> names = new HashSet<>();
+        for (int w = 0; w < bits.length; w++) {
+            for (long word = bits[w]; word != 0; word &= word - 1) {
+                names.add(terminals[(w << 6) + Long.numberOfTrailingZeros(word)]);
+            }
+        }
+        return names;
+    }
+
+    String timings() {
+        return String.format("Timings: intern %.3f ms, nullable %.3f ms, first %.3f ms, follow %.3f ms",
+                phaseNanos[0] / 1e6, phaseNanos[1] / 1e6, phaseNanos[2] / 1e6, phaseNanos[3] / 1e6);
+    }
+
+    // Propagate sets along edges until nothing changes
+    static void propagate(long[][] sets, int[][] edges) {
+        int n = sets.length;
+        int[] queue = new int[n];
+        boolean[] queued = new boolean[n];
+        int head = 0, size = n;
+        for (int a = 0; a < n; a++) {
+            queue[a] = a;
+            queued[a] = true;
+        }
+        while (size > 0) {
+            int b = queue[head];
+            head = (head + 1) % n;
+            size--;
+            queued[b] = false;
+            for (int a : edges[b]) {
+                if (orInto(sets[a], sets[b]) && !queued[a]) {
+                    queue[(head + size) % n] = a;
+                    size++;
+                    queued[a] = true;
+                }
+            }
+        }
+    }
+
+    // dst |= src, returning whether dst changed
+    static boolean orInto(long[] dst, long[] src) {
+        boolean changed = false;
+        for (int w = 0; w < dst.length; w++) {
+            long merged = dst[w] | src[w];
+            if (merged != dst[w]) {
+                dst[w] = merged;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    static boolean contains(long[] bits, int t) {
+        return (bits[t >>> 6] & (1L << t)) != 0;
+    }
+
+    // Adjacency lists built as growable int arrays, one per source node
+    static class EdgeList {
+        private final int[][] targets;
+        private final int[] counts;
+
+        EdgeList(int n) {
+            targets = new int[n][];
+            counts = new int[n];
+        }
+
+        void add(int from, int to) {
+            int[] list = targets[from];
+            if (list == null) {
+                list = targets[from] = new int[4];
+            } else if (counts[from] == list.length) {
+                list = targets[from] = Arrays.copyOf(list, list.length * 2);
+            }
+            list[counts[from]++] = to;
+        }
+
+        int[][] build() {
+            int[][] result = new int[targets.length][];
+            for (int a = 0; a < targets.length; a++) {
+                result[a] = targets[a] == null ? new int[0] : Arrays.copyOf(targets[a], counts[a]);
+            }
+            return result;
+        }
+    }
+}
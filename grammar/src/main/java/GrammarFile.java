@@ -0,0 +1,97 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+// Grammars as text, one nonterminal per line:
+//
+//   # comment
+//   S -> A B C | D
+//   A -> a | ε
+//
+// Symbols are separated by spaces and an empty alternative means ε. The head of the
+// first line is the start symbol; a head that appears on two lines gets the
+// alternatives of both. This is the format the corpus generator writes.
+public class GrammarFile {
+    static final String EPSILON = "ε";
+
+    private GrammarFile() {
+    }
+
+    static Map<String, List<String>> read(Path path) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return read(in);
+        } catch (IOException e) {
+            throw new IOException(path + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Heads in file order, so the first key is the start symbol
+    static Map<String, List<String>> read(BufferedReader in) throws IOException {
+        Map<String, List<String>> grammar = new LinkedHashMap<>();
+        String line;
+        for (int number = 1; (line = in.readLine()) != null; number++) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int arrow = line.indexOf("->");
+            if (arrow <= 0) throw new IOException("Line " + number + ": expected 'A -> ...': " + line);
+            String head = line.substring(0, arrow).trim();
+            if (head.contains(" ")) throw new IOException("Line " + number + ": head is not one symbol: " + head);
+            List<String> alternatives = grammar.computeIfAbsent(head, k -> new ArrayList<>());
+            StringBuilder alternative = new StringBuilder();
+            for (int i = arrow + 2; i <= line.length(); i++) {
+                char c = i < line.length() ? line.charAt(i) : '|';
+                if (c == '|') {
+                    alternatives.add(alternative.length() == 0 ? EPSILON : alternative.toString());
+                    alternative.setLength(0);
+                } else if (!Character.isWhitespace(c)) {
+                    // Runs of whitespace between symbols become one space
+                    if (alternative.length() > 0 && Character.isWhitespace(line.charAt(i - 1))) alternative.append(' ');
+                    alternative.append(c);
+                }
+            }
+        }
+        if (grammar.isEmpty()) throw new IOException("No productions");
+        return grammar;
+    }
+
+    static void write(Map<String, List<String>> grammar, Writer out) throws IOException {
+        for (Map.Entry<String, List<String>> rule : grammar.entrySet()) {
+            out.write(rule.getKey());
+            out.write(" -> ");
+            out.write(String.join(" | ", rule.getValue()));
+            out.write('\n');
+        }
+    }
+
+    static String startSymbol(Map<String, List<String>> grammar) {
+        return grammar.keySet().iterator().next();
+    }
+
+    // SHA-256 of the file as it is, without parsing it
+    static byte[] hash(Path path) throws IOException {
+        return sha256().digest(Files.readAllBytes(path));
+    }
+
+    // SHA-256 of the start symbol and the grammar as write() prints it, so the same
+    // productions in the same order always hash alike
+    static byte[] hash(Map<String, List<String>> grammar, String startSymbol) {
+        MessageDigest digest = sha256();
+        digest.update((startSymbol + "\n").getBytes(StandardCharsets.UTF_8));
+        for (Map.Entry<String, List<String>> rule : grammar.entrySet()) {
+            digest.update((rule.getKey() + " -> " + String.join(" | ", rule.getValue()) + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required on every Java platform", e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+// Lexer for arithmetic expressions that reads a CharSequence in place.
+// Whitespace is skipped inline, and the current token is only its kind plus
+// [start, end) offsets into the input, so lexing allocates nothing. text() and
+// number() turn a token into a String or double when the parser needs one.
+//
+// Whitespace separates tokens: "1 2" is two numbers and "x y" two identifiers, which
+// the parsers reject as trailing input, where stripping all whitespace first used to
+// read them as 12 and xy.
+public class CharStreamLexer {
+    static final int EOF = 0;
+    static final int NUMBER = 1;
+    static final int IDENTIFIER = 2;
+    static final int PLUS = 3;
+    static final int MINUS = 4;
+    static final int MULT = 5;
+    static final int DIV = 6;
+    static final int POW = 7;
+    static final int LPAREN = 8;
+    static final int RPAREN = 9;
+
+    private static final String[] SYMBOLS = { "", "", "", "+", "-", "*", "/", "^", "(", ")" };
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final CharSequence input;
+    private final int length;
+    private int pos = 0;
+
+    // Current token
+    int kind = EOF;
+    int start, end;
+
+    CharStreamLexer(CharSequence input) {
+        this.input = input;
+        this.length = input.length();
+    }
+
+    // Lex a file in place through a read-only memory mapping (ASCII/Latin-1, up to 2 GiB)
+    static CharStreamLexer ofFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new CharStreamLexer(new ByteCharSequence(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+        }
+    }
+
+    // Advance to the next token and return its kind
+    int next() {
+        while (pos < length && Character.isWhitespace(input.charAt(pos))) pos++;
+        start = pos;
+        if (pos >= length) {
+            end = pos;
+            return kind = EOF;
+        }
+
+        char c = input.charAt(pos);
+        if (Character.isDigit(c) || c == '.') {
+            while (pos < length && (Character.isDigit(input.charAt(pos)) || input.charAt(pos) == '.')) pos++;
+            end = pos;
+            return kind = NUMBER;
+        }
+        if (Character.isLetter(c)) {
+            while (pos < length && Character.isLetterOrDigit(input.charAt(pos))) pos++;
+            end = pos;
+            return kind = IDENTIFIER;
+        }
+
+        switch (c) {
+            case '+': kind = PLUS; break;
+            case '-': kind = MINUS; break;
+            case '*': kind = MULT; break;
+            case '/': kind = DIV; break;
+            case '^': kind = POW; break;
+            case '(': kind = LPAREN; break;
+            case ')': kind = RPAREN; break;
+            default: throw new RuntimeException("Invalid character: " + c);
+        }
+        end = ++pos;
+        return kind;
+    }
+
+    // Text of the current token
+    String text() {
+        return input.subSequence(start, end).toString();
+    }
+
+    // Value of the current NUMBER token. Plain decimals of up to 15 digits are
+    // converted without building a String; m / 10^k is exact for those, so the
+    // result matches Double.parseDouble.
+    double number() {
+        long mantissa = 0;
+        int digits = 0, fraction = -1;
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '.') {
+                if (fraction >= 0) return Double.parseDouble(text()); // let it report the error
+                fraction = 0;
+                continue;
+            }
+            if (++digits > 15) return Double.parseDouble(text());
+            mantissa = mantissa * 10 + (c - '0');
+            if (fraction >= 0) fraction++;
+        }
+        if (digits == 0) return Double.parseDouble(text());
+        return fraction > 0 ? mantissa / POWERS_OF_TEN[fraction] : mantissa;
+    }
+
+    // Shared String for an operator or parenthesis kind
+    static String symbol(int kind) {
+        return SYMBOLS[kind];
+    }
+
+    // Bytes of a (mapped) buffer seen as chars, one byte per char
+    static class ByteCharSequence implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int offset, length;
+
+        ByteCharSequence(ByteBuffer bytes) {
+            this(bytes, 0, bytes.limit());
+        }
+
+        private ByteCharSequence(ByteBuffer bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            return (char) (bytes.get(offset + index) & 0xFF);
+        }
+
+        public CharSequence subSequence(int from, int to) {
+            return new ByteCharSequence(bytes, offset + from, to - from);
+        }
+
+        public String toString() {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) chars[i] = charAt(i);
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Monotonic count, striped so that threads incrementing at once do not contend
+public final class Counter {
+    private final String name;
+    private final LongAdder value = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long sum() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,25 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+
+// Largest value ever reported, e.g. the deepest a parse stack got
+public final class HighWaterMark {
+    private final String name;
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    HighWaterMark(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void update(long value) {
+        max.accumulate(value);
+    }
+
+    public long max() {
+        return max.get();
+    }
+}
@@ -0,0 +1,72 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Distribution of non-negative values, usually latencies in nanoseconds, in
+// power-of-two buckets: bucket b holds values in [2^(b-1), 2^b). Percentiles are
+// therefore reported as the upper bound of their bucket, within a factor of two.
+public final class Histogram {
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(65);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    // Record the nanoseconds since start (a System.nanoTime() value) and report the
+    // phase to JFR; returns the elapsed time
+    public long recordSince(long start) {
+        long elapsed = System.nanoTime() - start;
+        record(elapsed);
+        PhaseEvent event = new PhaseEvent();
+        if (event.shouldCommit()) {
+            event.phase = name;
+            event.nanos = elapsed;
+            event.commit();
+        }
+        return elapsed;
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    // Upper bound of the bucket holding the q-th quantile, 0 <= q <= 1
+    public long percentile(double q) {
+        long n = count.sum();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int b = 0; b < 65; b++) {
+            seen += buckets.get(b);
+            if (seen >= rank) return b == 0 ? 0 : b == 64 ? Long.MAX_VALUE : (1L << b) - 1;
+        }
+        return max();
+    }
+}
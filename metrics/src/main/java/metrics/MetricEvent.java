@@ -0,0 +1,18 @@
+package metrics;
+
+import jdk.jfr.*;
+
+// Current value of each counter and high-water mark, emitted once a second while
+// a JFR recording runs
+@Name("cse313.Metric")
+@Label("Metric")
+@Category("CSE313")
+@Period("1 s")
+@StackTrace(false)
+class MetricEvent extends Event {
+    @Label("Name")
+    String name;
+
+    @Label("Value")
+    long value;
+}
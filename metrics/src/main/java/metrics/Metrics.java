@@ -0,0 +1,115 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.FlightRecorder;
+
+// Registry of named counters, high-water marks and histograms shared by the
+// practicals. Instrumentation is off unless the JVM runs with -Dmetrics=true; every
+// call site is guarded by the ENABLED constant,
+//
+//   private static final Counter TOKENS = Metrics.counter("pp.tokens");
+//   ...
+//   if (Metrics.ENABLED) TOKENS.add(tokens.length);
+//
+// and since ENABLED is a static final the JIT removes the guarded code entirely when
+// it is false. When enabled, the metrics are published
+//   - over JMX, as attributes of the MBean cse313:type=Metrics
+//   - to JFR, as cse313.Phase events per timed phase and periodic cse313.Metric events
+//   - as text: report(), and on stderr at exit with -Dmetrics.report=true
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("metrics");
+
+    private static final Map<String, Object> INSTRUMENTS = new ConcurrentSkipListMap<>();
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                        .registerMBean(new MetricsMBean(INSTRUMENTS), new ObjectName("cse313:type=Metrics"));
+            } catch (JMException e) {
+                throw new IllegalStateException("Cannot register the metrics MBean", e);
+            }
+            FlightRecorder.addPeriodicEvent(MetricEvent.class, Metrics::emitMetricEvents);
+            if (Boolean.getBoolean("metrics.report")) {
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(report()), "metrics-report"));
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name) {
+        return instrument(name, Counter.class);
+    }
+
+    public static HighWaterMark highWaterMark(String name) {
+        return instrument(name, HighWaterMark.class);
+    }
+
+    public static Histogram histogram(String name) {
+        return instrument(name, Histogram.class);
+    }
+
+    // Same name, same instrument; a name cannot be reused for another kind
+    private static <T> T instrument(String name, Class<T> kind) {
+        Object instrument = INSTRUMENTS.computeIfAbsent(name, n -> {
+            if (kind == Counter.class) return new Counter(n);
+            if (kind == HighWaterMark.class) return new HighWaterMark(n);
+            return new Histogram(n);
+        });
+        if (!kind.isInstance(instrument)) {
+            throw new IllegalArgumentException(name + " is already a " + instrument.getClass().getSimpleName());
+        }
+        return kind.cast(instrument);
+    }
+
+    // One line per instrument, sorted by name:
+    //   pp.tokens              123456
+    //   pp.validate            count 1000 mean 1234 ns p50 1023 p99 4095 max 5210
+    public static String report() {
+        StringBuilder out = new StringBuilder();
+        try {
+            report(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder does not throw
+        }
+        return out.toString();
+    }
+
+    public static void report(Appendable out) throws IOException {
+        for (Object instrument : INSTRUMENTS.values()) {
+            if (instrument instanceof Counter counter) {
+                out.append(String.format("%-28s %d%n", counter.name(), counter.sum()));
+            } else if (instrument instanceof HighWaterMark mark) {
+                out.append(String.format("%-28s max %d%n", mark.name(), mark.max()));
+            } else if (instrument instanceof Histogram histogram) {
+                out.append(String.format("%-28s count %d mean %.0f ns p50 %d p99 %d max %d%n", histogram.name(),
+                        histogram.count(), histogram.mean(), histogram.percentile(0.5),
+                        histogram.percentile(0.99), histogram.max()));
+            }
+        }
+    }
+
+    private static void emitMetricEvents() {
+        for (Object instrument : INSTRUMENTS.values()) {
+            MetricEvent event = new MetricEvent();
+            if (instrument instanceof Counter counter) {
+                event.name = counter.name();
+                event.value = counter.sum();
+            } else if (instrument instanceof HighWaterMark mark) {
+                event.name = mark.name();
+                event.value = mark.max();
+            } else {
+                continue; // histograms are covered by their phase events
+            }
+            event.commit();
+        }
+    }
+}
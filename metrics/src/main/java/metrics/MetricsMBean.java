@@ -0,0 +1,75 @@
+package metrics;
+
+import java.util.*;
+import javax.management.*;
+
+// Read-only MBean with one attribute per counter and high-water mark, and
+// name.count / .mean / .p50 / .p99 / .max per histogram. The attribute list is
+// rebuilt on every getMBeanInfo, so instruments created later show up too.
+final class MetricsMBean implements DynamicMBean {
+    private static final String[] HISTOGRAM_FIELDS = { "count", "mean", "p50", "p99", "max" };
+
+    private final Map<String, Object> instruments;
+
+    MetricsMBean(Map<String, Object> instruments) {
+        this.instruments = instruments;
+    }
+
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Object instrument = instruments.get(attribute);
+        if (instrument instanceof Counter counter) return counter.sum();
+        if (instrument instanceof HighWaterMark mark) return mark.max();
+        int dot = attribute.lastIndexOf('.');
+        if (dot > 0 && instruments.get(attribute.substring(0, dot)) instanceof Histogram histogram) {
+            switch (attribute.substring(dot + 1)) {
+                case "count": return histogram.count();
+                case "mean": return histogram.mean();
+                case "p50": return histogram.percentile(0.5);
+                case "p99": return histogram.percentile(0.99);
+                case "max": return histogram.max();
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // skipped, as the DynamicMBean contract allows
+            }
+        }
+        return list;
+    }
+
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : instruments.entrySet()) {
+            if (entry.getValue() instanceof Histogram) {
+                for (String field : HISTOGRAM_FIELDS) {
+                    String type = field.equals("mean") ? "double" : "long";
+                    attributes.add(new MBeanAttributeInfo(entry.getKey() + "." + field, type,
+                            entry.getKey() + " " + field + " (ns)", true, false, false));
+                }
+            } else {
+                attributes.add(new MBeanAttributeInfo(entry.getKey(), "long", entry.getKey(), true, false, false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "Parser and evaluator metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    public Object invoke(String action, Object[] params, String[] signature) throws MBeanException {
+        throw new MBeanException(new UnsupportedOperationException(action));
+    }
+}
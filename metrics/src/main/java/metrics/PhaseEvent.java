@@ -0,0 +1,20 @@
+package metrics;
+
+import jdk.jfr.*;
+
+// One timed phase (Histogram.recordSince), visible in a JFR recording when
+// metrics are enabled. The event is created after the phase has ended, so its own
+// duration is near zero and the phase's time travels in nanos; a field named
+// duration would clash with JFR's built-in one and the class would be rejected.
+@Name("cse313.Phase")
+@Label("Phase")
+@Category("CSE313")
+@StackTrace(false)
+class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Phase Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanos;
+}